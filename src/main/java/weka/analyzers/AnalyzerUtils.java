@@ -1,10 +1,9 @@
 package weka.analyzers;
 
 import weka.core.Attribute;
+import weka.core.FastVector;
 import weka.core.Instances;
 import weka.core.Utils;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
 import weka.gui.visualize.PlotData2D;
 import weka.gui.visualize.VisualizePanel;
 
@@ -86,6 +85,44 @@ public final class AnalyzerUtils {
         }
     }
 
+    /**
+     * Implementation of GenerateVisualizerWindow that displays text which is
+     * only built the first time the window is opened, for reports that are
+     * expensive to build and often never looked at. The text is kept once
+     * built so opening the window again does not rebuild it.
+     */
+    public abstract static class GenerateLazyTextWindow extends GenerateVisualizerWindow {
+
+        /** Text to display, null until it has been built */
+        private String text;
+
+        public GenerateLazyTextWindow(String name, int height, int width) {
+            super(name, height, width);
+        }
+
+        /**
+         * Builds the text to display, called at most once.
+         *
+         * @return text to display
+         */
+        protected abstract String buildText();
+
+        /**
+         * @return text to display, building it if this is the first call
+         */
+        public synchronized String getText() {
+            if(text == null) {
+                text = buildText();
+            }
+            return text;
+        }
+
+        @Override
+        protected JComponent generateJComponent() {
+            return generateTextField(getText());
+        }
+    }
+
 
     /**
      * Open a new window displaying a JPanel.
@@ -144,29 +181,51 @@ public final class AnalyzerUtils {
     }
 
     /**
-     * Removes a column form some Instances. Requires making a copy of the Instances.
+     * Removes a column form some Instances. The attribute values are not
+     * copied, see projectColumns.
      *
      * @param instances Instances to remove the column from
      * @param columnIndex index of the column to remove, cannot be the class column
-     * @return a copy of the Instances without the column
-     * @throws Exception if there was problem removing the column
+     * @return a view of the Instances without the column
      */
-    public static Instances removeColumn(Instances instances, int columnIndex) throws Exception {
+    public static Instances removeColumn(Instances instances, int columnIndex) {
         if(columnIndex == instances.classIndex())
             throw new IllegalArgumentException("Cannot remove class index");
-        Remove remove = new Remove();
-        remove.setAttributeIndicesArray(new int[] {columnIndex});
-        remove.setInputFormat(instances);
-        Instances newData = Filter.useFilter(instances, remove);
-        int classIndex = instances.classIndex();
-        if(classIndex >= 0){
-            // Might need shift the class index so it points at the
-            // same attribute as before
-            if (columnIndex < classIndex)
-                classIndex--;
-            newData.setClassIndex(classIndex);
+        int[] columns = new int[instances.numAttributes() - 1];
+        for(int i = 0; i < columns.length; i++) {
+            columns[i] = i < columnIndex ? i : i + 1;
         }
-        return newData;
+        return projectColumns(instances, columns);
+    }
+
+    /**
+     * Builds Instances containing only some of the columns of another Instances
+     * without copying any attribute values. Each Instance of the result is a
+     * ProjectedInstance that reads through to the matching Instance of
+     * instances until it is modified. The class attribute is kept as the
+     * class if it is one of the columns.
+     *
+     * @param instances Instances to take the columns from, should not be
+     *                  modified while the result is in use
+     * @param columns indices of the columns to keep, in the order they should appear
+     * @return Instances of the columns
+     */
+    public static Instances projectColumns(Instances instances, int[] columns) {
+        FastVector attributes = new FastVector(columns.length);
+        int classIndex = -1;
+        for(int i = 0; i < columns.length; i++) {
+            attributes.addElement(instances.attribute(columns[i]).copy());
+            if(columns[i] == instances.classIndex()) {
+                classIndex = i;
+            }
+        }
+        Instances projection = new Instances(instances.relationName(), attributes,
+                instances.numInstances());
+        projection.setClassIndex(classIndex);
+        for(int i = 0; i < instances.numInstances(); i++) {
+            projection.add(new ProjectedInstance(instances.instance(i), columns));
+        }
+        return projection;
     }
 
     /**
@@ -348,6 +407,25 @@ public final class AnalyzerUtils {
         return confusionMatrix;
     }
 
+    /**
+     * Calculates a confusion matrix based on an Instances and the per class
+     * scores of each Instance, Instances are counted as predicted to be their
+     * highest scoring class.
+     *
+     * @param data Instances the prediction were made for
+     * @param predictions ClassDistributions of the per class scores of data
+     * @return double[][] where entry[i][j] is the number of Instances with true
+     * class i and prediction j
+     */
+    public static double[][] confusionMatrix(Instances data, ClassDistributions predictions) {
+        double[][] confusionMatrix =
+                new double[data.classAttribute().numValues()][data.classAttribute().numValues()];
+        for(int i = 0; i < data.numInstances(); i++) {
+            confusionMatrix[(int) data.instance(i).classValue()][predictions.predictedClass(i)]++;
+        }
+        return confusionMatrix;
+    }
+
     /*
      * Methods to prints matrices as Strings, there is code to do this in weka
      * in weka.classifiers.Evaluation but it is not readily usable
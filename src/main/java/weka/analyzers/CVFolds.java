@@ -0,0 +1,179 @@
+package weka.analyzers;
+
+import weka.core.Instances;
+
+import java.util.Random;
+
+/**
+ * Assigns the Instances of a dataset to cross validation folds using a
+ * permutation of their indices. Each test fold is a contiguous block of the
+ * permutation, divided up the same way Instances.testCV divides a dataset,
+ * so the train and test sets of a fold can be visited by index without
+ * copying or reordering the dataset itself.
+ */
+public class CVFolds {
+
+    /** Permutation of the indices of the dataset */
+    private final int[] permutation;
+
+    /** Number of folds the permutation is divided into */
+    private final int numFolds;
+
+    /**
+     * Constructs a CVFolds that divides a permutation into folds. The
+     * permutation is not copied.
+     *
+     * @param permutation array containing each index of the dataset exactly
+     *                    once, test folds are taken as contiguous blocks of it
+     * @param numFolds the number of folds to use
+     */
+    public CVFolds(int[] permutation, int numFolds) {
+        if(numFolds < 2 || numFolds > permutation.length) {
+            throw new IllegalArgumentException("Number of folds must be at least 2 " +
+                    "and no more then the number of instances");
+        }
+        this.permutation = permutation;
+        this.numFolds = numFolds;
+    }
+
+    /**
+     * Builds CVFolds that keep the dataset's order, so fold i contains the same
+     * Instances as Instances.testCV(numFolds, i) would.
+     *
+     * @param numInstances number of Instances in the dataset
+     * @param numFolds the number of folds to use
+     * @return the CVFolds
+     */
+    public static CVFolds sequential(int numInstances, int numFolds) {
+        int[] permutation = new int[numInstances];
+        for(int i = 0; i < numInstances; i++) {
+            permutation[i] = i;
+        }
+        return new CVFolds(permutation, numFolds);
+    }
+
+    /**
+     * Builds CVFolds from a random permutation of the dataset.
+     *
+     * @param numInstances number of Instances in the dataset
+     * @param numFolds the number of folds to use
+     * @param rand Random to use when shuffling
+     * @return the CVFolds
+     */
+    public static CVFolds randomized(int numInstances, int numFolds, Random rand) {
+        CVFolds folds = sequential(numInstances, numFolds);
+        folds.shuffle(rand);
+        return folds;
+    }
+
+    /**
+     * Shuffles the permutation in place, reassigning Instances to new folds.
+     * The order produced is the same as calling Instances.randomize(rand) on
+     * data in the permutation's order.
+     *
+     * @param rand Random to use when shuffling
+     */
+    public void shuffle(Random rand) {
+        for(int i = permutation.length - 1; i > 0; i--) {
+            int index = rand.nextInt(i + 1);
+            int a = permutation[index];
+            permutation[index] = permutation[i];
+            permutation[i] = a;
+        }
+    }
+
+    /**
+     * @return the number of folds
+     */
+    public int numFolds() {
+        return numFolds;
+    }
+
+    /**
+     * @return the number of Instances in the dataset
+     */
+    public int numInstances() {
+        return permutation.length;
+    }
+
+    /**
+     * Returns the position in the permutation the given test fold starts at.
+     *
+     * @param fold the fold
+     * @return position of the fold's first test Instance in the permutation
+     */
+    private int testStart(int fold) {
+        return fold * (permutation.length / numFolds) +
+                Math.min(fold, permutation.length % numFolds);
+    }
+
+    /**
+     * Returns the number of test Instances in a fold.
+     *
+     * @param fold the fold
+     * @return number of Instances tested in that fold
+     */
+    public int numTest(int fold) {
+        return testStart(fold + 1) - testStart(fold);
+    }
+
+    /**
+     * Returns the number of train Instances in a fold.
+     *
+     * @param fold the fold
+     * @return number of Instances trained on in that fold
+     */
+    public int numTrain(int fold) {
+        return permutation.length - numTest(fold);
+    }
+
+    /**
+     * Returns the dataset index of the jth test Instance of a fold.
+     *
+     * @param fold the fold
+     * @param j test Instance to get the index of, from 0 to numTest(fold)
+     * @return index of that Instance in the dataset
+     */
+    public int testIndex(int fold, int j) {
+        return permutation[testStart(fold) + j];
+    }
+
+    /**
+     * Returns the dataset index of the jth train Instance of a fold.
+     *
+     * @param fold the fold
+     * @param j train Instance to get the index of, from 0 to numTrain(fold)
+     * @return index of that Instance in the dataset
+     */
+    public int trainIndex(int fold, int j) {
+        int start = testStart(fold);
+        return j < start ? permutation[j] : permutation[j + numTest(fold)];
+    }
+
+    /**
+     * Builds the training set of a fold. Weka's classifiers need to be built
+     * from an Instances so unlike the test set this has to be materialized,
+     * however the returned Instances shares its attribute values with data.
+     * If the folds are sequential this is equivalent to
+     * data.trainCV(numFolds, fold).
+     *
+     * @param data the dataset these folds were built for
+     * @param fold the fold to build the training set for
+     * @return Instances containing the train Instances of fold
+     */
+    public Instances trainingSet(Instances data, int fold) {
+        if(data.numInstances() != permutation.length) {
+            throw new IllegalArgumentException("Folds were built for a dataset of a different size");
+        }
+        int start = testStart(fold);
+        int end = testStart(fold + 1);
+        Instances train = new Instances(data, permutation.length - (end - start));
+        for(int i = 0; i < start; i++) {
+            train.add(data.instance(permutation[i]));
+        }
+        for(int i = end; i < permutation.length; i++) {
+            train.add(data.instance(permutation[i]));
+        }
+        return train;
+    }
+}
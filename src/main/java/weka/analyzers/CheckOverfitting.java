@@ -2,6 +2,7 @@ package weka.analyzers;
 
 import weka.classifiers.Classifier;
 import weka.core.Capabilities;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.Utils;
@@ -41,7 +42,7 @@ public class CheckOverfitting extends ClassifierAnalyzer {
      * test and train dataset over a number of iterations, returns the number
      * correct and total Instances on the test and train datasets.
      *
-     * @param data Instances to evaluate, might be reordered
+     * @param data Instances to evaluate, will not be modified
      * @param log Logger to log status updates to
      * @return int[] of the number of correct Instances and total Instances
      * on the test then train set.
@@ -54,22 +55,27 @@ public class CheckOverfitting extends ClassifierAnalyzer {
         int testInstances = 0;
         Classifier clf = getClassifier();
         Random rand = new Random(seed);
+        CVFolds folds = CVFolds.sequential(data.numInstances(), numFolds);
         int fold = 0;
         for(int i = 0; i < iterations; i++) {
             if(fold >= numFolds) {
-                data.randomize(rand);
+                folds.shuffle(rand);
                 fold = 0;
             }
             log.statusMessage(String.format("Building and Testing classifier for " +
                     "fold %d out of %d, run %d of %d", fold + 1, numFolds,
                     i + 1, iterations));
-            Instances test = data.testCV(numFolds, fold);
-            Instances train = data.trainCV(numFolds, fold);
+            Instances train = folds.trainingSet(data, fold);
             clf.buildClassifier(train);
             trainCorrect += correctPredictions(train, clf);
-            testCorrect += correctPredictions(test, clf);
+            for(int j = 0; j < folds.numTest(fold); j++) {
+                Instance test = data.instance(folds.testIndex(fold, j));
+                if(test.classValue() == clf.classifyInstance(test)) {
+                    testCorrect++;
+                }
+            }
             trainInstances += train.numInstances();
-            testInstances += test.numInstances();
+            testInstances += folds.numTest(fold);
             fold++;
         }
         log.statusMessage("Run complete");
@@ -93,8 +99,6 @@ public class CheckOverfitting extends ClassifierAnalyzer {
             throws Exception {
         if(idAtt != -1) {
             data = AnalyzerUtils.removeColumn(data, idAtt);
-        } else {
-            data = new Instances(data); // Preserve order
         }
         int[] results = evaluate(data, logger);
         double testAcc = ((double)results[0] / results[1]);
@@ -0,0 +1,135 @@
+package weka.analyzers;
+
+/**
+ * Compact matrix of per Instance, per class prediction scores stored in a
+ * single row major float array. Rows can either be class probability
+ * distributions or counts of how many times each class was predicted, in
+ * both cases fraction() gives the normalized score of a class.
+ */
+public class ClassDistributions {
+
+    /** Scores, the score of class j for Instance i is at i * numClasses + j */
+    private final float[] values;
+
+    /** Number of classes per Instance */
+    private final int numClasses;
+
+    /**
+     * Constructs a ClassDistributions with all scores set to zero.
+     *
+     * @param numInstances number of Instances to hold scores for
+     * @param numClasses number of classes per Instance
+     */
+    public ClassDistributions(int numInstances, int numClasses) {
+        this(new float[numInstances * numClasses], numClasses);
+    }
+
+    /**
+     * Constructs a ClassDistributions backed by an existing array.
+     *
+     * @param values row major array of scores
+     * @param numClasses number of classes per Instance
+     */
+    ClassDistributions(float[] values, int numClasses) {
+        this.values = values;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * Builds a ClassDistributions from per Instance per class counts as
+     * returned by RunClassifier.runClassifier(data, classifier, numFolds,
+     * iterations, log).
+     *
+     * @param counts counts[i][j] being the number of times class j was
+     *               predicted for Instance i
+     * @return ClassDistributions of the counts
+     */
+    public static ClassDistributions fromCounts(double[][] counts) {
+        int numClasses = counts.length == 0 ? 0 : counts[0].length;
+        ClassDistributions dist = new ClassDistributions(counts.length, numClasses);
+        for(int i = 0; i < counts.length; i++) {
+            dist.set(i, counts[i]);
+        }
+        return dist;
+    }
+
+    /**
+     * @return the number of Instances this holds scores for
+     */
+    public int numInstances() {
+        return numClasses == 0 ? 0 : values.length / numClasses;
+    }
+
+    /**
+     * @return the number of classes per Instance
+     */
+    public int numClasses() {
+        return numClasses;
+    }
+
+    /**
+     * @return the row major array backing this
+     */
+    float[] values() {
+        return values;
+    }
+
+    /**
+     * Sets the scores of an Instance.
+     *
+     * @param instance index of the Instance
+     * @param scores the scores, one per class
+     */
+    public void set(int instance, double[] scores) {
+        int offset = instance * numClasses;
+        for(int j = 0; j < numClasses; j++) {
+            values[offset + j] = (float) scores[j];
+        }
+    }
+
+    /**
+     * Gets the raw score of a class for an Instance.
+     *
+     * @param instance index of the Instance
+     * @param classIndex index of the class
+     * @return the score
+     */
+    public double get(int instance, int classIndex) {
+        return values[instance * numClasses + classIndex];
+    }
+
+    /**
+     * Gets the score of a class for an Instance divided by the total
+     * score of that Instance.
+     *
+     * @param instance index of the Instance
+     * @param classIndex index of the class
+     * @return the normalized score
+     */
+    public double fraction(int instance, int classIndex) {
+        int offset = instance * numClasses;
+        double sum = 0;
+        for(int j = 0; j < numClasses; j++) {
+            sum += values[offset + j];
+        }
+        return values[offset + classIndex] / sum;
+    }
+
+    /**
+     * Returns the class with the highest score for an Instance, ties go
+     * to the class with the lowest index.
+     *
+     * @param instance index of the Instance
+     * @return index of the predicted class
+     */
+    public int predictedClass(int instance) {
+        int offset = instance * numClasses;
+        int best = 0;
+        for(int j = 1; j < numClasses; j++) {
+            if(values[offset + j] > values[offset + best]) {
+                best = j;
+            }
+        }
+        return best;
+    }
+}
@@ -62,6 +62,28 @@ public class ConfusionMatrixVisualizer extends GenerateVisualizerWindow {
         }
     }
 
+    /**
+     * Constructs a new ConfusionMatrixVisualizer from per class scores, each
+     * Instance is treated as being predicted as its highest scoring class.
+     *
+     * @param name name the visualization should have
+     * @param height height the visualization should have
+     * @param width width height the visualization should have
+     * @param data Instances to display
+     * @param predictions ClassDistributions of the scores per class per Instance
+     * @param idIndex  Attribute to use an ID, -1 if there is no such attribute
+     */
+    public ConfusionMatrixVisualizer(String name, int height, int width,
+            Instances data, ClassDistributions predictions, int idIndex) {
+        super(name, height, width);
+        this.data = data;
+        this.idIndex = idIndex;
+        classPredictions = new int[predictions.numInstances()];
+        for(int i = 0; i < classPredictions.length; i++){
+            classPredictions[i] = predictions.predictedClass(i);
+        }
+    }
+
     @Override
     protected JComponent generateJComponent() {
         final int numClasses = data.classAttribute().numValues();
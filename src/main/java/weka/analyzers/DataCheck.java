@@ -2,6 +2,8 @@ package weka.analyzers;
 
 import weka.analyzers.AnalyzerUtils.GeneratePlotWindow;
 import weka.analyzers.AnalyzerUtils.GenerateTextWindow;
+import weka.analyzers.mineData.BitVector;
+import weka.analyzers.mineData.ColumnarInstances;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -81,9 +83,11 @@ public class DataCheck extends Analyzer {
         this.idIndex = idIndex;
         StringBuilder report = new StringBuilder();
         List<GenerateVisualization> GVs= new ArrayList<GenerateVisualization>();
+        // Shared by the column oriented checks
+        ColumnarInstances columns = new ColumnarInstances(data);
         if(doChecks[ATTRIBUTES]) {
             logger.statusMessage("Checking for poor Attributes");
-            checkAttributes(data, report);
+            checkAttributes(columns, report);
         }
         if(doChecks[NOISE] || doChecks[DUPLICATES]) {
             if(doChecks[NOISE] && doChecks[DUPLICATES])
@@ -94,19 +98,19 @@ public class DataCheck extends Analyzer {
                 logger.statusMessage("Checking for Duplicates");
             checkNoiseAndDuplicates(data, report, GVs);
         }
-        Instances filteredData;
+        ColumnarInstances filteredColumns;
         if(idIndex >= 0) {
-            filteredData = AnalyzerUtils.removeColumn(data, idIndex);
+            filteredColumns = columns.removeColumn(idIndex);
         } else {
-            filteredData = data;
+            filteredColumns = columns;
         }
         if(doChecks[CORRELATION]) {
             logger.statusMessage("Checking Attribute Correlation");
-            checkCorrelation(filteredData, report, GVs);
+            checkCorrelation(filteredColumns, report, GVs);
         }
         if(doChecks[UNKNOWNS]) {
             logger.statusMessage("Checking Unknowns");
-            checkUnknowns(filteredData, report, GVs);
+            checkUnknowns(filteredColumns, report, GVs);
         }
         logger.statusMessage("DataCheck done");
         return new AnalyzerOutput(report.toString(),
@@ -185,12 +189,12 @@ public class DataCheck extends Analyzer {
      * Appends a summary of the unknown values to curReport and adds
      * a more complete break down to curGVs
      *
-     * @param data Instances to count unknowns for
+     * @param data ColumnarInstances to count unknowns for
      * @param curReport StringBuilder to append the summary to
      * @param curGVs List of GenerateVisualization to append an unknown count
      *               GenerateVisualization to
      */
-    private void checkUnknowns(Instances data, StringBuilder curReport,
+    private void checkUnknowns(ColumnarInstances data, StringBuilder curReport,
             List<GenerateVisualization> curGVs) {
         curReport.append("\n**** Checking Unknowns ****\n");
         StringBuilder report = new StringBuilder("Unknown values report\n");
@@ -288,31 +292,50 @@ public class DataCheck extends Analyzer {
      * instance and an array of the number of missing values per attribute
      */
     public int[][] countUnknowns(Instances data) {
-        // For instances
+        return countUnknowns(new ColumnarInstances(data));
+    }
+
+    /**
+     * Counts the unknowns values in a ColumnarInstances.
+     *
+     * @param data ColumnarInstances to count unknown values from
+     * @return int[][] containing an array of the number of missing values per
+     * attribute and an array of the number of missing values per instance
+     */
+    public int[][] countUnknowns(ColumnarInstances data) {
         int[] unknownAtt = new int[data.numAttributes()];
         int[] unknownInstances = new int[data.numInstances()];
-        for(int i = 0; i < data.numInstances(); i++) {
-            Instance cur = data.instance(i);
-            for(int j = 0; j < data.numAttributes(); j++) {
-                if(cur.isMissing(j)) {
-                    unknownAtt[j]++;
-                    unknownInstances[i]++;
-                }
+        for(int j = 0; j < data.numAttributes(); j++) {
+            BitVector missing = data.missing(j);
+            if(missing == null) {
+                continue;
+            }
+            unknownAtt[j] = missing.cardinality();
+            for(int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+                unknownInstances[i]++;
             }
         }
         return new int[][] {unknownAtt, unknownInstances};
     }
 
-    // Builds up a count of value to ocurrances from an attribute in a Instances
-    private Map<Double, Integer> count(Instances data, int attIndex) {
+    // Builds up a count of value to ocurrances from an attribute in a ColumnarInstances
+    private Map<Double, Integer> count(ColumnarInstances data, int attIndex) {
         Map<Double, Integer> countMap = new HashMap<Double, Integer>();
-        for(int i = 0; i < data.numInstances(); i++) {
-            Double val = data.instance(i).value(attIndex);
-            if(countMap.containsKey(val)) {
-                countMap.put(val, countMap.get(val) + 1);
-            } else {
-                countMap.put(val, 1);
+        if(data.attribute(attIndex).isNominal()) {
+            int[] counts = data.valueCounts(attIndex);
+            for(int v = 0; v < counts.length; v++) {
+                if(counts[v] > 0) {
+                    countMap.put((double) v, counts[v]);
+                }
+            }
+            if(data.missingCount(attIndex) > 0) {
+                countMap.put(Instance.missingValue(), data.missingCount(attIndex));
             }
+            return countMap;
+        }
+        for(double val : data.column(attIndex)) {
+            Integer cur = countMap.get(val);
+            countMap.put(val, cur == null ? 1 : cur + 1);
         }
         return countMap;
     }
@@ -325,6 +348,17 @@ public class DataCheck extends Analyzer {
      * @param curReport StringBuilder to append the report to
      */
     public void checkAttributes(Instances data, StringBuilder curReport) {
+        checkAttributes(new ColumnarInstances(data), curReport);
+    }
+
+    /**
+     * Examines a ColumnarInstances appends a summary of a sanity check of the
+     * attributes to a StringBuilder.
+     *
+     * @param data ColumnarInstances to examine
+     * @param curReport StringBuilder to append the report to
+     */
+    public void checkAttributes(ColumnarInstances data, StringBuilder curReport) {
         curReport.append("\n**** Checking attributes ****\n");
         int commentsAdded = 0;
         for(int i = 0; i < data.numAttributes(); i++) {
@@ -395,36 +429,57 @@ public class DataCheck extends Analyzer {
      */
     public void checkCorrelation(Instances data, StringBuilder curReport,
             List<GenerateVisualization> curGVs) {
+        checkCorrelation(new ColumnarInstances(data), curReport, curGVs);
+    }
+
+    /**
+     * Calculates the correlation coefficient matrix between the attributes
+     * of a ColumnarInstances and appends a report and a GenerateVisualization
+     * to the given StringBuilder and GenerateVisualization List.
+     *
+     * @param data ColumnarInstances to examine
+     * @param curReport StringBuilder to append the report to
+     * @param curGVs List of GenerateVisualization to append any additional output to
+     */
+    public void checkCorrelation(ColumnarInstances data, StringBuilder curReport,
+            List<GenerateVisualization> curGVs) {
         Queue<Correlation> q = new PriorityQueue<Correlation>(numTopCorrelationsToPrint);
         int numAtt = data.numAttributes();
         curReport.append("\n**** Checking attribute correlation ****\n");
         int corrPairs = 0;
         double[][] corrMatrix = new double[numAtt][numAtt];
+        int numInst = data.numInstances();
 
+        // Only one column is decoded at a time, numeric columns are read from
+        // the snapshot directly and nominal ones are decoded from their codes
         double[][] avsAndVar = new double[numAtt][2];
-        for(int j = 0; j < data.numInstances(); j++) {
-            for(int i = 0; i < numAtt; i++) {
-                avsAndVar[i][0] += data.instance(j).value(i);
-            }
-        }
         for(int i = 0; i < numAtt; i++) {
-            avsAndVar[i][0] /= (double) data.numInstances();
-        }
-        for(int j = 0; j < data.numInstances(); j++) {
-            for(int i = 0; i < numAtt; i++) {
-                avsAndVar[i][1] += Math.pow(data.instance(j).value(i) - avsAndVar[i][0],2);
+            double[] column = data.column(i);
+            double sum = 0;
+            for(int j = 0; j < numInst; j++) {
+                sum += column[j];
+            }
+            avsAndVar[i][0] = sum / (double) numInst;
+            double mean = avsAndVar[i][0];
+            double sumSq = 0;
+            for(int j = 0; j < numInst; j++) {
+                double diff = column[j] - mean;
+                sumSq += diff * diff;
             }
+            avsAndVar[i][1] = sumSq;
         }
         for(int i = 0; i < corrMatrix.length; i++) {
             corrMatrix[i][i] = 1.0;
+            double[] column1 = data.column(i);
             for(int j = i+1; j < corrMatrix.length; j++) {
                 if(avsAndVar[i][1]*avsAndVar[j][1] == 0) {
                     corrMatrix[i][j] = 0;
                 } else {
+                    double mean1 = avsAndVar[i][0];
+                    double mean2 = avsAndVar[j][0];
                     double y12 = 0.0;
-                    for(int k = 0; k < data.numInstances(); k++) {
-                        y12 += (data.instance(k).value(i) - avsAndVar[i][0]) *
-                                    (data.instance(k).value(j) - avsAndVar[j][0]);
+                    for(int k = 0; k < numInst; k++) {
+                        y12 += (column1[k] - mean1) * (data.value(k, j) - mean2);
                     }
                     corrMatrix[i][j] = y12 / Math.sqrt(Math.abs(avsAndVar[i][1] * avsAndVar[j][1]));
                 }
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -28,8 +29,9 @@ import java.util.concurrent.Future;
 /**
  *  Analyzer that computes the accuracy of a number of classifiers on the
  *  data then plots each data point based on the average accuracy of the
- *  classifiers and entropy of the classifiers output.
- *  Can be used to identify noise or hard to classifier data points.
+ *  classifiers and entropy of the classifiers output. For numeric classes
+ *  the mean absolute error and standard deviation of the predictions are
+ *  used instead. Can be used to identify noise or hard to classifier data points.
  *  Classifiers can be run in multiple threads.
  *
  *  See:
@@ -43,9 +45,9 @@ import java.util.concurrent.Future;
  * threads, (thread.stop is used elsewhere in Weka core to halt Classifiers as well).
  * Sadly we can't use nice ExecutorService classes since we cannot stop threads with them.
  * Thus we have one thread to build the classifier and one to monitor and kill that thread
- * if it takes too long.
+ * if it takes too long. Folds that thread runs on the shared fold pool are cancelled
+ * along with it, see RunClassifiers.
  */
-// TODO handle regression and binary classification using std instead of entropy
 // TODO the classifier list format could be much improved
 // TODO preprocess the list to ensure it is formatted correctly
 // TODO more efficient if each thread updates one data structure with results
@@ -71,6 +73,13 @@ public class EntropyVsAccuracy extends Analyzer {
     /** Number of threads to build classifiers with */
     private int numThreads = 2;
 
+    /**
+     * Number of threads shared between the classifiers to build and test
+     * their cross validation folds with, 1 to run each classifier's folds
+     * serially
+     */
+    private int foldThreads = 1;
+
     /** How long to wait for classifiers to finish */
     private long timeout = 60;
 
@@ -201,9 +210,11 @@ public class EntropyVsAccuracy extends Analyzer {
      *  Class that reads lines from a line reader, builds the specified
      *  Classifier, uses it to acquire classifications for the data killing
      *  the Classifier if it takes too long. Thread safe, we assume several of
-     *  this are running at once.
+     *  this are running at once. Predictions are collected as counts per class
+     *  if the data has a nominal class or as PredictionStatistics if it has a
+     *  numeric class.
      */
-    private class RunClassifiers implements Callable<int[][]> {
+    private class RunClassifiers implements Callable<Void> {
 
         /** Data to build the classifier from */
         private final Instances data;
@@ -220,13 +231,31 @@ public class EntropyVsAccuracy extends Analyzer {
         /** Logger to log output to */
         private final Logger logger;
 
+        /** ExecutorService to run the folds on, null to run them serially */
+        private final ExecutorService foldExecutor;
+
+        /** Number of times each class was predicted per Instance, null if the class is numeric */
+        private final int[][] counts;
+
+        /** Statistics of the predictions per Instance, null if the class is nominal */
+        private final PredictionStatistics statistics;
+
         public RunClassifiers(Instances data, LineNumberReader lnr,
-                              Vector <ClfErrorMsg> errors, Vector<ClfStats> stats, Logger logger) {
-            this.data = new Instances(data); // Ensure ita a private copy
+                              Vector <ClfErrorMsg> errors, Vector<ClfStats> stats, Logger logger,
+                              ExecutorService foldExecutor) {
+            this.data = data; // Only read, so can be shared between threads
             this.lnr = lnr;
             this.errors = errors;
             this.logger = logger;
             this.stats = stats;
+            this.foldExecutor = foldExecutor;
+            if(data.classAttribute().isNumeric()) {
+                counts = null;
+                statistics = new PredictionStatistics(data.numInstances());
+            } else {
+                counts = new int[data.numInstances()][data.numClasses()];
+                statistics = null;
+            }
         }
 
         /** Print a message to the log, if a Logger is in use */
@@ -248,16 +277,12 @@ public class EntropyVsAccuracy extends Analyzer {
 
         @SuppressWarnings("deprecation") // Need use of Thread.stop()
         @Override
-        public int[][] call() {
-            int[] indices = new int[data.numInstances()];
-            for(int i = 0; i < indices.length; i++) {
-                indices[i] = i;
-            }
-            int[][] output = new int[data.numInstances()][data.numClasses()];
+        public Void call() {
+            Random rand = new Random();
             RunClassifier.RunnableClassifier rc;
             while(true) {
                 if(Thread.currentThread().isInterrupted()) {
-                    return output;
+                    return null;
                 }
                 // Grab the next Classifier
                 String line;
@@ -266,24 +291,25 @@ public class EntropyVsAccuracy extends Analyzer {
                     synchronized(lnr) {
                         line = lnr.readLine();
                         if(line == null) {
-                            return output;
+                            return null;
                         }
                         lineNumber = lnr.getLineNumber();
                     }
                 } catch (IOException e) {
                     reportError("Thread interrupted by IOException!/n" + e.getMessage(),
                             "Load Error", -1);
-                    return output;
+                    return null;
                 }
                 try {
-                    rc = new RunClassifier.RunnableClassifier(data, cvFolds, loadClassifier(line));
+                    rc = new RunClassifier.RunnableClassifier(data,
+                            CVFolds.randomized(data.numInstances(), cvFolds, rand),
+                            loadClassifier(line), foldExecutor);
                 } catch (Exception e) {
                     reportError("Error loading classifier", line, lineNumber);
                     continue;
                 }
 
                 // Run it and collect the result
-                AnalyzerUtils.shuffleInSync(data, indices);
                 logMsg("Starting classifier " + lineNumber + " : " + line);
                 Thread t = new Thread(rc);
                 try {
@@ -292,14 +318,23 @@ public class EntropyVsAccuracy extends Analyzer {
                     if(t.isAlive()) {
                         reportError("Classifier timed out", line, lineNumber);
                         t.stop();
+                        rc.cancelFolds();
                     } else if(rc.ex != null) {
                         reportError("Problem building classifier:/n" +
                                 rc.ex.getMessage(), line, lineNumber);
+                    } else if(statistics != null) {
+                        double error = 0;
+                        for(int i = 0; i < rc.output.length; i++) {
+                            double actual = data.instance(i).classValue();
+                            statistics.add(i, rc.output[i], actual);
+                            error += Math.abs(rc.output[i] - actual);
+                        }
+                        stats.add(new ClfStats(line, lineNumber, error / data.numInstances()));
                     } else {
                         double correct = 0;
                         for(int i = 0; i < rc.output.length; i++) {
                             double pred = rc.output[i];
-                            output[indices[i]][(int)pred]++;
+                            counts[i][(int)pred]++;
                             if(pred == data.instance(i).classValue()) {
                                 correct++;
                             }
@@ -308,7 +343,8 @@ public class EntropyVsAccuracy extends Analyzer {
                     }
                 } catch(InterruptedException e) {
                     t.stop();
-                    return output;
+                    rc.cancelFolds();
+                    return null;
                 }
             }
         }
@@ -353,50 +389,118 @@ public class EntropyVsAccuracy extends Analyzer {
      */
     public int[][] run(Instances data, Logger logger,
                        Vector<ClfErrorMsg> errors, Vector<ClfStats> stats) throws Exception {
+        int[][] allPredictions = new int[data.numInstances()][data.numClasses()];
+        for(RunClassifiers worker : runWorkers(data, logger, errors, stats)) {
+            for(int i = 0; i < data.numInstances(); i++) {
+                for(int j = 0; j < data.numClasses(); j++) {
+                    allPredictions[i][j] += worker.counts[i][j];
+                }
+            }
+        }
+        return allPredictions;
+    }
+
+    /**
+     * Reads Classifier's from the currently set file and runs them on an
+     * Instances with a numeric class, as run(data, logger, errors, stats), and
+     * collects statistics of the predictions per Instance. The per classifier
+     * stats are the classifier's mean absolute error.
+     *
+     * @param data Instances to run the classifiers on
+     * @param logger Logger to write status updates to
+     * @param errors Vector to append error messages to
+     * @param stats Vector to per classifier stats to
+     * @return statistics of the predictions made for each Instance
+     * @throws Exception if there was a problem building or running the Classifiers
+     */
+    public PredictionStatistics runNumeric(Instances data, Logger logger,
+                       Vector<ClfErrorMsg> errors, Vector<ClfStats> stats) throws Exception {
+        PredictionStatistics allPredictions = new PredictionStatistics(data.numInstances());
+        for(RunClassifiers worker : runWorkers(data, logger, errors, stats)) {
+            allPredictions.merge(worker.statistics);
+        }
+        return allPredictions;
+    }
+
+    /**
+     * Runs every Classifier in the currently set file on numThreads worker
+     * threads and waits for them to finish.
+     *
+     * @param data Instances to run the classifiers on
+     * @param logger Logger to write status updates to
+     * @param errors Vector to append error messages to
+     * @param stats Vector to per classifier stats to
+     * @return the finished workers, each holding the predictions of the
+     * classifiers it ran
+     * @throws Exception if there was a problem building or running the Classifiers
+     */
+    private List<RunClassifiers> runWorkers(Instances data, Logger logger,
+                       Vector<ClfErrorMsg> errors, Vector<ClfStats> stats) throws Exception {
         data = new Instances(data);
         LineNumberReader lnr = new LineNumberReader(new FileReader(classifierFilePath));
 
-        int[][] allPredictions = new int[data.numInstances()][data.numClasses()];
-
-        // Start the worker threads
+        // Start the worker threads. Timing out a classifier stops the thread
+        // waiting on its folds and cancels the folds it submitted to the fold
+        // pool, so its queued folds do not hold up the next classifiers.
         ExecutorService threadExecutor = Executors.newFixedThreadPool(numThreads);
-        List<Future<int[][]>> futureList = new ArrayList<Future<int[][]>>();
+        ExecutorService foldExecutor = foldThreads > 1 ?
+                Executors.newFixedThreadPool(foldThreads) : null;
+        List<RunClassifiers> workers = new ArrayList<RunClassifiers>();
+        List<Future<Void>> futureList = new ArrayList<Future<Void>>();
         for(int i = 0; i < numThreads; i++) {
-            futureList.add(threadExecutor.submit(new RunClassifiers(data, lnr, errors, stats, logger)));
+            RunClassifiers worker = new RunClassifiers(data, lnr, errors, stats,
+                    logger, foldExecutor);
+            workers.add(worker);
+            futureList.add(threadExecutor.submit(worker));
         }
 
-        // Collect the output
-        for(Future<int[][]> partialOutputs : futureList) {
-            int[][] partialOutput = partialOutputs.get();
-            for(int i = 0; i < data.numInstances(); i++) {
-                for(int j = 0; j < data.numClasses(); j++) {
-                    allPredictions[i][j] += partialOutput[i][j];
-                }
-            }
+        // Wait for the output
+        for(Future<Void> future : futureList) {
+            future.get();
         }
         lnr.close();
         threadExecutor.shutdown();
-        return allPredictions;
+        if(foldExecutor != null) {
+            foldExecutor.shutdown();
+        }
+        return workers;
     }
 
     @Override
     public AnalyzerOutput analyzeData(Instances data, int idIndex, Logger logger) throws Exception {
         final Vector<ClfErrorMsg> errors = new Vector<ClfErrorMsg>();
         final Vector<ClfStats> stats = new Vector<ClfStats>();
-        int[][] allPredictions = run(idIndex == -1 ? data : AnalyzerUtils.removeColumn(data, idIndex),
-                logger, errors, stats);
-        int totalClassifiers = Utils.sum(allPredictions[0]);
-        StringBuilder report = new StringBuilder("Finished! Used " + totalClassifiers + " classifiers/n");
-        int correct = 0;
-        for(int i = 0; i < data.numInstances(); i++) {
-            correct += allPredictions[i][(int) data.instance(i).classValue()];
+        Instances classifierData = idIndex == -1 ? data :
+                AnalyzerUtils.removeColumn(data, idIndex);
+        StringBuilder report;
+        final Instances modifiedData;
+        if(data.classAttribute().isNumeric()) {
+            PredictionStatistics allPredictions = runNumeric(classifierData, logger,
+                    errors, stats);
+            report = new StringBuilder("Finished! Used " + allPredictions.count(0) + " classifiers/n");
+            report.append(String.format("Average mean absolute error was %.3f%n",
+                    allPredictions.meanAbsoluteError()));
+            Collections.sort(stats);
+            ClfStats best = stats.get(0);
+            report.append(String.format("Best classifier was (%d) %s with %.4f mean absolute error%n",
+                    best.clfNum, best.clf, best.score));
+            modifiedData = addErrorAndDeviation(allPredictions, data);
+        } else {
+            int[][] allPredictions = run(classifierData, logger, errors, stats);
+            int totalClassifiers = Utils.sum(allPredictions[0]);
+            report = new StringBuilder("Finished! Used " + totalClassifiers + " classifiers/n");
+            int correct = 0;
+            for(int i = 0; i < data.numInstances(); i++) {
+                correct += allPredictions[i][(int) data.instance(i).classValue()];
+            }
+            report.append(String.format("Average accuracy was %.3f%n",
+                    ((double) correct) / (totalClassifiers*data.numInstances())));
+            Collections.sort(stats, Collections.reverseOrder());
+            ClfStats best = stats.get(0);
+            report.append(String.format("Best classifier was (%d) %s with %.4f accuracy%n",
+                    best.clfNum, best.clf, best.score));
+            modifiedData = addEntropyAndAccuracy(allPredictions, data);
         }
-        report.append(String.format("Average accuracy was %.3f%n",
-                ((double) correct) / (totalClassifiers*data.numInstances())));
-        Collections.sort(stats, Collections.reverseOrder());
-        ClfStats best = stats.get(0);
-        report.append(String.format("Best classifier was (%d) %s with %.4f accuracy%n",
-                best.clfNum, best.clf, best.score));
         report.append("Classifier ranking saved to classifiers");
         int resultOffset = 0;
         if(errors.size() > 0) {
@@ -419,7 +523,6 @@ public class EntropyVsAccuracy extends Analyzer {
                 return buildStatsTable(stats);
             }
         };
-        final Instances modifiedData = addEntropyAndAccuracy(allPredictions, data);
         modifiedData.setClass(data.classAttribute());
         gvs[resultOffset + 1] = new AnalyzerUtils.GenerateVisualizerWindow("Classifier Scores", 500, 600) {
             protected JComponent generateJComponent() {
@@ -479,6 +582,24 @@ public class EntropyVsAccuracy extends Analyzer {
         return data;
     }
 
+    /**
+     * Adds a mean absolute error and prediction standard deviation column to
+     * Instances with a numeric class.
+     *
+     * @param predictions statistics of the predictions per Instance
+     * @param data Original data ordered in alignment with predictions
+     * @return Copy of Instances with Mean Absolute Error and Prediction Deviation columns
+     */
+    public Instances addErrorAndDeviation(PredictionStatistics predictions, Instances data) {
+        data.insertAttributeAt(new Attribute("Mean Absolute Error"), data.numAttributes());
+        data.insertAttributeAt(new Attribute("Prediction Deviation"), data.numAttributes());
+        for(int i = 0; i < data.numInstances(); i++) {
+            data.instance(i).setValue(data.numAttributes()- 2, predictions.meanAbsResidual(i));
+            data.instance(i).setValue(data.numAttributes()- 1, predictions.stdDev(i));
+        }
+        return data;
+    }
+
     @Override
     public Enumeration<Option> listOptions() {
         Vector<Option> newVector = new Vector<Option>();
@@ -491,6 +612,9 @@ public class EntropyVsAccuracy extends Analyzer {
         newVector.addElement(new Option(
                 "/tNumber of Threads/n",
                 "I", 1, "-I"));
+        newVector.addElement(new Option(
+                "\tNumber of threads to run cross validation folds with\n",
+                "P", 1, "-P"));
 
         Enumeration<Option> enu = super.listOptions();
         while (enu.hasMoreElements()) {
@@ -507,6 +631,9 @@ public class EntropyVsAccuracy extends Analyzer {
         String timeoutString = Utils.getOption('L', options);
         timeout = timeoutString.length() != 0 ? Long.parseLong(timeoutString) : 1000 * 60;
 
+        String foldThreadsString = Utils.getOption('P', options);
+        foldThreads = foldThreadsString.length() != 0 ? Integer.parseInt(foldThreadsString) : 1;
+
         classifierFilePath = Utils.getOption('F', options);
         super.setOptions(options);
     }
@@ -514,13 +641,15 @@ public class EntropyVsAccuracy extends Analyzer {
     @Override
     public String[] getOptions() {
         String [] superOptions = super.getOptions();
-        String [] options = new String [6 + superOptions.length];
+        String [] options = new String [8 + superOptions.length];
 
         int current = 0;
         options[current++] = "-C";
         options[current++] = Integer.toString(cvFolds);
         options[current++] = "-L";
         options[current++] = Long.toString(timeout);
+        options[current++] = "-P";
+        options[current++] = Integer.toString(foldThreads);
         options[current++] = "-F";
         options[current++] = classifierFilePath;
 
@@ -549,6 +678,14 @@ public class EntropyVsAccuracy extends Analyzer {
         this.numThreads = numThreads;
     }
 
+    public int getFoldThreads() {
+        return foldThreads;
+    }
+
+    public void setFoldThreads(int foldThreads) {
+        this.foldThreads = foldThreads;
+    }
+
     public long getTimeout() {
         return timeout;
     }
@@ -569,6 +706,11 @@ public class EntropyVsAccuracy extends Analyzer {
         return "Number of threads to build Classifiers with";
     }
 
+    public String foldThreadsTipText() {
+        return "Number of threads, shared by all classifiers, to build and test " +
+                "cross validation folds with. Each fold uses its own copy of the classifier.";
+    }
+
     public String timeoutToolTip() {
         return "Time in seconds to allow a classifier to run for before terminating it";
     }
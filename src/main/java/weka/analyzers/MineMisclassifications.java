@@ -1,12 +1,22 @@
 package weka.analyzers;
 
-import weka.analyzers.AnalyzerUtils.GenerateTextWindow;
 import weka.analyzers.mineData.BasicCachedRule;
 import weka.analyzers.mineData.BitInstancesView;
+import weka.analyzers.mineData.BitVector;
 import weka.analyzers.mineData.CachedRule;
 import weka.analyzers.mineData.CachedRuleConjunction;
 import weka.analyzers.mineData.CachedRuleDisjunction;
 import weka.analyzers.mineData.CachedRuleSet;
+import weka.analyzers.mineData.ColumnarInstances;
+import weka.analyzers.mineData.RuleDeduplicator;
+import weka.analyzers.mineData.RuleProgram;
+import weka.analyzers.mineData.Coverage;
+import weka.analyzers.mineData.CoverageSlicer;
+import weka.analyzers.mineData.IntersectionCache;
+import weka.analyzers.mineData.MappedRuleCatalog;
+import weka.analyzers.mineData.RulePredicate;
+import weka.analyzers.mineData.SplitCoverage;
+import weka.analyzers.mineData.ThresholdRuleFactory;
 import weka.core.Attribute;
 import weka.core.FastVector;
 import weka.core.Instance;
@@ -15,19 +25,33 @@ import weka.core.Option;
 import weka.core.Utils;
 import weka.gui.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Analyzer tha aims to find areas in the feature space that a particular
@@ -40,8 +64,6 @@ import java.util.Vector;
  * used to identify subsets of the feature space as defined by conjunctions of
  * rules that are dense in hard to classify points.
  */
-// TODO allow a prediction/target column so targets can be cached
-// TODO if pruning, shorten rules and views to only the training data
 // TODO preferable to use a single panel with a drop down menu to show rules
 // TODO support regression tasks
 public class MineMisclassifications extends ClassifierAnalyzer {
@@ -64,6 +86,41 @@ public class MineMisclassifications extends ClassifierAnalyzer {
      */
     private final double VALIDATION_SIZE = .30;
 
+    /**
+     * Largest fraction, as 1/INCREMENTAL_COUNT_DENSITY of the Instances
+     * still in the view the search runs on, of targets a found rule can
+     * remove for mineData to update the counts of the candidate rules
+     * instead of recounting them.
+     */
+    private static final int INCREMENTAL_COUNT_DENSITY = 16;
+
+    /**
+     * Probability that the score of some candidate covering at least
+     * SAMPLE_MIN_COVERAGE, estimated on a sample, is further than
+     * sampleTolerance from its true value
+     */
+    private static final double SAMPLE_FAILURE_PROBABILITY = 0.05;
+
+    /**
+     * Smallest fraction of the searched Instances a candidate must cover
+     * for the score it is estimated to have on a sample to be bounded.
+     * Scores of candidates covering less are not bounded, as the error of
+     * an estimated score grows as the coverage shrinks.
+     */
+    private static final double SAMPLE_MIN_COVERAGE = 0.01;
+
+    /** Value of the True/False attributes added by markData for True */
+    private static final double MARK_TRUE = 0;
+
+    /** Value of the True/False attributes added by markData for False */
+    private static final double MARK_FALSE = 1;
+
+    /** Seconds an idle thread of the shared pool waits for work before exiting */
+    private static final long POOL_KEEP_ALIVE_SECONDS = 60;
+
+    /** Most bytes mineData's cache of evaluated conjunctions may use */
+    private static final long INTERSECTION_CACHE_BYTES = 64L << 20;
+
     /**
      * How many unique values a feature must have before we consider using
      * quantiles to generate rules
@@ -121,9 +178,45 @@ public class MineMisclassifications extends ClassifierAnalyzer {
     /** Seed used for randomization */
     private long seed = 0L;
 
-    /** Random object to use for randomization */
-    // Seed is stored in addition to rand so we can return the set seed with getSeed()
-    private Random rand = new Random(seed);
+    /**
+     * Number of threads to build and test the classifier's folds, generate
+     * rules and score candidate conjunctions with
+     */
+    private int numThreads = 1;
+
+    /** Pool of numThreads threads shared by every parallel step, null until needed */
+    private transient ExecutorService threadPool;
+
+    /** Number of threads threadPool was created with */
+    private transient int threadPoolSize;
+
+    /**
+     * Directory to cache the classifier's predictions in, empty to
+     * not cache predictions
+     */
+    private String predictionCacheDir = "";
+
+    /**
+     * Whether to pick targets using the probability the classifier gives
+     * the true class instead of counting correct classifications
+     */
+    private boolean useProbabilities = false;
+
+    /** Whether to store rule coverage compressed when that saves memory */
+    private boolean compressRules = false;
+
+    /**
+     * Directory to store rule coverage in a memory mapped file in, empty to
+     * keep it on the heap
+     */
+    private String ruleCatalogDir = "";
+
+    /**
+     * Largest error allowed in the score a candidate covering at least
+     * SAMPLE_MIN_COVERAGE of the Instances is estimated to have when
+     * searching on a sample, 0 to search all Instances
+     */
+    private double sampleTolerance = 0.0;
 
     /** Object used to evaluate rules */
     private LaplaceAccuracy ruleEvaluator = new LaplaceAccuracy();
@@ -136,6 +229,20 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         /** For Serialization */
         private static final long serialVersionUID = -7779955511680675241L;
 
+        /**
+         * Factor k is multiplied by, the fraction of the Instances in the
+         * views being scored when they are a sample of the data
+         */
+        private final double kScale;
+
+        public LaplaceAccuracy() {
+            this(1.0);
+        }
+
+        public LaplaceAccuracy(double kScale) {
+            this.kScale = kScale;
+        }
+
         /**
          * Calculates the baseline score of a BitInstancesView, which can be
          * cached and used when evaluating rules against that View later.
@@ -172,11 +279,56 @@ public class MineMisclassifications extends ClassifierAnalyzer {
          */
         public double evalRule(CachedRule rule, int size,
                                BitInstancesView view, double baseline) {
-            BitInstancesView.RuleEvaluation eval = view.evaluateRule(rule);
-            return ((eval.targetsCovered + k*baseline) / (eval.covered + k)) -
+            return evalRule(view.evaluateRule(rule), size, baseline);
+        }
+
+        /**
+         * Calculates the score of a rule from its RuleEvaluation on a
+         * BitInstancesView, the rule size and baseline score of the view.
+         *
+         * @param eval RuleEvaluation of the rule
+         * @param size Size of the rule, usually number of basic rules
+         * @param baseline baseline score of the view
+         * @return the score
+         */
+        public double evalRule(BitInstancesView.RuleEvaluation eval, int size,
+                               double baseline) {
+            return evalRule(eval.covered, eval.targetsCovered, size, baseline);
+        }
+
+        /**
+         * Calculates the score of a rule from the number of Instances and
+         * targets it covers, its size and the baseline score of the view.
+         *
+         * @param covered number of Instances the rule covers
+         * @param targetsCovered number of targets the rule covers
+         * @param size Size of the rule, usually number of basic rules
+         * @param baseline baseline score of the view
+         * @return the score
+         */
+        public double evalRule(int covered, int targetsCovered, int size,
+                               double baseline) {
+            double scaledK = k * kScale;
+            return ((targetsCovered + scaledK*baseline) / (covered + scaledK)) -
                     size * rulePenalty;
         }
 
+        /**
+         * Calculates an upper bound on the score of any rule of a given size
+         * that covers at most a given number of targets, which is the score
+         * of a rule covering exactly that many targets and nothing else.
+         *
+         * @param targets most targets the rule can cover
+         * @param size Size of the rule
+         * @param baseline baseline score of the view the rule is evaluated on
+         * @return the bound
+         */
+        public double optimisticScore(int targets, int size, double baseline) {
+            // (t + k*b)/(t + k) only grows with t since b <= 1
+            double scaledK = k * kScale;
+            return ((targets + scaledK*baseline) / (targets + scaledK)) - size * rulePenalty;
+        }
+
         /**
          * Calculates the score of a ruleSey given a particular BitInstancesView.
          * Also requires knowing the baseline of the view.
@@ -230,7 +382,9 @@ public class MineMisclassifications extends ClassifierAnalyzer {
 
     /**
      * Class for evaluating CachedRules that are chained together as
-     * conjunctions in linked lists.
+     * conjunctions in linked lists. Ordered by score, ties are broken in
+     * favour of the RuleEval the search found first so the search does not
+     * depend on the order candidates are scored in.
      */
     private class RuleEval implements Comparable<RuleEval> {
 
@@ -243,6 +397,9 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         /** Rule at the end of the list */
         public final CachedRule rule;
 
+        /** Index of rule among the candidate rules, -1 for the empty rule */
+        public final int ruleIndex;
+
         /** Previous rule in the list, null if this is the first rule */
         public final RuleEval prev;
 
@@ -252,36 +409,73 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         /** Number of rules in the linked list */
         public final int size;
 
-        public RuleEval(CachedRule rule, RuleEval prev,
-                        double score, BitInstancesView coveredInstances) {
+        /** Position of this in the order the search considers candidates */
+        public final long order;
+
+        /** Indices of the candidate rules in the list, in ascending order */
+        public final int[] clauseIds;
+
+        public RuleEval(CachedRule rule, int ruleIndex, RuleEval prev, double score,
+                        long order, BitInstancesView coveredInstances) {
             this.rule = rule;
+            this.ruleIndex = ruleIndex;
             this.score = score;
             this.prev = prev;
+            this.order = order;
             this.coveredInstances = coveredInstances;
             if(prev != null) {
                 size = prev.size + 1;
+                clauseIds = IntersectionCache.extend(prev.clauseIds, ruleIndex);
             } else {
                 size = 0; // Always started with empty rule
+                clauseIds = new int[0];
             }
         }
 
-        public RuleEval(CachedRule rule, RuleEval prev, double score) {
-            this(rule, prev, score, null);
+        public RuleEval(CachedRule rule, int ruleIndex, RuleEval prev, double score, long order) {
+            this(rule, ruleIndex, prev, score, order, null);
+        }
+
+        /**
+         * Constructs a RuleEval extending prev whose clause ids are already
+         * known, so they are not built again.
+         */
+        public RuleEval(CachedRule rule, int ruleIndex, RuleEval prev, int[] clauseIds,
+                        double score, long order) {
+            this.rule = rule;
+            this.ruleIndex = ruleIndex;
+            this.score = score;
+            this.prev = prev;
+            this.order = order;
+            this.size = prev.size + 1;
+            this.clauseIds = clauseIds;
         }
 
         @Override
         public int compareTo(RuleEval other) {
-            return Double.compare(score, other.score);
+            int result = Double.compare(score, other.score);
+            if(result == 0) {
+                // Found later is worse
+                result = order < other.order ? 1 : (order > other.order ? -1 : 0);
+            }
+            return result;
         }
 
         /**
+         * Builds the conjunction this represents out of rules from a catalog
+         * indexed like the candidate rules, such as the full length rules the
+         * candidates were sliced from.
+         *
+         * @param catalog rules to build the conjunction from
+         * @param numInstances number of Instances the catalog's rules cover
          * @return CachedRuleConjunction of the conjunction this represents
          */
-        public CachedRuleConjunction<CachedRule> reconstructConjunction() {
-            CachedRuleConjunction<CachedRule> rc = new CachedRuleConjunction<CachedRule>(rule.covered().size());
+        public <T extends CachedRule> CachedRuleConjunction<T> reconstructConjunction(
+                T[] catalog, int numInstances) {
+            CachedRuleConjunction<T> rc = new CachedRuleConjunction<T>(numInstances);
             RuleEval next = this;
             while(next.prev != null) {
-                rc.add(next.rule);
+                rc.add(catalog[next.ruleIndex]);
                 next = next.prev;
             }
             rc.reverse();
@@ -289,6 +483,200 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         }
     }
 
+    /**
+     * Number of Instances and targets each candidate rule covers in the
+     * BitInstancesView a search starts from. Filled in while greedyLearnBeams
+     * extends the empty rule, after which that step reuses the counts instead
+     * of evaluating the candidates. mineData keeps the counts up to date as
+     * it removes targets from the view between searches.
+     */
+    private static class CandidateCounts {
+
+        /** Number of Instances each candidate covers */
+        public final int[] covered;
+
+        /** Number of targets each candidate covers */
+        public final int[] targets;
+
+        /** Whether the counts have been filled in and are up to date */
+        public boolean complete;
+
+        public CandidateCounts(int numCandidates) {
+            covered = new int[numCandidates];
+            targets = new int[numCandidates];
+        }
+
+        /**
+         * Updates the counts for targets being removed from the view.
+         *
+         * @param rules the candidates
+         * @param removedRows sorted indices of the removed targets
+         */
+        public void removeTargets(CachedRule[] rules, int[] removedRows) {
+            for(int r = 0; r < rules.length; r++) {
+                int removed = rules[r].covered().intersectionCardinality(removedRows);
+                covered[r] -= removed;
+                targets[r] -= removed;
+            }
+        }
+    }
+
+    /**
+     * Scores a range of candidate rules as extensions of a beam, keeping the
+     * best in a bounded queue. Candidates that can not beat the worst RuleEval
+     * in the queue, going by the most targets they could cover, are skipped
+     * without being evaluated.
+     */
+    private class ScoreCandidates implements Callable<PriorityQueue<RuleEval>> {
+
+        /** Beam being extended */
+        private final RuleEval beam;
+
+        /** Number of targets the beam covers */
+        private final int beamTargets;
+
+        /** Candidate rules */
+        private final CachedRule[] rules;
+
+        /**
+         * What each candidate covers when added to the empty rule, filled in
+         * or used when the beam is the empty rule and used as bounds otherwise
+         */
+        private final CandidateCounts counts;
+
+        /** Index of the first candidate to score */
+        private final int from;
+
+        /** Index after the last candidate to score */
+        private final int to;
+
+        /** Order of the candidate at index 0 */
+        private final long firstOrder;
+
+        /** Score a candidate must beat to be kept */
+        private final double minScore;
+
+        /** Baseline of the beam's BitInstancesView */
+        private final double baseline;
+
+        /** Cache of conjunctions evaluated in the view the search started from */
+        private final IntersectionCache cache;
+
+        /** Scores the candidates */
+        private final LaplaceAccuracy evaluator;
+
+        public ScoreCandidates(RuleEval beam, int beamTargets, CachedRule[] rules,
+                               CandidateCounts counts, int from, int to,
+                               long firstOrder, double minScore, double baseline,
+                               IntersectionCache cache, LaplaceAccuracy evaluator) {
+            this.beam = beam;
+            this.beamTargets = beamTargets;
+            this.rules = rules;
+            this.counts = counts;
+            this.from = from;
+            this.to = to;
+            this.firstOrder = firstOrder;
+            this.minScore = minScore;
+            this.baseline = baseline;
+            this.cache = cache;
+            this.evaluator = evaluator;
+        }
+
+        /**
+         * Scores the candidates into a new queue of at most beams RuleEvals.
+         *
+         * @return the queue
+         */
+        @Override
+        public PriorityQueue<RuleEval> call() {
+            PriorityQueue<RuleEval> best = new PriorityQueue<RuleEval>(beams);
+            score(best);
+            return best;
+        }
+
+        /**
+         * Scores the candidates into a queue of at most beams RuleEvals
+         * that only holds RuleEvals found before these candidates.
+         *
+         * @param queue the queue to add to
+         */
+        public void score(PriorityQueue<RuleEval> queue) {
+            boolean root = beam.prev == null;
+            double beamBound = evaluator.optimisticScore(beamTargets, beam.size + 1, baseline);
+            boolean reuseCounts = root && counts.complete;
+            for(int r = from; r < to; r++) {
+                // The empty rule is never skipped so the counts are complete
+                if(!root) {
+                    if(queue.size() == beams && beamBound <= queue.peek().score) {
+                        // No extension of this beam can get into the queue any more
+                        return;
+                    }
+                    double bound = evaluator.optimisticScore(
+                            Math.min(beamTargets, counts.targets[r]), beam.size + 1, baseline);
+                    if(bound <= minScore || (queue.size() == beams && bound <= queue.peek().score)) {
+                        continue;
+                    }
+                }
+                double newScore;
+                int[] ids = null;
+                if(reuseCounts) {
+                    newScore = evaluator.evalRule(counts.covered[r], counts.targets[r],
+                            beam.size + 1, baseline);
+                } else if(root) {
+                    BitInstancesView.RuleEvaluation eval = beam.coveredInstances.evaluateRule(rules[r]);
+                    counts.covered[r] = eval.covered;
+                    counts.targets[r] = eval.targetsCovered;
+                    newScore = evaluator.evalRule(eval, beam.size + 1, baseline);
+                } else {
+                    // Other beams reach the same conjunction with the clauses in another order
+                    ids = IntersectionCache.extend(beam.clauseIds, r);
+                    BitInstancesView.RuleEvaluation eval =
+                            cache.evaluate(ids, beam.coveredInstances, rules[r]);
+                    newScore = evaluator.evalRule(eval, beam.size + 1, baseline);
+                }
+                // Ties go to what is already in the queue since it was found first
+                if(newScore > minScore &&
+                        (queue.size() < beams || newScore > queue.peek().score)) {
+                    offerBounded(queue, ids == null ?
+                            new RuleEval(rules[r], r, beam, newScore, firstOrder + r) :
+                            new RuleEval(rules[r], r, beam, ids, newScore, firstOrder + r));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a RuleEval to a queue holding at most beams RuleEvals, dropping
+     * the worst one if it is full. Conjunctions of the same rules in a
+     * different order cover the same Instances and get the same score, so
+     * if the queue already holds the same conjunction only the better of
+     * the two, which is the one found first, is kept. That way every beam
+     * explores a different conjunction.
+     *
+     * @param queue the queue
+     * @param ruleEval RuleEval to add
+     */
+    private void offerBounded(PriorityQueue<RuleEval> queue, RuleEval ruleEval) {
+        RuleEval same = null;
+        for(RuleEval queued : queue) {
+            if(Arrays.equals(queued.clauseIds, ruleEval.clauseIds)) {
+                same = queued;
+                break;
+            }
+        }
+        if(same != null) {
+            if(ruleEval.compareTo(same) > 0) {
+                queue.remove(same);
+                queue.offer(ruleEval);
+            }
+        } else if(queue.size() < beams) {
+            queue.offer(ruleEval);
+        } else if(ruleEval.compareTo(queue.peek()) > 0) {
+            queue.poll();
+            queue.offer(ruleEval);
+        }
+    }
+
     /**
      * Finds the best rule conjunction we can using beam search.
      *
@@ -296,10 +684,57 @@ public class MineMisclassifications extends ClassifierAnalyzer {
      * @param rules CachedRules to search through
      * @param baseline of the BitInstancesView
      * @return best rule conjunction found
+     * @throws Exception if the search was interrupted
+     */
+    public CachedRuleConjunction<CachedRule> greedyLearnBeams(BitInstancesView iv,
+            Collection<CachedRule> rules, double baseline) throws Exception {
+        return greedyLearnBeams(iv, rules, baseline, null);
+    }
+
+    /**
+     * Finds the best rule conjunction we can using beam search. If executor
+     * is non-null the candidates of each step are scored in parallel on
+     * executor, each task keeping its own bounded queue of the best
+     * candidates, and the queues are merged once the step is done. Since
+     * ties are broken by the order the serial search would find candidates
+     * in the result is the same either way.
+     *
+     * @param iv BitInstancesView of Instances to evaluate rules with
+     * @param rules CachedRules to search through
+     * @param baseline of the BitInstancesView
+     * @param executor ExecutorService to score candidates on, or null to
+     *                 score them in the calling thread
+     * @return best rule conjunction found
+     * @throws Exception if the search was interrupted
      */
     public CachedRuleConjunction<CachedRule> greedyLearnBeams(BitInstancesView iv,
-            Collection<CachedRule> rules, double baseline) {
-        CachedRule emptyRule = BasicCachedRule.emptyRule(iv.size());
+            Collection<CachedRule> rules, double baseline,
+            ExecutorService executor) throws Exception {
+        CachedRule[] ruleArray = rules.toArray(new CachedRule[rules.size()]);
+        return greedyLearnBeams(iv, ruleArray, new CandidateCounts(ruleArray.length),
+                new IntersectionCache(INTERSECTION_CACHE_BYTES), ruleEvaluator, baseline, executor)
+                .get(0).reconstructConjunction(ruleArray, iv.numInstances());
+    }
+
+    /**
+     * Finds the best rule conjunction we can using beam search.
+     *
+     * @param iv BitInstancesView of Instances to evaluate rules with
+     * @param ruleArray CachedRules to search through
+     * @param counts what each rule covers in iv if complete, otherwise
+     *               filled in while extending the empty rule
+     * @param cache cache of conjunctions evaluated in iv
+     * @param evaluator LaplaceAccuracy to score conjunctions with
+     * @param baseline of the BitInstancesView
+     * @param executor ExecutorService to score candidates on, or null to
+     *                 score them in the calling thread
+     * @return RuleEvals of the final beams, best first
+     * @throws Exception if the search was interrupted
+     */
+    private List<RuleEval> greedyLearnBeams(BitInstancesView iv,
+            CachedRule[] ruleArray, CandidateCounts counts, IntersectionCache cache,
+            LaplaceAccuracy evaluator, double baseline, ExecutorService executor) throws Exception {
+        CachedRule emptyRule = BasicCachedRule.emptyRule(iv.numInstances());
 
         // Marks beams which do not need to explore
         boolean[] doneBeams = new boolean[beams];
@@ -311,31 +746,39 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         // Best rules overall, even mid iteration, ordered from worst to best
         PriorityQueue<RuleEval> bestRuleQueue = new PriorityQueue<RuleEval>(beams);
 
-        double baseScore = ruleEvaluator.evalRule(emptyRule, 0, iv, baseline);
-        RuleEval empty = new RuleEval(emptyRule, null, baseScore, iv.copy());
+        double baseScore = evaluator.evalRule(emptyRule, 0, iv, baseline);
+        RuleEval empty = new RuleEval(emptyRule, -1, null, baseScore, 0, iv.copy());
         for(int i = 0; i < beams; i++) {
             bestRuleQueue.add(empty);
             curBestRules.add(empty);
         }
 
+        // Order of the first candidate of the current step
+        long stepOrder = 1;
         boolean allBeamsDone = false;
         while(!allBeamsDone) {
             // Figure out what the best extension of the current best rules are
-            for(int k = 0; k < beams; k++) {
-                if(!doneBeams[k]) {
-                    RuleEval rc = curBestRules.get(k);
-                    for(CachedRule newRule : rules) {
-                        double newScore = ruleEvaluator.evalRule(newRule, rc.size + 1,
-                                rc.coveredInstances, baseline);
-                        if(newScore > bestRuleQueue.peek().score) {
-                            bestRuleQueue.poll();
-                            bestRuleQueue.offer(new RuleEval(newRule, rc, newScore));
-                        }
+            if(executor == null) {
+                for(int k = 0; k < beams; k++) {
+                    if(!doneBeams[k]) {
+                        RuleEval rc = curBestRules.get(k);
+                        new ScoreCandidates(rc, rc.coveredInstances.targets(), ruleArray,
+                                counts, 0, ruleArray.length,
+                                stepOrder + (long) k * ruleArray.length, Double.NEGATIVE_INFINITY,
+                                baseline, cache, evaluator).score(bestRuleQueue);
                     }
                 }
+            } else {
+                scoreInParallel(curBestRules, doneBeams, ruleArray, counts, cache, evaluator,
+                        stepOrder, baseline, bestRuleQueue, executor);
             }
+            // The first step always extends the empty rule
+            counts.complete = true;
+            stepOrder += (long) beams * ruleArray.length;
             curBestRules.clear();
             curBestRules.addAll(bestRuleQueue);
+            // Best first, so beams are extended in a well defined order
+            Collections.sort(curBestRules, Collections.reverseOrder());
 
             // Update our best rules, precompute coverage and mark dead ends
             allBeamsDone = true;
@@ -354,23 +797,87 @@ public class MineMisclassifications extends ClassifierAnalyzer {
                 }
             }
         }
-        Collections.sort(curBestRules);
-        return curBestRules.get(curBestRules.size() - 1).reconstructConjunction();
+        return curBestRules;
+    }
+
+    /**
+     * Scores the candidate extensions of every live beam on an
+     * ExecutorService and merges the best into bestRuleQueue.
+     *
+     * @param curBestRules the beams
+     * @param doneBeams marks beams that do not need to be extended
+     * @param rules the candidate rules
+     * @param counts what each candidate covers when added to the empty rule
+     * @param cache cache of conjunctions evaluated in the view of the search
+     * @param evaluator LaplaceAccuracy to score conjunctions with
+     * @param stepOrder order of the first candidate of this step
+     * @param baseline baseline of the beams' BitInstancesView
+     * @param bestRuleQueue queue of the best beams.size() RuleEvals to merge into
+     * @param executor ExecutorService to run the scoring on
+     * @throws Exception if the scoring failed or was interrupted
+     */
+    private void scoreInParallel(List<RuleEval> curBestRules, boolean[] doneBeams,
+            CachedRule[] rules, CandidateCounts counts, IntersectionCache cache,
+            LaplaceAccuracy evaluator, long stepOrder, double baseline,
+            PriorityQueue<RuleEval> bestRuleQueue, ExecutorService executor) throws Exception {
+        // Candidates must beat the worst current best rule, which was found before them
+        double minScore = bestRuleQueue.peek().score;
+        int chunkSize = Math.max(1, (rules.length + numThreads - 1) / numThreads);
+        List<Future<PriorityQueue<RuleEval>>> futures =
+                new ArrayList<Future<PriorityQueue<RuleEval>>>();
+        try {
+            for(int k = 0; k < curBestRules.size(); k++) {
+                if(doneBeams[k]) {
+                    continue;
+                }
+                RuleEval beam = curBestRules.get(k);
+                int beamTargets = beam.coveredInstances.targets();
+                if(beam.prev != null &&
+                        evaluator.optimisticScore(beamTargets, beam.size + 1, baseline) <= minScore) {
+                    // No extension of this beam can beat the current best rules
+                    continue;
+                }
+                for(int from = 0; from < rules.length; from += chunkSize) {
+                    futures.add(executor.submit(new ScoreCandidates(beam, beamTargets, rules,
+                            counts, from, Math.min(from + chunkSize, rules.length),
+                            stepOrder + (long) k * rules.length, minScore, baseline, cache,
+                            evaluator)));
+                }
+            }
+            for(Future<PriorityQueue<RuleEval>> future : futures) {
+                for(RuleEval ruleEval : future.get()) {
+                    offerBounded(bestRuleQueue, ruleEval);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            for(Future<PriorityQueue<RuleEval>> future : futures) {
+                future.cancel(true);
+            }
+        }
     }
 
     /**
      * Returns the unique values found in attIndex in Instances, up to
      * some maximum.
      *
-     * @param instances Instances to get unique values from
+     * @param instances ColumnarInstances to get unique values from
      * @param attIndex attribute index to get the values from
      * @param max max unique values to get before stopping
      * @return HashSet up to size max of the unique values found
      */
-    private HashSet<Double> getUniqueValues(Instances instances, int attIndex, int max) {
+    private HashSet<Double> getUniqueValues(ColumnarInstances instances, int attIndex, int max) {
         HashSet<Double> s = new HashSet<Double>();
-        for(int i = 0; i < instances.numInstances(); i++) {
-            s.add(instances.instance(i).value(attIndex));
+        double[] values = instances.column(attIndex);
+        for(int i = 0; i < values.length; i++) {
+            s.add(values[i]);
             if(s.size() == max) {
                 return s;
             }
@@ -378,105 +885,348 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         return s;
     }
 
+    /**
+     * Adds a rule to a list of rules, compacting it first if compressRules is set.
+     *
+     * @param ruleList List to add the rule to
+     * @param rule BasicCachedRule to add
+     */
+    private void addRule(List<CachedRule> ruleList, BasicCachedRule rule) {
+        ruleList.add(compressRules ? rule.compact() : rule);
+    }
+
+    /**
+     * Returns the pool of numThreads threads the folds, rule generation and
+     * candidate scoring run on. The pool is created the first time it is
+     * needed and reused by later calls, it is only replaced if numThreads
+     * changes. Its threads are daemons that exit after a minute idle, so an
+     * unused pool neither keeps the JVM running nor holds on to threads.
+     *
+     * @return the pool, or null if numThreads is one
+     */
+    private synchronized ExecutorService threadPool() {
+        if(numThreads <= 1) {
+            return null;
+        }
+        if(threadPool == null || threadPoolSize != numThreads) {
+            if(threadPool != null) {
+                threadPool.shutdown();
+            }
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(numThreads, numThreads,
+                    POOL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "MineMisclassifications worker");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            threadPool = pool;
+            threadPoolSize = numThreads;
+        }
+        return threadPool;
+    }
+
     /**
      * Builds a set of CachedRules to use when searching the rule space.
+     * Rules for different attributes are built in parallel if numThreads
+     * is more than one.
      *
      * @param instances Instances to build the rules from
      * @param targets boolean array marking which Instances are targets
      * @param idIndex index of the idAttribute
      * @return List of rules to use
+     * @throws Exception if the rules could not be built
      */
-    public List<CachedRule> generateRules(Instances instances, boolean[] targets, int idIndex) {
-        List<CachedRule> ruleList = new ArrayList<CachedRule>();
-        Instances instancesCopy = new Instances(instances);
+    public List<CachedRule> generateRules(Instances instances, boolean[] targets, int idIndex)
+            throws Exception {
+        return generateRules(instances, targets, idIndex, threadPool());
+    }
+
+    /**
+     * Builds a set of CachedRules to use when searching the rule space. If
+     * executor is non-null the rules for each attribute are built as a
+     * separate task on executor. Either way the rules are returned grouped
+     * by attribute in attribute order, so the result does not depend on
+     * how the tasks were scheduled. When pruning, the coverage of each rule
+     * is stored as a SplitCoverage of its validation and training
+     * Instances, which mineData searches and prunes on without copying.
+     *
+     * @param instances Instances to build the rules from
+     * @param targets boolean array marking which Instances are targets
+     * @param idIndex index of the idAttribute
+     * @param executor ExecutorService to build the rules on, or null to
+     *                 build them in the calling thread
+     * @return List of rules to use
+     * @throws Exception if the rules could not be built
+     */
+    public List<CachedRule> generateRules(Instances instances, final boolean[] targets,
+            int idIndex, ExecutorService executor) throws Exception {
+        int numInstances = instances.numInstances();
+        int validationSize = validationSize(numInstances);
+        MappedRuleCatalog validationCatalog = null;
+        MappedRuleCatalog trainCatalog = null;
+        try {
+            if(ruleCatalogDir.length() != 0) {
+                trainCatalog = new MappedRuleCatalog(new File(ruleCatalogDir),
+                        numInstances - validationSize);
+                if(prune) {
+                    validationCatalog = new MappedRuleCatalog(new File(ruleCatalogDir), validationSize);
+                }
+            }
+            CoverageSlicer validationSlicer = prune ?
+                    new CoverageSlicer(0, validationSize, compressRules, validationCatalog) : null;
+            CoverageSlicer trainSlicer = prune || trainCatalog != null ?
+                    new CoverageSlicer(validationSize, numInstances, compressRules, trainCatalog) : null;
+            return generateRules(instances, targets, idIndex, executor, validationSlicer, trainSlicer);
+        } finally {
+            // The rules stay readable, only the file handles are released
+            if(validationCatalog != null) {
+                validationCatalog.close();
+            }
+            if(trainCatalog != null) {
+                trainCatalog.close();
+            }
+        }
+    }
+
+    /**
+     * Builds a set of CachedRules, storing their coverage with the slicers
+     * as the rules of each attribute are merged so at most the full
+     * coverage of the attributes being built is on the heap at once.
+     *
+     * @param instances Instances to build the rules from
+     * @param targets boolean array marking which Instances are targets
+     * @param idIndex index of the idAttribute
+     * @param executor ExecutorService to build the rules on, or null to
+     *                 build them in the calling thread
+     * @param validationSlicer CoverageSlicer of the validation Instances,
+     *                         or null if the rules are not split
+     * @param trainSlicer CoverageSlicer of the Instances after the
+     *                    validation Instances, or null to keep the coverage
+     *                    as it was built
+     * @return List of rules to use
+     * @throws Exception if the rules could not be built
+     */
+    private List<CachedRule> generateRules(Instances instances, final boolean[] targets,
+            int idIndex, ExecutorService executor, CoverageSlicer validationSlicer,
+            CoverageSlicer trainSlicer) throws Exception {
+        final ColumnarInstances columns = new ColumnarInstances(instances);
+        List<Integer> attIndices = new ArrayList<Integer>();
         for(int attIndex = 0; attIndex < instances.numAttributes(); attIndex++) {
             if(!useClass && attIndex == instances.classIndex() || attIndex == idIndex) {
                 // skip id and possibly class attributes
                 continue;
             }
-            Attribute att = instances.attribute(attIndex);
-            if(att.isNominal()) {
-                // For nominal values build equals and not equals rules
-                if(att.numValues() > 1) {
-                    for(int j = 0; j < att.numValues(); j++) {
-                        ruleList.add(BasicCachedRule.EqualsRule(instances, att, j));
-                        if(att.numValues() > 2) {
-                            // Redundant to use != rules if only 2 values
-                            ruleList.add(BasicCachedRule.NotEqualsRule(instances, att, j));
+            attIndices.add(attIndex);
+        }
+        List<CachedRule> ruleList = new ArrayList<CachedRule>();
+        if(executor == null) {
+            for(int attIndex : attIndices) {
+                ruleList.addAll(storeRules(generateRules(columns, attIndex, targets),
+                        validationSlicer, trainSlicer));
+            }
+            return ruleList;
+        }
+        List<Future<List<CachedRule>>> futures = new ArrayList<Future<List<CachedRule>>>();
+        try {
+            for(final int attIndex : attIndices) {
+                futures.add(executor.submit(new Callable<List<CachedRule>>() {
+                    @Override
+                    public List<CachedRule> call() {
+                        return generateRules(columns, attIndex, targets);
+                    }
+                }));
+            }
+            // Merge in attribute order
+            for(Future<List<CachedRule>> future : futures) {
+                ruleList.addAll(storeRules(future.get(), validationSlicer, trainSlicer));
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            // No-op for completed tasks, stops the remaining ones if we failed
+            for(Future<List<CachedRule>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return ruleList;
+    }
+
+    /**
+     * Stores the coverage of the rules of an attribute with the slicers. If
+     * there is a validationSlicer each rule gets a SplitCoverage of its
+     * validation and training slices, otherwise its training slice, which
+     * covers every Instance. Slices share what the rules shared, such as the
+     * universe of ComplementCoverages.
+     *
+     * @param rules rules to store
+     * @param validationSlicer CoverageSlicer of the validation Instances, or null
+     * @param trainSlicer CoverageSlicer of the training Instances, or null
+     * @return the stored rules, or rules if trainSlicer is null
+     * @throws IOException if a catalog could not be written
+     */
+    private static List<CachedRule> storeRules(List<CachedRule> rules, CoverageSlicer validationSlicer,
+            CoverageSlicer trainSlicer) throws IOException {
+        if(trainSlicer == null) {
+            return rules;
+        }
+        List<CachedRule> stored = new ArrayList<CachedRule>(rules.size());
+        try {
+            for(CachedRule rule : rules) {
+                Coverage covered = trainSlicer.slice(rule.covered());
+                if(validationSlicer != null) {
+                    covered = new SplitCoverage(validationSlicer.slice(rule.covered()), covered);
+                }
+                stored.add(new BasicCachedRule(covered, rule.toString(), predicate(rule)));
+            }
+        } finally {
+            // The slices of this attribute are not shared with other attributes
+            trainSlicer.clear();
+            if(validationSlicer != null) {
+                validationSlicer.clear();
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @param rule a rule
+     * @return the RulePredicate of rule, or null if it is not known
+     */
+    private static RulePredicate predicate(CachedRule rule) {
+        return rule instanceof BasicCachedRule ? ((BasicCachedRule) rule).predicate() : null;
+    }
+
+    /**
+     * @param numInstances number of Instances rules are mined from
+     * @return number of Instances, at the start of the data, held out to
+     * prune rules with, zero if prune is not set
+     */
+    private int validationSize(int numInstances) {
+        return prune ? (int) (numInstances*VALIDATION_SIZE) : 0;
+    }
+
+    /**
+     * Builds the CachedRules for a single attribute. Only reads shared
+     * state, so it can be called for different attributes in parallel.
+     *
+     * @param columns ColumnarInstances to build the rules from
+     * @param attIndex index of the attribute
+     * @param targets boolean array marking which Instances are targets
+     * @return List of rules for the attribute
+     */
+    private List<CachedRule> generateRules(ColumnarInstances columns, int attIndex,
+                                           boolean[] targets) {
+        List<CachedRule> ruleList = new ArrayList<CachedRule>();
+        Attribute att = columns.attribute(attIndex);
+        if(att.isNominal()) {
+            // For nominal values build equals and not equals rules
+            if(att.numValues() > 1) {
+                for(int j = 0; j < att.numValues(); j++) {
+                    addRule(ruleList, BasicCachedRule.EqualsRule(columns, att, j));
+                    if(att.numValues() > 2) {
+                        // Redundant to use != rules if only 2 values
+                        addRule(ruleList, BasicCachedRule.NotEqualsRule(columns, att, j));
+                    }
+                }
+            }
+        } else {
+            // Numeric values
+            HashSet<Double> s = getUniqueValues(columns, attIndex, USE_QUANTILES);
+            if(s.size() <= 3) {
+                // Treat as categorical if they are very limited
+                if(s.size() > 1) {
+                    for(double val : s) {
+                        addRule(ruleList, BasicCachedRule.EqualsRule(columns, att, val));
+                        if(s.size() > 2) {
+                            addRule(ruleList, BasicCachedRule.NotEqualsRule(columns, att, val));
                         }
                     }
                 }
+            } else if(quantiles > 0 && s.size() >= USE_QUANTILES) {
+                // Use quantiles, look for all points where the value and class change
+                // as we scan the sorted Instances.
+                ThresholdRuleFactory factory = new ThresholdRuleFactory(columns, att);
+                List<Double> splits = new ArrayList<Double>();
+                double prevQuantile = factory.sortedValue(0);
+                for(int q = 1; q < quantiles + 2; q++) {
+                    // Find quantiles by scanning down block of Instances
+                    double quantile = factory.sortedValue((factory.numInstances()*q)
+                            / (quantiles + 2));
+                    if(quantile != prevQuantile) {
+                        splits.add(quantile);
+                        factory.addThreshold(quantile);
+                    }
+                    prevQuantile = quantile;
+                }
+                factory.build(compressRules);
+                for(double split : splits) {
+                    ruleList.add(factory.greaterOrEqualRule(split));
+                    ruleList.add(factory.smallerThanRule(split));
+                }
             } else {
-                // Numeric values
-                HashSet<Double> s = getUniqueValues(instances, attIndex, USE_QUANTILES);
-                if(s.size() <= 3) {
-                    // Treat as categorical if they are very limited
-                    if(s.size() > 1) {
-                        for(double val : s) {
-                            ruleList.add(BasicCachedRule.EqualsRule(instances, att, val));
-                            if(s.size() > 2) {
-                                ruleList.add(BasicCachedRule.NotEqualsRule(instances, att, val));
-                            }
+                // Do not use quartiles
+                ThresholdRuleFactory factory = new ThresholdRuleFactory(columns, att);
+                int numInstances = factory.numInstances();
+                // Split points in the order their rules are added, with whether
+                // to add a >= rule as well as a < rule
+                List<Double> splits = new ArrayList<Double>();
+                List<Boolean> addGreater = new ArrayList<Boolean>();
+
+                // True, False, null if instances with current or previous value are all
+                // targets, all non-targets, or mixed
+                Boolean prevClass = targets[factory.sortedIndex(0)];
+                Boolean curClass = targets[factory.sortedIndex(0)];
+
+                double prevVal = factory.sortedValue(0);
+                double firstVal = prevVal;
+                double lastVal = factory.sortedValue(numInstances - 1);
+                for(int j = 0; j < numInstances; j++) {
+                    int curIndex = factory.sortedIndex(j);
+                    double val = factory.sortedValue(j);
+                    if(prevVal == val) {
+                        // If value becomes mixed, we might need to split between the previous level if we
+                        // failed to do so already
+                        if(prevClass != null && // If the old level was not mixed
+                                curClass != null && curClass != targets[curIndex] && // And cur level became mixed
+                                curClass == prevClass && // And cur/prev level were the same class
+                                val != firstVal // And this is not the first value
+                                ) {
+                            splits.add(val);
+                            addGreater.add(lastVal != val);
                         }
-                    }
-                } else if(quantiles > 0 && s.size() >= USE_QUANTILES) {
-                    // Use quantiles, look for all points where the value and class change
-                    // as we scan the sorted Instances.
-                    instancesCopy.sort(attIndex);
-                    double prevQuantile = instancesCopy.firstInstance().value(attIndex);
-                    for(int q = 1; q < quantiles + 2; q++) {
-                        // Find quantiles by scanning down block of Instances
-                        double quantile = instancesCopy.instance((instancesCopy.numInstances()*q)
-                                / (quantiles + 2)).value(attIndex);
-                        if(quantile != prevQuantile) {
-                            ruleList.add(BasicCachedRule.GreaterOrEqualRule(instances, att, quantile));
-                            ruleList.add(BasicCachedRule.SmallerThanRule(instances, att, quantile));
+                        // Set this level to mixed if we need to
+                        if(curClass != null && curClass != targets[curIndex]) {
+                            curClass = null;
                         }
-                        prevQuantile = quantile;
-                    }
-                } else {
-                    // Do not use quartiles
-                    int[] indices = Utils.sort(instances.attributeToDoubleArray(attIndex));
-
-                    // True, False, null if instances with current or previous value are all
-                    // targets, all non-targets, or mixed
-                    Boolean prevClass = targets[indices[0]];
-                    Boolean curClass = targets[indices[0]];
-
-                    double prevVal = instances.instance(indices[0]).value(attIndex);
-                    double firstVal = prevVal;
-                    double lastVal = instances.instance(indices[indices.length-1]).value(attIndex);
-                    for(int j = 0; j < indices.length; j++) {
-                        int curIndex = indices[j];
-                        double val = instances.instance(curIndex).value(attIndex);
-                        if(prevVal == val) {
-                            // If value becomes mixed, we might need to split between the previous level if we
-                            // failed to do so already
-                            if(prevClass != null && // If the old level was not mixed
-                                    curClass != null && curClass != targets[curIndex] && // And cur level became mixed
-                                    curClass == prevClass && // And cur/prev level were the same class
-                                    val != firstVal // And this is not the first value
-                                    ) {
-                                ruleList.add(BasicCachedRule.SmallerThanRule(instances, att, val));
-                                if(lastVal != val)
-                                    ruleList.add(BasicCachedRule.GreaterOrEqualRule(instances, att, val));
-                            }
-                            // Set this level to mixed if we need to
-                            if(curClass != null && curClass != targets[curIndex]) {
-                                curClass = null;
-                            }
-                        } else {
-                            prevClass = curClass;
-                            curClass = targets[curIndex];;
-                            if(curClass == null || prevClass == null ||
-                                    prevClass != curClass) {
-                                ruleList.add(BasicCachedRule.SmallerThanRule(instances, att, val));
-                                if(lastVal != val)
-                                    ruleList.add(BasicCachedRule.GreaterOrEqualRule(instances, att, val));
-                            }
+                    } else {
+                        prevClass = curClass;
+                        curClass = targets[curIndex];;
+                        if(curClass == null || prevClass == null ||
+                                prevClass != curClass) {
+                            splits.add(val);
+                            addGreater.add(lastVal != val);
                         }
-                        prevVal = val;
                     }
+                    prevVal = val;
+                }
+                for(double split : splits) {
+                    factory.addThreshold(split);
+                }
+                factory.build(compressRules);
+                for(int j = 0; j < splits.size(); j++) {
+                    ruleList.add(factory.smallerThanRule(splits.get(j)));
+                    if(addGreater.get(j))
+                        ruleList.add(factory.greaterOrEqualRule(splits.get(j)));
                 }
             }
         }
@@ -488,51 +1238,340 @@ public class MineMisclassifications extends ClassifierAnalyzer {
      * relatively high number of targets using the current configuration.
      *
      * @param instances Instances to mine
-     * @param targets BitSet where a bit is set iff the corresponding
+     * @param targets BitVector where a bit is set iff the corresponding
+     *                Instance in instances is considered a target.
+     * @param rules Rules to consider when building the conjunctions
+     * @param log Logger to output status updates to
+     * @return The set of conjunctions found, sorted by our internal scoring mechanism
+     * @throws Exception if the search was interrupted
+     */
+    public CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> mineData(Instances instances, BitVector targets,
+            Collection<CachedRule> rules, Logger log) throws Exception {
+        return mineData(instances, targets, rules, threadPool(), log);
+    }
+
+    /**
+     * Find a set of rules conjunctions that define areas in the feature space that have a
+     * relatively high number of targets using the current configuration,
+     * scoring candidate rules on an ExecutorService.
+     *
+     * @param instances Instances to mine
+     * @param targets BitVector where a bit is set iff the corresponding
      *                Instance in instances is considered a target.
      * @param rules Rules to consider when building the conjunctions
+     * @param executor ExecutorService to score candidates on, or null to
+     *                 score them in the calling thread
      * @param log Logger to output status updates to
      * @return The set of conjunctions found, sorted by our internal scoring mechanism
+     * @throws Exception if the search was interrupted
      */
-    public CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> mineData(Instances instances, BitSet targets,
-            Collection<CachedRule> rules, Logger log) {
+    public CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> mineData(Instances instances, BitVector targets,
+            Collection<CachedRule> rules, ExecutorService executor, Logger log) throws Exception {
+        int numInstances = instances.numInstances();
+        // When pruning the search only looks at the training Instances and
+        // pruning only at the validation Instances, so each runs on its own
+        // slice of the rules. No array of the full rules is kept, the mined
+        // clauses are joined back together from their slices.
+        int validationSize = validationSize(numInstances);
+        CachedRule[] searchRules = new CachedRule[rules.size()];
+        CachedRule[] validationRules;
         BitInstancesView validationView;
         BitInstancesView trainView;
+        double validationBaseLine = 0.0;
         if(prune) {
-            int validationSize = (int) (instances.numInstances()*VALIDATION_SIZE);
-            validationView = new BitInstancesView(targets, 0, validationSize);
-            trainView = new BitInstancesView(targets, validationSize);
+            validationRules = new CachedRule[rules.size()];
+            sliceRules(rules, validationRules, searchRules, validationSize, numInstances);
+            validationView = new BitInstancesView(targets.get(0, validationSize), validationSize);
+            trainView = new BitInstancesView(targets.get(validationSize, numInstances),
+                    numInstances - validationSize);
+            validationBaseLine  = ruleEvaluator.calcBaseline(validationView);
         } else {
-            trainView = new BitInstancesView(targets, instances.numInstances());
+            rules.toArray(searchRules);
+            validationRules = null;
+            trainView = new BitInstancesView(targets, numInstances);
             validationView = null;
         }
         CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> ruleSet =
-                new CachedRuleDisjunction<CachedRuleConjunction<CachedRule>>(instances.numInstances());
-        double validationBaseLine = 0.0;
-        if(validationView != null) {
-            validationBaseLine  = ruleEvaluator.calcBaseline(validationView);
-        }
+                new CachedRuleDisjunction<CachedRuleConjunction<CachedRule>>(numInstances);
+
+        // When approximating the beam search runs on a stratified sample of
+        // trainView and only its final beams are scored on all of trainView.
+        // The rules found remove targets from the sample and from trainView
+        // alike, so the sample can run out of targets before trainView does.
+        // It is then drawn again from what is left of trainView.
+        Random sampleRandom = new Random(seed);
+        int[] sampleRows = null;
+        BitInstancesView searchView = null;
+        CachedRule[] searchCatalog = null;
+        LaplaceAccuracy searchEvaluator = null;
+        // What each rule covers in searchView, kept up to date between searches
+        CandidateCounts counts = null;
+        IntersectionCache cache = new IntersectionCache(INTERSECTION_CACHE_BYTES);
 
         do {
+            if(searchView == null || searchView.targets() == 0) {
+                sampleRows = sampleRows(trainView, searchRules.length, sampleRandom);
+                if(sampleRows == null) {
+                    searchView = trainView;
+                    searchCatalog = searchRules;
+                    searchEvaluator = ruleEvaluator;
+                } else {
+                    searchCatalog = new CachedRule[searchRules.length];
+                    for(int i = 0; i < searchRules.length; i++) {
+                        searchCatalog[i] = sampleRule(searchRules[i], sampleRows);
+                    }
+                    BitVector sampleTargets = new BitVector(sampleRows.length);
+                    for(int j = 0; j < sampleRows.length; j++) {
+                        if(trainView.isTarget(sampleRows[j])) {
+                            sampleTargets.set(j);
+                        }
+                    }
+                    searchView = new BitInstancesView(sampleTargets, sampleRows.length);
+                    // Keeps k in proportion to the number of Instances
+                    searchEvaluator = new LaplaceAccuracy(((double) sampleRows.length) / trainView.size());
+                    log.logMessage(String.format("Searching for rules on a sample of %d of %d " +
+                            "instances, scores of rules covering at least %.0f%% of them are " +
+                            "estimated within %.4f with %.0f%% confidence",
+                            sampleRows.length, trainView.size(), 100 * SAMPLE_MIN_COVERAGE,
+                            sampleTolerance, 100 * (1 - SAMPLE_FAILURE_PROBABILITY)));
+                }
+                counts = new CandidateCounts(searchCatalog.length);
+                cache.clear();
+            }
             double trainBaseLine  = ruleEvaluator.calcBaseline(trainView);
-            CachedRuleConjunction<CachedRule> newRule = greedyLearnBeams(trainView, rules, trainBaseLine);
-            printIfDebug("New greedily learned " + newRule.toString());
+            List<RuleEval> beamRules = greedyLearnBeams(searchView, searchCatalog, counts, cache,
+                    searchEvaluator, searchEvaluator.calcBaseline(searchView), executor);
+            RuleEval best = beamRules.get(0);
+            if(sampleRows != null) {
+                best = rescoreBeams(beamRules, searchRules, trainView, trainBaseLine);
+            }
+            CachedRuleConjunction<CachedRule> newRule;
+            // Rule restricted to the Instances of trainView
+            CachedRule trainRule;
             if(prune) {
-                pruneRule(validationView, newRule, validationBaseLine);
+                CachedRuleConjunction<CachedRule> validationRule =
+                        best.reconstructConjunction(validationRules, validationSize);
+                printIfDebug("New greedily learned " + validationRule.toString());
+                pruneRule(validationView, validationRule, validationBaseLine);
+                // Clauses the pruning kept, by their validation slices
+                Map<CachedRule, Integer> ruleIndices = new IdentityHashMap<CachedRule, Integer>();
+                for(RuleEval next = best; next.prev != null; next = next.prev) {
+                    ruleIndices.put(validationRules[next.ruleIndex], next.ruleIndex);
+                }
+                newRule = new CachedRuleConjunction<CachedRule>(numInstances);
+                CachedRuleConjunction<CachedRule> trainConjunction =
+                        new CachedRuleConjunction<CachedRule>(numInstances - validationSize);
+                for(CachedRule clause : validationRule) {
+                    CachedRule trainClause = searchRules[ruleIndices.get(clause)];
+                    newRule.add(new BasicCachedRule(new SplitCoverage(clause.covered(), trainClause.covered()),
+                            trainClause.toString(), predicate(trainClause)));
+                    trainConjunction.add(trainClause);
+                }
+                trainRule = trainConjunction;
                 printIfDebug("Pruned rule " + newRule.toString());
+            } else {
+                newRule = best.reconstructConjunction(searchRules, numInstances);
+                printIfDebug("New greedily learned " + newRule.toString());
+                trainRule = newRule;
             }
             if(newRule.size() == 0) {
-                sortRules(ruleSet, new BitInstancesView(targets, instances.numInstances()));
-                return ruleSet;
+                break;
             }
             ruleSet.add(newRule);
             log.statusMessage("Found rule number " + ruleSet.size());
-            trainView.removeCoveredTargets(newRule);
+            // Rule restricted to the Instances of searchView
+            CachedRule searchRule = sampleRows == null ? trainRule : sampleRule(trainRule, sampleRows);
+            // Checking each rule against a few removed rows is cheaper than
+            // evaluating the rules against the whole view again
+            int[] removed = searchView.coveredTargetRows(searchRule);
+            int maxRemoved = searchView.size() / INCREMENTAL_COUNT_DENSITY;
+            if(removed.length <= maxRemoved) {
+                counts.removeTargets(searchCatalog, removed);
+                cache.removeTargets(searchCatalog, removed, maxRemoved);
+            } else {
+                counts.complete = false;
+                cache.clear();
+            }
+            searchView.removeCoveredTargets(searchRule);
+            if(searchView != trainView) {
+                trainView.removeCoveredTargets(trainRule);
+            }
         } while (trainView.targets() != 0 && ruleSet.size() < maxRules);
-        sortRules(ruleSet, new BitInstancesView(targets, instances.numInstances()));
+        printIfDebug(cache.toString());
+        sortRules(ruleSet, new BitInstancesView(targets, numInstances));
         return ruleSet;
     }
 
+    /**
+     * Number of Instances the beam search should run on so that, with
+     * probability 1 - SAMPLE_FAILURE_PROBABILITY, the score of every
+     * candidate covering at least SAMPLE_MIN_COVERAGE of the Instances is
+     * estimated within sampleTolerance. The error of a Laplace score
+     * estimated on a sample, with k scaled to the sample, is the error of
+     * the mean of targets - score * covered over the sample divided by the
+     * fraction of the sample covered, so no sample smaller than the data
+     * bounds it for candidates that cover next to nothing. Both means have
+     * a variance of at most the fraction covered, so by Bernstein's
+     * inequality, with a union bound over both for every candidate, this
+     * many Instances keep the first error within half of sampleTolerance
+     * times the fraction covered and the fraction covered above half its
+     * true value.
+     *
+     * @param numInstances number of Instances to search
+     * @param numCandidates number of candidate rules
+     * @return the sample size, numInstances if the search should be exact
+     */
+    public int sampleSize(int numInstances, int numCandidates) {
+        if(sampleTolerance <= 0) {
+            return numInstances;
+        }
+        // Scores are at most one apart
+        double tolerance = Math.min(sampleTolerance, 1.0);
+        double size = Math.ceil((8 + 4 * tolerance / 3) * Math.log(4.0 * Math.max(numCandidates, 1) /
+                SAMPLE_FAILURE_PROBABILITY) / (tolerance * tolerance * SAMPLE_MIN_COVERAGE));
+        return size >= numInstances ? numInstances : (int) size;
+    }
+
+    /**
+     * Picks a stratified random sample of the Instances in a view, sampling
+     * targets and other Instances at the same rate so the sample has the
+     * same fraction of targets.
+     *
+     * @param view BitInstancesView to sample from
+     * @param numCandidates number of candidate rules the sample is for
+     * @param random Random to draw the sample with
+     * @return indices of the sampled Instances in ascending order, or null
+     * if the search should use all of them, including when the sample
+     * would not get any targets
+     */
+    private int[] sampleRows(BitInstancesView view, int numCandidates, Random random) {
+        int size = view.size();
+        int sampleSize = sampleSize(size, numCandidates);
+        if(sampleSize >= size) {
+            return null;
+        }
+        int numTargets = view.targets();
+        int wantedTargets = (int) Math.round(((double) sampleSize) * numTargets / size);
+        if(wantedTargets == 0) {
+            return null;
+        }
+        int wantedOthers = sampleSize - wantedTargets;
+        int seenTargets = 0;
+        int seenOthers = 0;
+        int[] rows = new int[sampleSize];
+        int count = 0;
+        // Selection sampling within each stratum, so the rows come out sorted
+        for(int i = view.nextInstance(0); i >= 0 && count < sampleSize; i = view.nextInstance(i + 1)) {
+            if(view.isTarget(i)) {
+                if(random.nextInt(numTargets - seenTargets) < wantedTargets) {
+                    rows[count++] = i;
+                    wantedTargets--;
+                }
+                seenTargets++;
+            } else {
+                if(random.nextInt(size - numTargets - seenOthers) < wantedOthers) {
+                    rows[count++] = i;
+                    wantedOthers--;
+                }
+                seenOthers++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Restricts a rule to a sample of Instances.
+     *
+     * @param rule rule to restrict
+     * @param rows indices of the sampled Instances in ascending order
+     * @return rule whose Coverage has bit j set iff rule covers rows[j]
+     */
+    private static CachedRule sampleRule(CachedRule rule, int[] rows) {
+        Coverage covered = rule.covered();
+        BitVector bits = new BitVector(rows.length);
+        for(int j = 0; j < rows.length; j++) {
+            if(covered.get(rows[j])) {
+                bits.set(j);
+            }
+        }
+        return new BasicCachedRule(bits, rule.toString());
+    }
+
+    /**
+     * Scores the final beams of a search on a sample exactly and picks the
+     * best one. Ties go to the beam the sample ranked higher.
+     *
+     * @param beamRules final beams of the search, best first
+     * @param rules candidate rules restricted to the Instances of view
+     * @param view BitInstancesView to score the beams on
+     * @param baseline baseline of view
+     * @return the best beam
+     */
+    private RuleEval rescoreBeams(List<RuleEval> beamRules, CachedRule[] rules,
+                                  BitInstancesView view, double baseline) {
+        RuleEval best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for(RuleEval beam : beamRules) {
+            double score = ruleEvaluator.evalRule(
+                    beam.reconstructConjunction(rules, view.numInstances()), view, baseline);
+            if(best == null || score > bestScore) {
+                best = beam;
+                bestScore = score;
+            }
+        }
+        printIfDebug("Rescored beams, best scores " + bestScore + " on all instances");
+        return best;
+    }
+
+    /**
+     * Slices every rule into its validation and training Instances. The
+     * parts of rules built by generateRules with the same split are used as
+     * they are. Other rules are copied, into MappedRuleCatalogs if
+     * ruleCatalogDir is set, except that ComplementCoverages stay
+     * complements of their sliced base.
+     *
+     * @param rules rules to slice
+     * @param validationRules array to put the validation slices in, indexed like rules
+     * @param trainRules array to put the training slices in, indexed like rules
+     * @param validationSize number of validation Instances
+     * @param numInstances number of Instances the rules cover
+     * @throws IOException if a catalog could not be written
+     */
+    private void sliceRules(Collection<CachedRule> rules, CachedRule[] validationRules,
+            CachedRule[] trainRules, int validationSize, int numInstances) throws IOException {
+        boolean split = true;
+        for(CachedRule rule : rules) {
+            Coverage covered = rule.covered();
+            split &= covered instanceof SplitCoverage && ((SplitCoverage) covered).split() == validationSize;
+        }
+        MappedRuleCatalog validationCatalog = null;
+        MappedRuleCatalog trainCatalog = null;
+        try {
+            if(!split && ruleCatalogDir.length() != 0) {
+                validationCatalog = new MappedRuleCatalog(new File(ruleCatalogDir), validationSize);
+                trainCatalog = new MappedRuleCatalog(new File(ruleCatalogDir),
+                        numInstances - validationSize);
+            }
+            CoverageSlicer validationSlicer =
+                    new CoverageSlicer(0, validationSize, compressRules, validationCatalog);
+            CoverageSlicer trainSlicer =
+                    new CoverageSlicer(validationSize, numInstances, compressRules, trainCatalog);
+            int i = 0;
+            for(CachedRule rule : rules) {
+                validationRules[i] = validationSlicer.slice(rule);
+                trainRules[i] = trainSlicer.slice(rule);
+                i++;
+            }
+        } finally {
+            if(validationCatalog != null) {
+                validationCatalog.close();
+            }
+            if(trainCatalog != null) {
+                trainCatalog.close();
+            }
+        }
+    }
+
     /**
      * Sorts rules in a CachedRuleSet by how well the rules score on some
      * data.
@@ -557,14 +1596,16 @@ public class MineMisclassifications extends ClassifierAnalyzer {
 
     /**
      * Prunes a CachedRuleConjunction by greedily removing rules whose 
-     * presence reduces its score on a validation set.
+     * presence reduces its score on a validation set. The score without
+     * each rule is taken from the conjunction's cached prefix and suffix
+     * coverage, so a round costs a pass per rule rather than per pair of rules.
      * 
      * @param iv BitInstancesView to evaluate the rules on
      * @param rules CachedRuleConjunction to prune
      * @param baseline baseline score of the BitInstancesView
      */
-    public void pruneRule(BitInstancesView iv, 
-                          CachedRuleConjunction<CachedRule> rules, double baseline) {
+    public <T extends CachedRule> void pruneRule(BitInstancesView iv,
+                          CachedRuleConjunction<T> rules, double baseline) {
         printIfDebug("Starting pruning rule " + rules.toString());
         double bestScore = ruleEvaluator.evalRule(rules, iv, baseline);
         Integer bestRemoveIndex;
@@ -572,14 +1613,13 @@ public class MineMisclassifications extends ClassifierAnalyzer {
             bestRemoveIndex = null;
             // Try to remove every clause and see what gets the best score
             for(int i = 0; i < rules.size(); i++) {
-                CachedRule removedRule = rules.remove(i);
-                double newScore = ruleEvaluator.evalRule(rules, iv, baseline);
+                double newScore = ruleEvaluator.evalRule(
+                        iv.evaluateCoverage(rules.coveredWithout(i)), rules.size() - 1, baseline);
                 if(bestScore <= newScore) {
                     bestScore = newScore;
                     bestRemoveIndex = i;
                 }
-                printIfDebug("\tConsidering: " + rules.toString() + " " + bestScore);
-                rules.add(i, removedRule);
+                printIfDebug("\tConsidering removing: " + rules.get(i).toString() + " " + bestScore);
             }
             if(bestRemoveIndex != null) {
                 printIfDebug("Pruned to: " + rules.toString() + " " + bestScore);
@@ -589,18 +1629,69 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         } while (bestRemoveIndex != null && rules.size() != 0);
     }
 
-    // Translates a boolean to the representation of True or False for an attribute
-    private double toValue(boolean input, Attribute att) {
-        return input ? att.indexOfValue("True") : att.indexOfValue("False");
+    /**
+     * Builds the header of a marked copy of some data: the attributes of the
+     * data followed by a True/False attribute for each rule and a
+     * "Was Target" attribute.
+     *
+     * @param data Instances that will be marked
+     * @param rules CachedRuleDisjunction the data will be marked with
+     * @param capacity number of Instances to reserve space for
+     * @return the header
+     */
+    private Instances markedHeader(Instances data,
+            CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> rules, int capacity) {
+        FastVector values = new FastVector(2);
+        values.addElement("True");
+        values.addElement("False");
+        FastVector attributes = new FastVector(data.numAttributes() + rules.size() + 1);
+        for(int j = 0; j < data.numAttributes(); j++) {
+            attributes.addElement(data.attribute(j).copy());
+        }
+        for(int i = 0; i < rules.size(); i++) {
+            attributes.addElement(new Attribute(rules.get(i).toString(), values));
+        }
+        attributes.addElement(new Attribute("Was Target", values));
+        Instances header = new Instances(data.relationName(), attributes, capacity);
+        header.setClassIndex(data.classIndex());
+        return header;
+    }
+
+    /**
+     * Builds the values of a marked Instance, applying the rules to it.
+     *
+     * @param instance Instance to mark
+     * @param index index of the Instance in its data
+     * @param program RuleProgram of the rules to mark the data with
+     * @param targets targets to mark the data with
+     * @return values of the Instance followed by its rule and target values
+     */
+    private double[] markedValues(Instance instance, int index, RuleProgram program,
+                                  boolean[] targets) {
+        int numAttributes = instance.numAttributes();
+        int numRules = program.numRules();
+        double[] values = new double[numAttributes + numRules + 1];
+        for(int j = 0; j < numAttributes; j++) {
+            values[j] = instance.value(j);
+        }
+        for(int j = 0; j < numRules; j++) {
+            values[numAttributes + j] = program.matches(j, instance) ? MARK_TRUE : MARK_FALSE;
+        }
+        values[numAttributes + numRules] = targets[index] ? MARK_TRUE : MARK_FALSE;
+        return values;
     }
 
     /**
      * Marks Instances with attributes to indicate whether each Instances was
      * a target and what rules applied to it. Creates categorical attributes
      * with values True and False for each rule (named after the rules) and
-     * a "Was Target" attribute. Returns a modified copy of the data.
+     * a "Was Target" attribute. Returns a modified copy of the data. The
+     * rules are compiled into a RuleProgram and applied to the values of
+     * each Instance as it is copied, so data does not have to be the data
+     * they were mined from and no other copy of it is made.
      *
-     * @param data Instances to mark
+     * @param data Instances to mark, with the attributes the rules were
+     *             generated from
      * @param rules CachedRuleDisjunction to mark the data with
      * @param targets targets to mark the data with
      * @return marked copy of the data
@@ -608,34 +1699,54 @@ public class MineMisclassifications extends ClassifierAnalyzer {
     public Instances getMarkedDataset(Instances data,
                                       CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> rules,
             boolean[] targets) {
-        Instances newData = new Instances(data, targets.length);
-        FastVector values = new FastVector();
-        values.addElement("True");
-        values.addElement("False");
-        for(int i = 0; i < rules.size(); i++) {
-            CachedRuleConjunction<CachedRule> rule = rules.get(i);
-            newData.insertAttributeAt(
-                    new Attribute(rule.toString(), values),
-                    newData.numAttributes());
-        }
-        newData.insertAttributeAt(new Attribute("Was Target", values), newData.numAttributes());
+        RuleProgram program = new RuleProgram(rules);
+        Instances newData = markedHeader(data, rules, targets.length);
         for(int i = 0; i < targets.length; i++) {
-            double[] instanceValues = new double[newData.numAttributes()];
-            Instance oldInst = data.instance(i);
-            int curIndex = 0;
-            for(int j = 0; j < data.numAttributes(); j++) {
-                instanceValues[curIndex++] = oldInst.value(j);
-            }
-            for(int j = 0; j < rules.size(); j++) {
-                instanceValues[curIndex++] =
-                        toValue(rules.get(j).covered().get(i), newData.attribute(curIndex));
-            }
-            instanceValues[curIndex] = toValue(targets[i], newData.attribute(curIndex));
-            newData.add(new Instance(1, instanceValues));
+            newData.add(new Instance(1, markedValues(data.instance(i), i, program, targets)));
         }
         return newData;
     }
 
+    /**
+     * Writes the marked copy of some data getMarkedDataset would return as
+     * ARFF or CSV, one Instance at a time, applying the rules to each
+     * Instance as it is written, so neither the copy nor anything the size
+     * of the data is held in memory.
+     *
+     * @param data Instances to mark, with the attributes the rules were
+     *             generated from
+     * @param rules CachedRuleDisjunction to mark the data with
+     * @param targets targets to mark the data with
+     * @param writer Writer to write to, is flushed but not closed
+     * @param csv whether to write CSV rather than ARFF
+     * @throws IOException if writing failed
+     */
+    public void writeMarkedDataset(Instances data,
+            CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> rules,
+            boolean[] targets, Writer writer, boolean csv) throws IOException {
+        RuleProgram program = new RuleProgram(rules);
+        Instances header = markedHeader(data, rules, 0);
+        if(csv) {
+            for(int j = 0; j < header.numAttributes(); j++) {
+                if(j > 0) {
+                    writer.write(',');
+                }
+                writer.write(Utils.quote(header.attribute(j).name()));
+            }
+            writer.write('\n');
+        } else {
+            // An empty dataset prints as its header ending in @data
+            writer.write(header.toString());
+        }
+        for(int i = 0; i < targets.length; i++) {
+            Instance row = new Instance(1, markedValues(data.instance(i), i, program, targets));
+            row.setDataset(header);
+            writer.write(row.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
     /**
      * Marks Instances with attributes to indicate whether each Instances was
      * a target and what rules applied to it. Creates categorical attributes
@@ -644,8 +1755,9 @@ public class MineMisclassifications extends ClassifierAnalyzer {
      * the Rules based on the current configuration.
      *
      * @param data Instances to calculates the rules from
-     * @param dataToMark Instances to mark with the results. Should have the same
-     *                   ordering as daa
+     * @param dataToMark Instances to mark with the results. The rules are
+     *                   applied to its values, targets are taken by position
+     *                   so it should have the same ordering as data
      * @param idIndex attribute index of data to treat as an ID
      * @param targets boolean[] of what Insances are targets
      * @param logger Logger to log incremental status updates to
@@ -654,32 +1766,91 @@ public class MineMisclassifications extends ClassifierAnalyzer {
      */
     public Instances markData(Instances data, Instances dataToMark, int idIndex,
             boolean[] targets, Logger logger) throws Exception {
-        BitSet targetBits = new BitSet(targets.length);
+        return getMarkedDataset(dataToMark, mineRules(data, idIndex, targets, logger), targets);
+    }
+
+    /**
+     * Marks Instances like markData, but writes the marked copy of
+     * dataToMark to a Writer as ARFF or CSV instead of building it.
+     *
+     * @param data Instances to calculates the rules from
+     * @param dataToMark Instances to mark with the results. The rules are
+     *                   applied to its values, targets are taken by position
+     *                   so it should have the same ordering as data
+     * @param idIndex attribute index of data to treat as an ID
+     * @param targets boolean[] of what Insances are targets
+     * @param writer Writer to write the marked copy to, is not closed
+     * @param csv whether to write CSV rather than ARFF
+     * @param logger Logger to log incremental status updates to
+     * @throws Exception If there was a problem marking the data
+     */
+    public void markData(Instances data, Instances dataToMark, int idIndex,
+            boolean[] targets, Writer writer, boolean csv, Logger logger) throws Exception {
+        writeMarkedDataset(dataToMark, mineRules(data, idIndex, targets, logger), targets,
+                writer, csv);
+    }
+
+    /**
+     * Generates and mines rules based on the current configuration.
+     *
+     * @param data Instances to calculates the rules from
+     * @param idIndex attribute index of data to treat as an ID
+     * @param targets boolean[] of what Insances are targets
+     * @param logger Logger to log incremental status updates to
+     * @return the mined rules
+     * @throws Exception If there was a problem mining the data
+     */
+    private CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> mineRules(Instances data,
+            int idIndex, boolean[] targets, Logger logger) throws Exception {
+        BitVector targetBits = new BitVector(targets.length);
         for(int i = 0; i < targets.length; i++) {
             if(targets[i])
                 targetBits.set(i);
         }
-        List<CachedRule> ruleSet = generateRules(data, targets, idIndex);
-        CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> minedRules =
-                mineData(data, targetBits, ruleSet, logger);
-        return getMarkedDataset(dataToMark, minedRules, targets);
+        List<CachedRule> ruleSet = new RuleDeduplicator().deduplicate(
+                generateRules(data, targets, idIndex));
+        return mineData(data, targetBits, ruleSet, logger);
     }
 
     @Override
     public AnalyzerOutput analyzeData(Instances data, int idIndex, Logger logger) throws Exception {
         data = new Instances(data); // Ensure order will be preserved for our copy
-        data.randomize(rand);
+        // Always shuffle the same way for the same seed so cached predictions can be reused
+        data.randomize(new Random(seed));
 
         // Pick out the targets
-        double[][] predictions = RunClassifier.runClassifier(
-                idIndex == -1 ? data : AnalyzerUtils.removeColumn(data, idIndex),
-                classifier, cvFolds, classificationIterations,
-                logger);
-        boolean[] misclassifications = new boolean[predictions.length];
-        BitSet misclassificationsBits = new BitSet(predictions.length);
-        for(int i = 0; i < predictions.length; i++) {
-            if(predictions[i][(int)data.instance(i).classValue()] /
-                    (double) Utils.sum(predictions[i]) < cutoff) {
+        PredictionCache cache = predictionCacheDir.length() == 0 ? null :
+                new PredictionCache(new File(predictionCacheDir));
+        ExecutorService executor = threadPool();
+        Instances classifierData = idIndex == -1 ? data :
+                AnalyzerUtils.removeColumn(data, idIndex);
+        boolean numeric = data.classAttribute().isNumeric();
+        ClassDistributions predictions = null;
+        PredictionStatistics residuals = null;
+        if(numeric) {
+            residuals = RunClassifier.runClassifierStatistics(classifierData,
+                    classifier, cvFolds, classificationIterations, seed, executor,
+                    cache, logger);
+        } else if(useProbabilities) {
+            predictions = RunClassifier.runClassifierDistributions(classifierData,
+                    classifier, cvFolds, seed, executor, cache, logger);
+        } else {
+            predictions = ClassDistributions.fromCounts(RunClassifier.runClassifier(
+                    classifierData, classifier, cvFolds, classificationIterations,
+                    seed, executor, cache, logger));
+        }
+        boolean[] misclassifications = new boolean[data.numInstances()];
+        BitVector misclassificationsBits = new BitVector(data.numInstances());
+        double threshold = numeric ? residualThreshold(residuals) : 0;
+        for(int i = 0; i < data.numInstances(); i++) {
+            boolean target;
+            if(numeric) {
+                double residual = residuals.meanAbsResidual(i);
+                target = residual > 0 && residual >= threshold;
+            } else {
+                target = predictions.fraction(i, (int)data.instance(i).classValue()) < cutoff;
+            }
+            if(target) {
                 misclassifications[i] = true;
                 misclassificationsBits.set(i);
             }
@@ -687,30 +1858,52 @@ public class MineMisclassifications extends ClassifierAnalyzer {
 
         // Build the rules
         logger.statusMessage("Generating Rules");
-        List<CachedRule> ruleSet = generateRules(data, misclassifications, idIndex);
+        List<CachedRule> candidates = generateRules(data, misclassifications, idIndex, executor);
+        // Rules with the same coverage always score the same, only search one of them.
+        // This frees the beam slots duplicates took, so it can change the rules found
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        List<CachedRule> ruleSet = deduplicator.deduplicate(candidates);
 
         // Build the rule conjunctions
         logger.statusMessage("Mining misclassifications");
         CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> minedRules =
-                mineData(data, misclassificationsBits, ruleSet, logger);
+                mineData(data, misclassificationsBits, ruleSet, executor, logger);
 
 
         // Build the text output
         BitInstancesView all = new BitInstancesView(misclassificationsBits, data.numInstances());
         StringBuilder msg = new StringBuilder();
         int errors = misclassificationsBits.cardinality();
-        double accuracy = 1 - ((double) errors) / misclassifications.length;
-        msg.append(String.format("Classifier made: %d mistakes\naccuracy: %.3f%n", errors, accuracy));
-        msg.append("=== Confusion Matrix ===\n");
-        String[] confusionMatrixHeader = new String[data.classAttribute().numValues()];
-        for(int j = 0; j < data.classAttribute().numValues(); j++) {
-            confusionMatrixHeader[j] = data.classAttribute().value(j);
-        }
-        AnalyzerUtils.writeSquareMatrix(msg, confusionMatrixHeader,
-                AnalyzerUtils.confusionMatrix(data, predictions));
-
-        msg.append("\nDetails written to ConfusionMatrix on the results list");
-        msg.append("\nGenerated: " + ruleSet.size() + " potential rules.\n");
+        if(numeric) {
+            msg.append(String.format("Classifier had a mean absolute error of: %.4f%n" +
+                    "%d instances had errors of at least %.4f%n",
+                    residuals.meanAbsoluteError(), errors, threshold));
+        } else {
+            double accuracy = 1 - ((double) errors) / misclassifications.length;
+            msg.append(String.format("Classifier made: %d mistakes\naccuracy: %.3f%n", errors, accuracy));
+            msg.append("=== Confusion Matrix ===\n");
+            String[] confusionMatrixHeader = new String[data.classAttribute().numValues()];
+            for(int j = 0; j < data.classAttribute().numValues(); j++) {
+                confusionMatrixHeader[j] = data.classAttribute().value(j);
+            }
+            AnalyzerUtils.writeSquareMatrix(msg, confusionMatrixHeader,
+                    AnalyzerUtils.confusionMatrix(data, predictions));
+
+            msg.append("\nDetails written to ConfusionMatrix on the results list");
+        }
+        msg.append("\nGenerated: " + candidates.size() + " potential rules, " +
+                ruleSet.size() + " with distinct coverage (" + deduplicator.numRemoved() +
+                " removed as duplicates).\n");
+        int searchSize = data.numInstances() - validationSize(data.numInstances());
+        int sampleSize = sampleSize(searchSize, ruleSet.size());
+        if(sampleSize < searchSize) {
+            msg.append(String.format("Searched a sample of up to %d of %d instances, redrawn " +
+                    "whenever the rules found covered all of its targets. Scores of rules covering " +
+                    "at least %.0f%% of the instances estimated within %.4f with %.0f%% confidence, " +
+                    "the best conjunctions found were scored on all of them.%n", sampleSize,
+                    searchSize, 100 * SAMPLE_MIN_COVERAGE, sampleTolerance,
+                    100 * (1 - SAMPLE_FAILURE_PROBABILITY)));
+        }
         msg.append("Final Rules:\n\n");
         for(int i = 0; i < minedRules.size(); i++) {
             CachedRuleConjunction<CachedRule> r = minedRules.get(i);
@@ -720,118 +1913,279 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         }
 
         // Build the visualizations
-        GenerateVisualization[] gvs = new GenerateVisualization[minedRules.size() + 1];
-        ConfusionMatrixVisualizer cmView =
-                new ConfusionMatrixVisualizer("Confusion Matrix", 500, 500,
-                        data, predictions, idIndex);
-        gvs[0] = cmView;
-
-        String formatStr = "";
-        String[] attNames = new String[data.numAttributes()];
-        for(int a = 0; a < data.numAttributes(); a++) {
-            Attribute att = data.attribute(a);
-            if(att.isNumeric()) {
-                formatStr += "%-" + Integer.toString((int)Math.max(att.name().length(), 6)) + "s  ";
-            } else {
-                int max = att.name().length();
-                Enumeration<String> e = att.enumerateValues();
-                while(e.hasMoreElements()) {
-                    max = (int) Math.max(max, e.nextElement().length());
+        // There is no confusion matrix to show for numeric classes
+        int ruleOffset = numeric ? 0 : 1;
+        GenerateVisualization[] gvs = new GenerateVisualization[minedRules.size() + ruleOffset];
+        if(!numeric) {
+            gvs[0] = new ConfusionMatrixVisualizer("Confusion Matrix", 500, 500,
+                    data, predictions, idIndex);
+        }
+
+        // Only the descriptions of the duplicates are kept for the reports, so
+        // the deduplicator and the candidate rules it holds can be freed
+        RuleReportData reportData = new RuleReportData(data, predictions, residuals, all,
+                aliasDescriptions(minedRules, ruleSet, deduplicator), idIndex);
+        for(int i = 0; i < minedRules.size(); i++) {
+            gvs[i + ruleOffset] = new RuleReportWindow(i, minedRules.get(i), reportData);
+        }
+        return new AnalyzerOutput(msg.toString(), gvs);
+    }
+
+    /**
+     * Describes the rules a RuleDeduplicator removed as duplicates of the
+     * clauses of some mined rules. Clauses are matched to the rules they were
+     * mined from by description, as the search may rebuild the rules it
+     * returns.
+     *
+     * @param minedRules the mined rules
+     * @param ruleSet the rules the deduplicator kept
+     * @param deduplicator the RuleDeduplicator
+     * @return comma separated descriptions of the duplicates of each clause
+     * that had any, keyed by the description of the clause
+     */
+    private static Map<String, String> aliasDescriptions(
+            CachedRuleDisjunction<CachedRuleConjunction<CachedRule>> minedRules,
+            List<CachedRule> ruleSet, RuleDeduplicator deduplicator) {
+        Set<String> clauses = new HashSet<String>();
+        for(CachedRuleConjunction<CachedRule> rule : minedRules) {
+            for(CachedRule clause : rule) {
+                clauses.add(clause.toString());
+            }
+        }
+        Map<String, String> descriptions = new HashMap<String, String>();
+        for(CachedRule rule : ruleSet) {
+            String description = rule.toString();
+            if(!clauses.contains(description)) {
+                continue;
+            }
+            List<CachedRule> aliases = deduplicator.aliases(rule);
+            if(!aliases.isEmpty()) {
+                StringBuilder sb = new StringBuilder(aliases.get(0).toString());
+                for(int a = 1; a < aliases.size(); a++) {
+                    sb.append(", " + aliases.get(a).toString());
                 }
-                formatStr += "%-" + Integer.toString(max) + "s  ";
+                descriptions.put(description, sb.toString());
             }
-            attNames[a] = data.attribute(a).name();
         }
+        return descriptions;
+    }
+
+    /**
+     * What the per rule reports of analyzeData share: the data the rules were
+     * mined from, the classifier's predictions and the targets. The format
+     * used for example rows is built the first time a report needs it.
+     */
+    private static final class RuleReportData {
+
+        /** Instances the rules were mined from */
+        final Instances data;
+
+        /** Predictions for data, null if the class is numeric */
+        final ClassDistributions predictions;
+
+        /** Residuals for data, null if the class is nominal */
+        final PredictionStatistics residuals;
+
+        /** View of data and the targets */
+        final BitInstancesView all;
+
+        /**
+         * Descriptions of the rules removed as duplicates of each clause of
+         * the mined rules that had any, keyed by the description of the clause
+         */
+        final Map<String, String> aliases;
+
+        /** Attribute index of data to treat as an ID, -1 if there is none */
+        final int idIndex;
+
+        /** Format of a row of examples, null until built */
+        private String exampleFormat;
+
+        /** Names of the attributes of data */
+        private String[] attNames;
+
+        RuleReportData(Instances data, ClassDistributions predictions,
+                       PredictionStatistics residuals, BitInstancesView all,
+                       Map<String, String> aliases, int idIndex) {
+            this.data = data;
+            this.predictions = predictions;
+            this.residuals = residuals;
+            this.all = all;
+            this.aliases = aliases;
+            this.idIndex = idIndex;
+        }
+
+        /**
+         * @return format of a row of examples, with a column per attribute
+         * wide enough for its name and values
+         */
+        synchronized String exampleFormat() {
+            if(exampleFormat == null) {
+                StringBuilder formatStr = new StringBuilder();
+                attNames = new String[data.numAttributes()];
+                for(int a = 0; a < data.numAttributes(); a++) {
+                    Attribute att = data.attribute(a);
+                    if(att.isNumeric()) {
+                        formatStr.append("%-" + Integer.toString((int)Math.max(att.name().length(), 6)) + "s  ");
+                    } else {
+                        int max = att.name().length();
+                        Enumeration<String> e = att.enumerateValues();
+                        while(e.hasMoreElements()) {
+                            max = (int) Math.max(max, e.nextElement().length());
+                        }
+                        formatStr.append("%-" + Integer.toString(max) + "s  ");
+                    }
+                    attNames[a] = att.name();
+                }
+                exampleFormat = formatStr.toString();
+            }
+            return exampleFormat;
+        }
+
+        /**
+         * @return names of the attributes of data
+         */
+        synchronized String[] attNames() {
+            exampleFormat();
+            return attNames;
+        }
+    }
+
+    /**
+     * Window showing the details of a mined rule. Holds only the rule and
+     * the shared RuleReportData, the report is built when the window is
+     * first opened.
+     */
+    private class RuleReportWindow extends AnalyzerUtils.GenerateLazyTextWindow {
+
+        /** Index of the rule among the mined rules */
+        private final int ruleIndex;
+
+        /** The rule */
+        private final CachedRuleConjunction<CachedRule> rule;
+
+        /** Data shared by the reports */
+        private final RuleReportData reportData;
+
+        RuleReportWindow(int ruleIndex, CachedRuleConjunction<CachedRule> rule,
+                         RuleReportData reportData) {
+            super("Rule " + Integer.toString(ruleIndex + 1), 500, 550);
+            this.ruleIndex = ruleIndex;
+            this.rule = rule;
+            this.reportData = reportData;
+        }
+
+        @Override
+        protected String buildText() {
+            return ruleDetails(ruleIndex, rule, reportData);
+        }
+    }
+
+    /**
+     * Builds the detailed report of a mined rule: its stats, a confusion
+     * matrix or error report, how the stats change as each clause is added,
+     * the ids of the Instances it covers and some example Instances.
+     *
+     * @param i index of the rule among the mined rules
+     * @param r the rule
+     * @param shared RuleReportData of the data the rule was mined from
+     * @return the report
+     */
+    private String ruleDetails(int i, CachedRuleConjunction<CachedRule> r, RuleReportData shared) {
+        Instances data = shared.data;
+        BitInstancesView all = shared.all;
+        int idIndex = shared.idIndex;
         int numInstances = data.numInstances();
-        for(int i = 0; i < minedRules.size(); i++) {
-            CachedRuleConjunction<CachedRule> r = minedRules.get(i);
-            final StringBuilder sb = new StringBuilder();
-            sb.append("Rule " + (i + 1) + ":\n" + r.toString() + "\n\n");
-            sb.append("Stats:\n" + ruleReport(r, r.size(), all) + "\n\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("Rule " + (i + 1) + ":\n" + r.toString() + "\n\n");
+        sb.append("Stats:\n" + ruleReport(r, r.size(), all) + "\n\n");
+        if(shared.residuals != null) {
+            sb.append("Errors:\n");
+            sb.append(getRuleErrorReport(shared.residuals, r));
+        } else {
             sb.append("Confusion Matrix:\n");
-            sb.append(getRuleConfusionMatrix(data, predictions, r));
-            sb.append("\nBreak down:\n\n");
-            CachedRuleConjunction<CachedRule> rs = new CachedRuleConjunction<CachedRule>(numInstances);
-            CachedRule emptyRule = BasicCachedRule.emptyRule(numInstances);
-            sb.append("Baseline (empty rule):\nStats:" +  ruleReport(emptyRule, 0, all) + "\n\n");
-            for(CachedRule clause : r) {
-                rs.add(clause);
-                sb.append("Added: " + clause.toString() + "\n");
-                sb.append("New stats: " + ruleReport(rs, rs.size(), all) + "\n\n");
+            sb.append(getRuleConfusionMatrix(data, shared.predictions, r));
+        }
+        sb.append("\nBreak down:\n\n");
+        CachedRuleConjunction<CachedRule> rs = new CachedRuleConjunction<CachedRule>(numInstances);
+        CachedRule emptyRule = BasicCachedRule.emptyRule(numInstances);
+        sb.append("Baseline (empty rule):\nStats:" +  ruleReport(emptyRule, 0, all) + "\n\n");
+        for(CachedRule clause : r) {
+            rs.add(clause);
+            sb.append("Added: " + clause.toString() + "\n");
+            String aliases = shared.aliases.get(clause.toString());
+            if(aliases != null) {
+                sb.append("Same coverage as: " + aliases + "\n");
             }
-            BitSet bs = r.covered();
+            sb.append("New stats: " + ruleReport(rs, rs.size(), all) + "\n\n");
+        }
+        BitVector bs = r.covered();
 
-            // Print out some ids if we can
-            if(idIndex != -1) {
-                if(MAX_IDS_TO_PRINT < bs.cardinality()) {
-                    // TODO should print a few examples Instances anyway
-                    sb.append("Too many IDs to print");
-                } else {
-                    Attribute idAtt = data.attribute(idIndex);
-                    sb.append("Instances ids:\n");
-                    int j = bs.nextSetBit(0);
-                    String idStr = AnalyzerUtils.attValStr(data.attribute(idIndex),
+        // Print out some ids if we can
+        if(idIndex != -1) {
+            if(MAX_IDS_TO_PRINT < bs.cardinality()) {
+                // TODO should print a few examples Instances anyway
+                sb.append("Too many IDs to print");
+            } else {
+                Attribute idAtt = data.attribute(idIndex);
+                sb.append("Instances ids:\n");
+                int j = bs.nextSetBit(0);
+                String idStr = AnalyzerUtils.attValStr(data.attribute(idIndex),
+                        data.instance(j).value(idAtt));
+                sb.append(idStr);
+                int lineLength = idStr.length();
+                j =  bs.nextSetBit(j+1);
+                for(; j>=0; j=bs.nextSetBit(j+1)) {
+                    idStr = AnalyzerUtils.attValStr(data.attribute(idIndex),
                             data.instance(j).value(idAtt));
-                    sb.append(idStr);
-                    int lineLength = idStr.length();
-                    j =  bs.nextSetBit(j+1);
-                    for(; j>=0; j=bs.nextSetBit(j+1)) {
-                        idStr = AnalyzerUtils.attValStr(data.attribute(idIndex),
-                                data.instance(j).value(idAtt));
-                        if(lineLength + 2 + idStr.length() > ID_LINE_LENGTH) {
-                            sb.append("\n" + idStr);
-                            lineLength = idStr.length();
-                        } else {
-                            sb.append(", " + idStr);
-                            lineLength += 2 + idStr.length();
-                        }
+                    if(lineLength + 2 + idStr.length() > ID_LINE_LENGTH) {
+                        sb.append("\n" + idStr);
+                        lineLength = idStr.length();
+                    } else {
+                        sb.append(", " + idStr);
+                        lineLength += 2 + idStr.length();
                     }
-                    sb.append("\n\n");
                 }
+                sb.append("\n\n");
             }
+        }
 
-            // Print some example instances
-            if(data.numAttributes() <= MAX_ATTRIBUTES_TO_PRINT) {
-                sb.append("Examples:\n");
-                Formatter formatter = new Formatter(sb);
-                formatter.format(formatStr,(Object[])attNames);
+        // Print some example instances
+        if(data.numAttributes() <= MAX_ATTRIBUTES_TO_PRINT) {
+            sb.append("Examples:\n");
+            Formatter formatter = new Formatter(sb);
+            String formatStr = shared.exampleFormat();
+            formatter.format(formatStr,(Object[])shared.attNames());
+            sb.append("\n");
+            int examplesShown = 0;
+            for(int j = bs.nextSetBit(0); j>=0 && examplesShown < MAX_EXAMPLES_TO_PRINT;
+                j=bs.nextSetBit(j+1)) {
+                examplesShown++;
+                formatter.format(formatStr,(Object[])data.instance(j).toString().split(","));
                 sb.append("\n");
-                int examplesShown = 0;
-                for(int j = bs.nextSetBit(0); j>=0 && examplesShown < MAX_EXAMPLES_TO_PRINT;
-                    j=bs.nextSetBit(j+1)) {
-                    examplesShown++;
-                    formatter.format(formatStr,(Object[])data.instance(j).toString().split(","));
-                    sb.append("\n");
-                }
-                formatter.close();
             }
-            String ruleNum = "Rule " + Integer.toString(i + 1);
-            gvs[i + 1] =  new GenerateTextWindow(ruleNum, sb.toString(), 500, 550);
+            formatter.close();
         }
-        return new AnalyzerOutput(msg.toString(), gvs);
+        return sb.toString();
     }
 
     /**
      * Gets a text confusion matrix for some Instances covered by a .
      *
      * @param data Instances the rule applies to
-     * @param predictions per Instance per class prediction counts
+     * @param predictions per Instance per class prediction scores
      * @param rule CachedRule to build the confusion matrix for
      * @return String confusion matrix, suitable for showing to a user.
      */
-    public String getRuleConfusionMatrix(Instances data, double[][] predictions, CachedRule rule) {
+    public String getRuleConfusionMatrix(Instances data, ClassDistributions predictions,
+                                         CachedRule rule) {
         StringBuilder report = new StringBuilder();
-        BitSet covered = rule.covered();
-        int size = covered.cardinality();
-        double[][] subsetPred = new double[size][predictions[0].length];
-        int cur = 0;
-        Instances subset = new Instances(data, covered.cardinality());
+        Coverage covered = rule.covered();
+        int numClasses = data.classAttribute().numValues();
+        double[][] confusionMatrix = new double[numClasses][numClasses];
         for (int i = covered.nextSetBit(0); i >= 0; i = covered.nextSetBit(i+1)) {
-            subset.add(data.instance(i));
-            subsetPred[cur] = predictions[i];
-            cur++;
+            confusionMatrix[(int) data.instance(i).classValue()][predictions.predictedClass(i)]++;
         }
-        double[][] confusionMatrix = AnalyzerUtils.confusionMatrix(subset, subsetPred);
         String[] labels = new String[data.classAttribute().numValues()];
         for(int i = 0; i < data.classAttribute().numValues(); i++) {
             labels[i] = data.classAttribute().value(i);
@@ -840,6 +2194,53 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         return report.toString();
     }
 
+    /**
+     * Gets a text report of the errors a regressor made on the Instances
+     * covered by a rule.
+     *
+     * @param residuals PredictionStatistics of the regressor's predictions
+     * @param rule CachedRule to build the report for
+     * @return String report, suitable for showing to a user.
+     */
+    public String getRuleErrorReport(PredictionStatistics residuals, CachedRule rule) {
+        Coverage covered = rule.covered();
+        double absError = 0;
+        double error = 0;
+        double deviation = 0;
+        for (int i = covered.nextSetBit(0); i >= 0; i = covered.nextSetBit(i+1)) {
+            absError += residuals.meanAbsResidual(i);
+            error += residuals.meanResidual(i);
+            deviation += residuals.stdDev(i);
+        }
+        int size = covered.cardinality();
+        return String.format("Mean absolute error: %.4f (%.4f for all instances)%n" +
+                "Mean error: %.4f%nMean prediction standard deviation: %.4f%n",
+                absError / size, residuals.meanAbsoluteError(), error / size,
+                deviation / size);
+    }
+
+    /**
+     * Gets the mean absolute residual an Instance needs for it to be a target
+     * when the class is numeric, so that Instances in the top (1 - cutoff)
+     * fraction of mean absolute residuals become targets.
+     *
+     * @param residuals PredictionStatistics of the regressor's predictions
+     * @return the smallest mean absolute residual a target can have
+     */
+    private double residualThreshold(PredictionStatistics residuals) {
+        int n = residuals.numInstances();
+        int index = (int) Math.floor(cutoff * n);
+        if(index >= n) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[] values = new double[n];
+        for(int i = 0; i < n; i++) {
+            values[i] = residuals.meanAbsResidual(i);
+        }
+        Arrays.sort(values);
+        return values[Math.max(index, 0)];
+    }
+
     // Option setting methods
 
     @Override
@@ -881,6 +2282,26 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         newVector.addElement(new Option(
                 "Max Rules\n",
                 "M", 0, "-M"));
+        newVector.addElement(new Option(
+                "\tNumber of threads to build and test folds, generate rules and score\n" +
+                "\tcandidate conjunctions with\n",
+                "N", 1, "-N"));
+        newVector.addElement(new Option(
+                "\tDirectory to cache predictions in\n",
+                "F", 1, "-F"));
+        newVector.addElement(new Option(
+                "\tUse class probabilities to pick targets\n",
+                "B", 0, "-B"));
+        newVector.addElement(new Option(
+                "\tCompress rule coverage\n",
+                "Z", 0, "-Z"));
+        newVector.addElement(new Option(
+                "\tDirectory to memory map rule coverage in\n",
+                "G", 1, "-G"));
+        newVector.addElement(new Option(
+                "\tError tolerance of the rule scores of an approximate search on a sample,\n" +
+                "\t0 for an exact search\n",
+                "E", 1, "-E"));
 
         Enumeration<Option> enu = super.listOptions();
         while (enu.hasMoreElements()) {
@@ -916,7 +2337,18 @@ public class MineMisclassifications extends ClassifierAnalyzer {
         String seedString = Utils.getOption('S', options);
         seed = seedString.length() != 0 ? Long.parseLong(seedString) : 0;
 
+        String threadsString = Utils.getOption('N', options);
+        numThreads = threadsString.length() != 0 ? Integer.parseInt(threadsString) : 1;
+
+        predictionCacheDir = Utils.getOption('F', options);
+
         prune = Utils.getFlag('P', options);
+        useProbabilities = Utils.getFlag('B', options);
+        compressRules = Utils.getFlag('Z', options);
+        ruleCatalogDir = Utils.getOption('G', options);
+
+        String toleranceString = Utils.getOption('E', options);
+        sampleTolerance = toleranceString.length() != 0 ? Double.parseDouble(toleranceString) : 0.0;
         useClass = Utils.getFlag('C', options);
 
         super.setOptions(options);
@@ -925,7 +2357,7 @@ public class MineMisclassifications extends ClassifierAnalyzer {
     @Override
     public String[] getOptions() {
           String[] superOptions = super.getOptions();
-          String[] options = new String [19 + superOptions.length];
+          String[] options = new String [29 + superOptions.length];
 
           int current = 0;
           options[current++] = "-V";
@@ -944,6 +2376,18 @@ public class MineMisclassifications extends ClassifierAnalyzer {
           options[current++] =  Integer.toString(maxRules);
           options[current++] = "-S";
           options[current++] =  Long.toString(seed);
+          options[current++] = "-N";
+          options[current++] =  Integer.toString(numThreads);
+          options[current++] = "-E";
+          options[current++] =  Double.toString(sampleTolerance);
+          if (predictionCacheDir.length() != 0) {
+              options[current++] = "-F";
+              options[current++] = predictionCacheDir;
+          }
+          if (ruleCatalogDir.length() != 0) {
+              options[current++] = "-G";
+              options[current++] = ruleCatalogDir;
+          }
 
           if (prune) {
               options[current++] = "-P";
@@ -951,6 +2395,12 @@ public class MineMisclassifications extends ClassifierAnalyzer {
           if (useClass) {
               options[current++] = "-C";
           }
+          if (useProbabilities) {
+              options[current++] = "-B";
+          }
+          if (compressRules) {
+              options[current++] = "-Z";
+          }
 
           System.arraycopy(superOptions, 0, options, current,
                   superOptions.length);
@@ -1024,7 +2474,48 @@ public class MineMisclassifications extends ClassifierAnalyzer {
     }
     public void setSeed(long seed) {
         this.seed = seed;
-        this.rand = new Random(seed);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public String getPredictionCacheDir() {
+        return predictionCacheDir;
+    }
+    public void setPredictionCacheDir(String predictionCacheDir) {
+        this.predictionCacheDir = predictionCacheDir;
+    }
+
+    public boolean getUseProbabilities() {
+        return useProbabilities;
+    }
+    public void setUseProbabilities(boolean useProbabilities) {
+        this.useProbabilities = useProbabilities;
+    }
+
+    public boolean getCompressRules() {
+        return compressRules;
+    }
+    public void setCompressRules(boolean compressRules) {
+        this.compressRules = compressRules;
+    }
+
+    public String getRuleCatalogDir() {
+        return ruleCatalogDir;
+    }
+    public void setRuleCatalogDir(String ruleCatalogDir) {
+        this.ruleCatalogDir = ruleCatalogDir;
+    }
+
+    public double getSampleTolerance() {
+        return sampleTolerance;
+    }
+    public void setSampleTolerance(double sampleTolerance) {
+        this.sampleTolerance = sampleTolerance;
     }
 
     public boolean getPruneRule() {
@@ -1043,7 +2534,9 @@ public class MineMisclassifications extends ClassifierAnalyzer {
 
     public String cutoffTipText() {
         return "Cutoff for deciding when an Instance is a target when using multiple " +
-                "rounds of classification or regression.";
+                "rounds of classification or regression. For numeric classes Instances " +
+                "whose mean absolute error is above this quantile of all the mean " +
+                "absolute errors are targets.";
     }
     public String useClassTipText() {
         return "Use the class attribute to generate the rules. This in general allow" +
@@ -1085,6 +2578,47 @@ public class MineMisclassifications extends ClassifierAnalyzer {
     public String seedTipText() {
         return "Random seed to use.";
     }
+    public String predictionCacheDirTipText() {
+        return "Directory to cache the classifier's predictions in, leave empty to disable. " +
+                "Predictions are reused when the data, classifier, folds, classification " +
+                "iterations and seed are unchanged, so the rule mining options can be " +
+                "tuned without rebuilding the classifier.";
+    }
+    public String useProbabilitiesTipText() {
+        return "Run cross validation once and mark an Instance as a target if the " +
+                "probability the classifier gave its true class is below cutoff, " +
+                "rather than counting correct classifications over classification " +
+                "iterations. Gives a finer grained measure of how hard each Instance " +
+                "is while only building the classifier once per fold.";
+    }
+    public String compressRulesTipText() {
+        return "Store what each generated rule covers as a compressed bitmap when that " +
+                "takes less memory than one bit per instance. Helps large datasets fit in " +
+                "memory, sparse rules and threshold rules usually compress well.";
+    }
+    public String ruleCatalogDirTipText() {
+        return "Directory to store what each generated rule covers in, leave empty to keep " +
+                "it in memory. The rules are written to a memory mapped temporary file so " +
+                "datasets with more rule coverage than fits in memory can still be mined, " +
+                "at the cost of reading it from disk. Compressed rules stay in memory.";
+    }
+    public String sampleToleranceTipText() {
+        return "Search for rules on a stratified random sample of the data, sized so the " +
+                "score of each candidate rule covering at least 1% of the data is estimated " +
+                "within this tolerance with 95% confidence. Scores of rules covering less are " +
+                "not bounded. The best conjunctions found are then scored on all the data, and " +
+                "the sample is redrawn from the remaining data whenever the rules found cover " +
+                "all of its targets. Set to 0 to always search all the data. Only large " +
+                "datasets are sampled, for small ones the sample would need to be the whole " +
+                "dataset.";
+    }
+    public String numThreadsTipText() {
+        return "Number of threads to use. The classifier's cross validation folds are " +
+                "built and tested in parallel, each on its own copy of the classifier, " +
+                "rules for different attributes are generated in parallel and the " +
+                "candidate conjunctions of each beam search step are scored in parallel. " +
+                "The same threads are reused for every step.";
+    }
 
     public String rulePenalityTipText() {
         return "Value to penalize a conjunction of rule's score " +
@@ -0,0 +1,263 @@
+package weka.analyzers;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Disk backed store of cross validation predictions. Predictions are keyed
+ * by a hash of the content of the data they were made for, the classifier
+ * and its options, and the cross validation settings, so repeating an
+ * analysis on the same data with the same classifier can skip building the
+ * classifier entirely.
+ */
+public class PredictionCache {
+
+    /** Written at the start of every cache file holding a double matrix */
+    private static final int MAGIC = 0x57415043;
+
+    /** Written at the start of every cache file holding ClassDistributions */
+    private static final int DISTRIBUTIONS_MAGIC = 0x57415044;
+
+    /** Extension used for cache files */
+    private static final String EXTENSION = ".predictions";
+
+    /** Directory the predictions are stored in */
+    private final File directory;
+
+    /**
+     * Constructs a PredictionCache that stores predictions in a
+     * directory, the directory is created if it does not exist.
+     *
+     * @param directory File of the directory to use
+     * @throws IOException if the directory could not be created
+     */
+    public PredictionCache(File directory) throws IOException {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Builds the key predictions should be stored under.
+     *
+     * @param data Instances the predictions are for
+     * @param classifier Classifier used to make the predictions
+     * @param mode name of the kind of predictions being stored
+     * @param numFolds number of cross validation folds used
+     * @param iterations number of cross validation iterations used
+     * @param seed seed used to assign Instances to folds
+     * @return String key, suitable for use as a file name
+     */
+    public static String key(Instances data, Classifier classifier, String mode,
+                             int numFolds, int iterations, long seed) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new RuntimeException(e);
+        }
+        StringBuilder settings = new StringBuilder();
+        settings.append(classifier.getClass().getName()).append('\n');
+        settings.append(Utils.joinOptions(classifier.getOptions())).append('\n');
+        settings.append(mode).append('\n');
+        settings.append(numFolds).append(' ').append(iterations).append(' ').append(seed).append('\n');
+        settings.append(data.classIndex()).append('\n');
+        // Header, includes the attributes names, types and nominal values
+        settings.append(new Instances(data, 0).toString());
+        digest.update(settings.toString().getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer row = ByteBuffer.allocate(8 * (data.numAttributes() + 1));
+        for(int i = 0; i < data.numInstances(); i++) {
+            Instance inst = data.instance(i);
+            row.clear();
+            row.putDouble(inst.weight());
+            for(int j = 0; j < data.numAttributes(); j++) {
+                row.putDouble(inst.value(j));
+            }
+            digest.update(row.array(), 0, row.position());
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Loads the predictions stored under a key.
+     *
+     * @param key key the predictions were stored with
+     * @return the predictions, or null if there are none stored for key
+     * @throws IOException if the stored predictions could not be read, or
+     * the file is truncated or corrupt
+     */
+    public double[][] load(String key) throws IOException {
+        File file = new File(directory, key + EXTENSION);
+        if(!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Not a predictions file: " + file);
+            }
+            int rows = in.readInt();
+            int columns = in.readInt();
+            if(rows < 0 || columns < 0) {
+                throw new IOException("Corrupt predictions file: " + file);
+            }
+            checkLength(file, 12 + 8L * rows * columns);
+            double[][] predictions = new double[rows][columns];
+            for(double[] row : predictions) {
+                for(int j = 0; j < row.length; j++) {
+                    row[j] = in.readDouble();
+                }
+            }
+            return predictions;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stores predictions under a key, replacing any predictions already
+     * stored under it. The predictions are written to a temporary file
+     * first so a concurrent load never sees a partially written file.
+     *
+     * @param key key to store the predictions with
+     * @param predictions the predictions, every row must be the same length
+     * @throws IOException if the predictions could not be written
+     */
+    public void store(String key, double[][] predictions) throws IOException {
+        File tmp = File.createTempFile(key, ".tmp", directory);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(predictions.length);
+            out.writeInt(predictions.length == 0 ? 0 : predictions[0].length);
+            for(double[] row : predictions) {
+                for(double val : row) {
+                    out.writeDouble(val);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        replace(tmp, key);
+    }
+
+    /**
+     * Loads the ClassDistributions stored under a key.
+     *
+     * @param key key the distributions were stored with
+     * @return the distributions, or null if there are none stored for key
+     * @throws IOException if the stored distributions could not be read, or
+     * the file is truncated or corrupt
+     */
+    public ClassDistributions loadDistributions(String key) throws IOException {
+        File file = new File(directory, key + EXTENSION);
+        if(!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if(in.readInt() != DISTRIBUTIONS_MAGIC) {
+                throw new IOException("Not a class distributions file: " + file);
+            }
+            int numInstances = in.readInt();
+            int numClasses = in.readInt();
+            if(numInstances < 0 || numClasses <= 0) {
+                throw new IOException("Corrupt class distributions file: " + file);
+            }
+            checkLength(file, 12 + 4L * numInstances * numClasses);
+            float[] values = new float[numInstances * numClasses];
+            for(int i = 0; i < values.length; i++) {
+                values[i] = in.readFloat();
+            }
+            return new ClassDistributions(values, numClasses);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stores ClassDistributions under a key, replacing anything already
+     * stored under it.
+     *
+     * @param key key to store the distributions with
+     * @param distributions the distributions
+     * @throws IOException if the distributions could not be written
+     */
+    public void store(String key, ClassDistributions distributions) throws IOException {
+        File tmp = File.createTempFile(key, ".tmp", directory);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)));
+        try {
+            out.writeInt(DISTRIBUTIONS_MAGIC);
+            out.writeInt(distributions.numInstances());
+            out.writeInt(distributions.numClasses());
+            for(float val : distributions.values()) {
+                out.writeFloat(val);
+            }
+        } finally {
+            out.close();
+        }
+        replace(tmp, key);
+    }
+
+    /**
+     * Ensures a cache file is as long as its header says it should be, so a
+     * truncated file is not partially read and a corrupt header does not
+     * cause a huge allocation.
+     *
+     * @param file the cache file
+     * @param expected length in bytes the header implies
+     * @throws IOException if the file has a different length
+     */
+    private static void checkLength(File file, long expected) throws IOException {
+        if(file.length() != expected) {
+            throw new IOException("Truncated or corrupt predictions file: " + file +
+                    " has " + file.length() + " bytes, expected " + expected);
+        }
+    }
+
+    /**
+     * Moves a fully written temporary file to the file for a key.
+     *
+     * @param tmp the temporary file
+     * @param key the key
+     * @throws IOException if the file could not be moved
+     */
+    private void replace(File tmp, String key) throws IOException {
+        File file = new File(directory, key + EXTENSION);
+        if(!tmp.renameTo(file)) {
+            // Some platforms will not rename over an existing file
+            file.delete();
+            if(!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Could not write predictions to " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package weka.analyzers;
+
+/**
+ * Running per Instance statistics of numeric predictions. Predictions are
+ * folded in one at a time using Welford's algorithm, so memory use does not
+ * depend on how many predictions are made per Instance. Tracks the mean,
+ * variance, min and max of the predictions along with the mean and mean
+ * absolute value of the residuals (prediction - actual value). Since the actual
+ * value of an Instance is fixed the variance of its residuals is the same as
+ * the variance of its predictions.
+ */
+public class PredictionStatistics {
+
+    /** Number of values stored per Instance by toMatrix() */
+    private static final int MATRIX_COLUMNS = 7;
+
+    /** Number of predictions per Instance */
+    private final int[] count;
+
+    /** Mean prediction per Instance */
+    private final double[] mean;
+
+    /** Sum of squared differences from the mean prediction per Instance */
+    private final double[] m2;
+
+    /** Smallest prediction per Instance */
+    private final double[] min;
+
+    /** Largest prediction per Instance */
+    private final double[] max;
+
+    /** Mean residual per Instance */
+    private final double[] meanResidual;
+
+    /** Mean absolute residual per Instance */
+    private final double[] meanAbsResidual;
+
+    /**
+     * Constructs a PredictionStatistics with no predictions.
+     *
+     * @param numInstances number of Instances to track
+     */
+    public PredictionStatistics(int numInstances) {
+        count = new int[numInstances];
+        mean = new double[numInstances];
+        m2 = new double[numInstances];
+        min = new double[numInstances];
+        max = new double[numInstances];
+        meanResidual = new double[numInstances];
+        meanAbsResidual = new double[numInstances];
+    }
+
+    /**
+     * Adds a prediction for an Instance. Adding predictions for different
+     * Instances from different threads is safe, adding predictions for the
+     * same Instance is not.
+     *
+     * @param instance index of the Instance
+     * @param prediction the predicted value
+     * @param actual the Instance's true value
+     */
+    public void add(int instance, double prediction, double actual) {
+        int n = ++count[instance];
+        double residual = prediction - actual;
+        if(n == 1) {
+            min[instance] = prediction;
+            max[instance] = prediction;
+        } else {
+            min[instance] = Math.min(min[instance], prediction);
+            max[instance] = Math.max(max[instance], prediction);
+        }
+        double delta = prediction - mean[instance];
+        mean[instance] += delta / n;
+        m2[instance] += delta * (prediction - mean[instance]);
+        meanResidual[instance] += (residual - meanResidual[instance]) / n;
+        meanAbsResidual[instance] += (Math.abs(residual) - meanAbsResidual[instance]) / n;
+    }
+
+    /**
+     * Merges the predictions collected by another PredictionStatistics for the
+     * same Instances into this one, using Chan et al.'s pairwise update.
+     *
+     * @param other PredictionStatistics to merge, is not modified
+     */
+    public void merge(PredictionStatistics other) {
+        if(other.numInstances() != numInstances()) {
+            throw new IllegalArgumentException("Statistics are for a different number of instances");
+        }
+        for(int i = 0; i < count.length; i++) {
+            int nB = other.count[i];
+            if(nB == 0) {
+                continue;
+            }
+            int nA = count[i];
+            if(nA == 0) {
+                min[i] = other.min[i];
+                max[i] = other.max[i];
+            } else {
+                min[i] = Math.min(min[i], other.min[i]);
+                max[i] = Math.max(max[i], other.max[i]);
+            }
+            double n = nA + nB;
+            double delta = other.mean[i] - mean[i];
+            mean[i] += delta * nB / n;
+            m2[i] += other.m2[i] + delta * delta * nA * nB / n;
+            meanResidual[i] += (other.meanResidual[i] - meanResidual[i]) * nB / n;
+            meanAbsResidual[i] += (other.meanAbsResidual[i] - meanAbsResidual[i]) * nB / n;
+            count[i] = nA + nB;
+        }
+    }
+
+    /**
+     * @return number of Instances tracked
+     */
+    public int numInstances() {
+        return count.length;
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return number of predictions added for the Instance
+     */
+    public int count(int instance) {
+        return count[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return mean prediction for the Instance
+     */
+    public double mean(int instance) {
+        return mean[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return population variance of the predictions for the Instance,
+     * 0 if there are less than two predictions
+     */
+    public double variance(int instance) {
+        return count[instance] < 2 ? 0 : m2[instance] / count[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return standard deviation of the predictions for the Instance
+     */
+    public double stdDev(int instance) {
+        return Math.sqrt(variance(instance));
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return smallest prediction made for the Instance
+     */
+    public double min(int instance) {
+        return min[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return largest prediction made for the Instance
+     */
+    public double max(int instance) {
+        return max[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return mean of prediction - actual value for the Instance
+     */
+    public double meanResidual(int instance) {
+        return meanResidual[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return mean of |prediction - actual value| for the Instance
+     */
+    public double meanAbsResidual(int instance) {
+        return meanAbsResidual[instance];
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return smallest residual for the Instance
+     */
+    public double minResidual(int instance) {
+        return min[instance] - (mean[instance] - meanResidual[instance]);
+    }
+
+    /**
+     * @param instance index of the Instance
+     * @return largest residual for the Instance
+     */
+    public double maxResidual(int instance) {
+        return max[instance] - (mean[instance] - meanResidual[instance]);
+    }
+
+    /**
+     * @return mean of the mean absolute residual of every Instance
+     */
+    public double meanAbsoluteError() {
+        double sum = 0;
+        for(double val : meanAbsResidual) {
+            sum += val;
+        }
+        return count.length == 0 ? 0 : sum / count.length;
+    }
+
+    /**
+     * Packs the statistics into a matrix with one row per Instance, suitable
+     * for storing with PredictionCache.
+     *
+     * @return the matrix
+     */
+    double[][] toMatrix() {
+        double[][] matrix = new double[count.length][];
+        for(int i = 0; i < count.length; i++) {
+            matrix[i] = new double[] {count[i], mean[i], m2[i], min[i], max[i],
+                    meanResidual[i], meanAbsResidual[i]};
+        }
+        return matrix;
+    }
+
+    /**
+     * Unpacks statistics packed with toMatrix().
+     *
+     * @param matrix the matrix
+     * @return the PredictionStatistics, or null if matrix is not in the
+     * expected format
+     */
+    static PredictionStatistics fromMatrix(double[][] matrix) {
+        if(matrix.length > 0 && matrix[0].length != MATRIX_COLUMNS) {
+            return null;
+        }
+        PredictionStatistics stats = new PredictionStatistics(matrix.length);
+        for(int i = 0; i < matrix.length; i++) {
+            double[] row = matrix[i];
+            stats.count[i] = (int) row[0];
+            stats.mean[i] = row[1];
+            stats.m2[i] = row[2];
+            stats.min[i] = row[3];
+            stats.max[i] = row[4];
+            stats.meanResidual[i] = row[5];
+            stats.meanAbsResidual[i] = row[6];
+        }
+        return stats;
+    }
+}
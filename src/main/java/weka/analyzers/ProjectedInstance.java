@@ -0,0 +1,146 @@
+package weka.analyzers;
+
+import weka.core.Instance;
+import weka.core.LazyInstance;
+
+/**
+ * Instance that exposes a subset of the attributes of another Instance
+ * without copying its attribute values. Attribute i of this Instance is
+ * attribute map[i] of the source Instance. Reads go straight through to the
+ * source, the first write or change to the attributes copies the projected
+ * values into this Instance so the source is never modified.
+ */
+public class ProjectedInstance extends LazyInstance {
+
+    /** For serialization */
+    private static final long serialVersionUID = -4425096620185613297L;
+
+    /** Instance the values are read from, null once this has its own values */
+    private Instance source;
+
+    /** Index in source of each of this Instance's attributes */
+    private final int[] map;
+
+    /**
+     * Constructs a ProjectedInstance. The weight is copied from source,
+     * the dataset is set to null.
+     *
+     * @param source Instance to read attribute values from
+     * @param map index in source of each attribute this Instance should have,
+     *            not copied so it can be shared between Instances
+     */
+    public ProjectedInstance(Instance source, int[] map) {
+        super(source.weight());
+        this.source = source;
+        this.map = map;
+    }
+
+    /**
+     * Copies the projected values out of the source Instance, after which
+     * this Instance behaves like a regular Instance.
+     */
+    @Override
+    protected void materialize() {
+        if(source != null) {
+            double[] values = new double[map.length];
+            for(int i = 0; i < map.length; i++) {
+                values[i] = source.value(map[i]);
+            }
+            m_AttValues = values;
+            source = null;
+        }
+    }
+
+    @Override
+    public Object copy() {
+        Instance result;
+        if(source != null) {
+            result = new ProjectedInstance(source, map);
+            result.setWeight(weight());
+        } else {
+            result = new Instance(this);
+        }
+        result.setDataset(dataset());
+        return result;
+    }
+
+    @Override
+    public double value(int attIndex) {
+        return source != null ? source.value(map[attIndex]) : m_AttValues[attIndex];
+    }
+
+    @Override
+    public double valueSparse(int indexOfIndex) {
+        return value(indexOfIndex);
+    }
+
+    @Override
+    public boolean isMissing(int attIndex) {
+        return Instance.isMissingValue(value(attIndex));
+    }
+
+    @Override
+    public boolean isMissingSparse(int indexOfIndex) {
+        return isMissing(indexOfIndex);
+    }
+
+    @Override
+    public int index(int position) {
+        return position;
+    }
+
+    @Override
+    public int numAttributes() {
+        return source != null ? map.length : super.numAttributes();
+    }
+
+    @Override
+    public int numValues() {
+        return numAttributes();
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        if(source == null) {
+            return m_AttValues.clone();
+        }
+        double[] values = new double[map.length];
+        for(int i = 0; i < map.length; i++) {
+            values[i] = source.value(map[i]);
+        }
+        return values;
+    }
+
+    @Override
+    public void setValue(int attIndex, double value) {
+        materialize();
+        super.setValue(attIndex, value);
+    }
+
+    @Override
+    public void setValueSparse(int indexOfIndex, double value) {
+        materialize();
+        super.setValueSparse(indexOfIndex, value);
+    }
+
+    @Override
+    public void replaceMissingValues(double[] array) {
+        materialize();
+        super.replaceMissingValues(array);
+    }
+
+    @Override
+    public String toString() {
+        if(source == null) {
+            return super.toString();
+        }
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < map.length; i++) {
+            if(i > 0) {
+                text.append(',');
+            }
+            text.append(toString(i));
+        }
+        return text.toString();
+    }
+}
@@ -1,21 +1,199 @@
 package weka.analyzers;
 
 import weka.classifiers.Classifier;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.gui.Logger;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * General utility functions and classes for using a classifier to generate 
- * prediction(s) for a dataset.
+ * prediction(s) for a dataset. Folds can optionally be built and tested in
+ * parallel by passing an ExecutorService, in which case each fold is
+ * trained on its own copy of the classifier.
  */
 public final class RunClassifier {
 
     // Not intended to be instantiated
     private RunClassifier() {}
 
+    /**
+     * Receives the predictions of a classifier that was trained for
+     * a single fold. Each Instance is tested in exactly one fold per pass
+     * over the data, so implementations that only write to the slot of the
+     * Instance they are given do not need to synchronize even if folds are
+     * run in parallel.
+     */
+    private interface FoldHandler {
+
+        /**
+         * Handles a test Instance of a fold.
+         *
+         * @param clf Classifier that was built on the fold's train data
+         * @param instance the test Instance
+         * @param index index of instance in the dataset
+         * @throws Exception if the classifier could not classify the Instance
+         */
+        void handle(Classifier clf, Instance instance, int index) throws Exception;
+    }
+
+    /**
+     * Builds and tests a classifier on a single fold, passing the results
+     * on to a FoldHandler.
+     */
+    private static class FoldTask implements Callable<Void> {
+        private final Instances data;
+        private final CVFolds folds;
+        private final Classifier clf;
+        private final int fold;
+        private final FoldHandler handler;
+        private final Logger log;
+        private final String progress;
+
+        public FoldTask(Instances data, CVFolds folds, Classifier clf, int fold,
+                        FoldHandler handler, Logger log, String progress) {
+            this.data = data;
+            this.folds = folds;
+            this.clf = clf;
+            this.fold = fold;
+            this.handler = handler;
+            this.log = log;
+            this.progress = progress;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if(log != null) {
+                // Logger might not be thread safe
+                synchronized(log) {
+                    log.statusMessage(String.format("Building and Testing classifier for " +
+                            "fold %d out of %d%s", fold + 1, folds.numFolds(), progress));
+                }
+            }
+            clf.buildClassifier(folds.trainingSet(data, fold));
+            for(int j = 0; j < folds.numTest(fold); j++) {
+                int index = folds.testIndex(fold, j);
+                handler.handle(clf, data.instance(index), index);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Folds submitted to an ExecutorService on behalf of one classifier,
+     * kept so another thread can cancel them. Folds submitted after cancel
+     * are cancelled as soon as they are added.
+     */
+    private static class SubmittedFolds {
+        private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        private boolean cancelled = false;
+
+        public synchronized void add(Future<Void> future) {
+            if(cancelled) {
+                future.cancel(true);
+            } else {
+                futures.add(future);
+            }
+        }
+
+        /**
+         * Cancels every fold, so queued folds never start and running
+         * folds are interrupted.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            for(Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            futures.clear();
+        }
+    }
+
+    /**
+     * Builds and tests a classifier for every fold of data. If executor is
+     * null the folds are run one after another using classifier, otherwise
+     * each fold is run as a separate task on executor with its own copy of
+     * classifier.
+     *
+     * @param data data to run the folds of
+     * @param folds CVFolds dividing data into folds
+     * @param classifier the classifier to use
+     * @param executor ExecutorService to run the folds on, or null
+     * @param handler FoldHandler to pass the results of each fold to
+     * @param log if non null will send status updates to log per fold
+     * @param progress String to append to the status updates
+     * @throws Exception if the classifier could not be built
+     */
+    private static void runFolds(Instances data, CVFolds folds, Classifier classifier,
+            ExecutorService executor, FoldHandler handler, Logger log,
+            String progress) throws Exception {
+        runFolds(data, folds, classifier, executor, null, handler, log, progress);
+    }
+
+    /**
+     * Builds and tests a classifier for every fold of data as
+     * runFolds(data, folds, classifier, executor, handler, log, progress),
+     * also adding the folds submitted to executor to submitted.
+     *
+     * @param data data to run the folds of
+     * @param folds CVFolds dividing data into folds
+     * @param classifier the classifier to use
+     * @param executor ExecutorService to run the folds on, or null
+     * @param submitted SubmittedFolds to add the submitted folds to, or null
+     * @param handler FoldHandler to pass the results of each fold to
+     * @param log if non null will send status updates to log per fold
+     * @param progress String to append to the status updates
+     * @throws Exception if the classifier could not be built
+     */
+    private static void runFolds(Instances data, CVFolds folds, Classifier classifier,
+            ExecutorService executor, SubmittedFolds submitted, FoldHandler handler,
+            Logger log, String progress) throws Exception {
+        int numFolds = folds.numFolds();
+        if(executor == null) {
+            for(int fold = 0; fold < numFolds; fold++) {
+                new FoldTask(data, folds, classifier, fold, handler, log, progress).call();
+            }
+            return;
+        }
+        Classifier[] copies = Classifier.makeCopies(classifier, numFolds);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(numFolds);
+        try {
+            for(int fold = 0; fold < numFolds; fold++) {
+                Future<Void> future = executor.submit(new FoldTask(data, folds, copies[fold],
+                        fold, handler, log, progress));
+                futures.add(future);
+                if(submitted != null) {
+                    submitted.add(future);
+                }
+            }
+            for(Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            // No-op for completed folds, makes a best effort to stop the
+            // remaining folds if we failed or were interrupted
+            for(Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
     /**
      * Runs a classifier using cross validation over numFolds folds
      * and returns its predictions per instance. The data's order
@@ -52,21 +230,86 @@ public final class RunClassifier {
      */
     public static double[] runClassifier(Instances data, Classifier classifier,
             int numFolds, Logger log) throws Exception {
-        double[] testResults =  new double[data.numInstances()];
-        int offset = 0;
-        for(int fold = 0; fold < numFolds; fold++) {
-            Instances train = data.trainCV(numFolds, fold);
-            Instances test = data.testCV(numFolds, fold);
-            if(log != null) {
-                log.statusMessage(String.format("Building and Testing classifier for " +
-                        "fold %d out of %d", fold + 1, numFolds));
-            }
-            classifier.buildClassifier(train);
-            for(int j = 0; j < test.numInstances(); j++) {
-                testResults[offset + j] = classifier.classifyInstance(test.instance(j));
+        return runClassifier(data, classifier, numFolds, (ExecutorService) null, log);
+    }
+
+    /**
+     * Runs a classifier using cross validation over numFolds folds
+     * and returns its predictions per instance. The data's order
+     * is unchanged. If executor is non-null the folds are built and tested
+     * in parallel on executor, each fold using its own copy of classifier,
+     * otherwise classifier is used to run the folds one at a time. The
+     * predictions are identical either way. Progress will be logged if
+     * log is non-null.
+     *
+     * @param data that data to train and test the classifier with, should be
+     *             randomized
+     * @param classifier the classifier to use
+     * @param numFolds the number of folds to use
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return a double array where arr[i] is the classifiers predictions
+     * for data.instance(i).
+     * @throws Exception if the classifier could not be built
+     */
+    public static double[] runClassifier(Instances data, Classifier classifier,
+            int numFolds, ExecutorService executor, Logger log) throws Exception {
+        return runClassifier(data, classifier,
+                CVFolds.sequential(data.numInstances(), numFolds), executor, log);
+    }
+
+    /**
+     * Runs a classifier using cross validation over the given folds and
+     * returns its predictions per instance. The data's order is unchanged
+     * and the Instances of each test fold are classified in place. If
+     * executor is non-null the folds are built and tested in parallel on
+     * executor, each fold using its own copy of classifier. Progress will be
+     * logged if log is non-null.
+     *
+     * @param data that data to train and test the classifier with
+     * @param classifier the classifier to use
+     * @param folds CVFolds dividing data into folds
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return a double array where arr[i] is the classifiers predictions
+     * for data.instance(i).
+     * @throws Exception if the classifier could not be built
+     */
+    public static double[] runClassifier(Instances data, Classifier classifier,
+            CVFolds folds, ExecutorService executor, Logger log) throws Exception {
+        return runClassifier(data, classifier, folds, executor, null, log);
+    }
+
+    /**
+     * Runs a classifier as runClassifier(data, classifier, folds, executor,
+     * log), adding the folds submitted to executor to submitted.
+     *
+     * @param data that data to train and test the classifier with
+     * @param classifier the classifier to use
+     * @param folds CVFolds dividing data into folds
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param submitted SubmittedFolds to add the submitted folds to, or null
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return a double array where arr[i] is the classifiers predictions
+     * for data.instance(i).
+     * @throws Exception if the classifier could not be built
+     */
+    private static double[] runClassifier(Instances data, Classifier classifier,
+            CVFolds folds, ExecutorService executor, SubmittedFolds submitted,
+            Logger log) throws Exception {
+        final double[] testResults =  new double[data.numInstances()];
+        runFolds(data, folds, classifier, executor, submitted, new FoldHandler() {
+            @Override
+            public void handle(Classifier clf, Instance instance, int index) throws Exception {
+                testResults[index] = clf.classifyInstance(instance);
             }
-            offset += test.numInstances();
-        }
+        }, log, "");
         return testResults;
     }
 
@@ -91,81 +334,352 @@ public final class RunClassifier {
      */
     public static double[][] runClassifier(Instances data, Classifier classifier,
             int numFolds, int iterations, Logger log) throws Exception {
-        int[] index = new int[data.numInstances()];
-        Random rand = new Random();
-        for(int i = 0; i < index.length; i++) {
-            index[i] = i;
-        }
-        if(iterations > 0) {
-            data = new Instances(data);
+        return runClassifier(data, classifier, numFolds, iterations, null, log);
+    }
+
+    /**
+     * Runs a classifier using cross validation over numFolds folds and returns
+     * its predictions over multiple iterations, as runClassifier(data, classifier,
+     * numFolds, iterations, log). If executor is non-null the folds of each
+     * iteration are built and tested in parallel on executor.
+     *
+     * @param data that data to train and test the classifier with
+     * @param classifier the classifier to use
+     * @param numFolds the number of folds to use
+     * @param iterations the number of iterations to use
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return a double array where arr[i][j] is the classifiers predictions
+     * for the jth prediction of instance i if the data was numeric and is
+     * the number of prediction of class j for instance i if the data was
+     * nominal.
+     * @throws Exception if the classifier could not be built
+     */
+    public static double[][] runClassifier(Instances data, Classifier classifier,
+            int numFolds, int iterations, ExecutorService executor,
+            Logger log) throws Exception {
+        return runClassifier(data, classifier, numFolds, iterations,
+                new Random().nextLong(), executor, null, log);
+    }
+
+    /**
+     * Runs a classifier using cross validation over numFolds folds and returns
+     * its predictions over multiple iterations, as runClassifier(data, classifier,
+     * numFolds, iterations, log). Instances are assigned to folds using a Random
+     * seeded with seed. If cache is non-null it is checked for predictions
+     * made with the same data, classifier options and cross validation settings
+     * before building any classifiers, and newly made predictions are stored in it.
+     *
+     * @param data that data to train and test the classifier with
+     * @param classifier the classifier to use
+     * @param numFolds the number of folds to use
+     * @param iterations the number of iterations to use
+     * @param seed seed to use when assigning Instances to folds
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param cache PredictionCache to load and store the predictions with, or null
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return a double array where arr[i][j] is the classifiers predictions
+     * for the jth prediction of instance i if the data was numeric and is
+     * the number of prediction of class j for instance i if the data was
+     * nominal.
+     * @throws Exception if the classifier could not be built
+     */
+    public static double[][] runClassifier(Instances data, Classifier classifier,
+            int numFolds, int iterations, long seed, ExecutorService executor,
+            PredictionCache cache, Logger log) throws Exception {
+        String key = null;
+        if(cache != null) {
+            key = PredictionCache.key(data, classifier, "counts", numFolds, iterations, seed);
+            double[][] cached = loadCached(cache, key, log);
+            if(cached != null && cached.length == data.numInstances()) {
+                if(log != null) {
+                    log.statusMessage("Loaded cached predictions");
+                }
+                return cached;
+            }
         }
-        double[][] testResults;
-        if(data.classAttribute().isNumeric()) {
+        Random rand = new Random(seed);
+        final double[][] testResults;
+        final boolean numeric = data.classAttribute().isNumeric();
+        if(numeric) {
             testResults =  new double[data.numInstances()][iterations];
         } else {
             testResults =  new double[data.numInstances()][data.classAttribute().numValues()];
         }
+        // Only the fold assignments are shuffled, the data is never copied or reordered
+        CVFolds folds = CVFolds.sequential(data.numInstances(), numFolds);
         for(int iteration = 0; iteration < iterations; iteration++) {
-            int offset = 0;
-            AnalyzerUtils.shuffleInSync(data, index, rand);
-            for(int fold = 0; fold < numFolds; fold++) {
-                Instances train = data.trainCV(numFolds, fold);
-                Instances test = data.testCV(numFolds, fold);
-                if(log != null){
-                    log.statusMessage(String.format("Building and Testing classifier for " +
-                            "fold %d out of %d, iteration %d of %d", fold + 1, numFolds,
-                            iteration + 1, iterations));
-                }
-                classifier.buildClassifier(train);
-                for(int j = 0; j < test.numInstances(); j++) {
-                    double val = classifier.classifyInstance(test.instance(j));
-                    if(data.classAttribute().isNumeric()) {
-                        testResults[index[offset + j]][iterations] = val;
+            final int column = iteration;
+            FoldHandler handler = new FoldHandler() {
+                @Override
+                public void handle(Classifier clf, Instance instance, int index) throws Exception {
+                    double val = clf.classifyInstance(instance);
+                    if(numeric) {
+                        testResults[index][column] = val;
                     } else {
-                        testResults[index[offset + j]][(int) val]++;
+                        testResults[index][(int) val]++;
                     }
                 }
-                offset += test.numInstances();
+            };
+            folds.shuffle(rand);
+            runFolds(data, folds, classifier, executor, handler, log,
+                    String.format(", iteration %d of %d", iteration + 1, iterations));
+        }
+        if(cache != null) {
+            try {
+                cache.store(key, testResults);
+            } catch (IOException e) {
+                // The predictions are still good, so just report the problem
+                if(log != null) {
+                    log.logMessage("Could not cache predictions: " + e.getMessage());
+                }
             }
         }
         return testResults;
     }
 
+    /**
+     * Loads predictions from a PredictionCache. A cache file that can not be
+     * read is treated as a miss, so the predictions are recomputed and the
+     * file is overwritten when they are stored.
+     *
+     * @param cache PredictionCache to load from
+     * @param key key the predictions were stored with
+     * @param log if non null the problem is logged to it
+     * @return the predictions, or null if none could be loaded
+     */
+    private static double[][] loadCached(PredictionCache cache, String key, Logger log) {
+        try {
+            return cache.load(key);
+        } catch (IOException e) {
+            if(log != null) {
+                log.logMessage("Ignoring unreadable cached predictions: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Loads ClassDistributions from a PredictionCache, treating a cache file
+     * that can not be read as a miss like loadCached.
+     *
+     * @param cache PredictionCache to load from
+     * @param key key the distributions were stored with
+     * @param log if non null the problem is logged to it
+     * @return the distributions, or null if none could be loaded
+     */
+    private static ClassDistributions loadCachedDistributions(PredictionCache cache, String key,
+                                                              Logger log) {
+        try {
+            return cache.loadDistributions(key);
+        } catch (IOException e) {
+            if(log != null) {
+                log.logMessage("Ignoring unreadable cached predictions: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Runs a classifier on data with a numeric class using cross validation
+     * over numFolds folds for multiple iterations and returns running statistics
+     * of its predictions and residuals per instance. Unlike runClassifier(data,
+     * classifier, numFolds, iterations, log) the predictions themselves are not
+     * kept, so memory use is independent of the number of iterations. Instances
+     * are assigned to folds the same way as runClassifier(data, classifier,
+     * numFolds, iterations, seed, executor, cache, log). If cache is non-null it
+     * is checked before building any classifiers and new statistics are stored
+     * in it.
+     *
+     * @param data that data to train and test the classifier with, must have a
+     *             numeric class
+     * @param classifier the classifier to use
+     * @param numFolds the number of folds to use
+     * @param iterations the number of iterations to use
+     * @param seed seed to use when assigning Instances to folds
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param cache PredictionCache to load and store the statistics with, or null
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return PredictionStatistics of the predictions made for each Instance
+     * @throws Exception if the classifier could not be built
+     */
+    public static PredictionStatistics runClassifierStatistics(Instances data,
+            Classifier classifier, int numFolds, int iterations, long seed,
+            ExecutorService executor, PredictionCache cache, Logger log) throws Exception {
+        if(!data.classAttribute().isNumeric()) {
+            throw new IllegalArgumentException("Prediction statistics require a numeric class");
+        }
+        String key = null;
+        if(cache != null) {
+            key = PredictionCache.key(data, classifier, "statistics", numFolds, iterations, seed);
+            double[][] cached = loadCached(cache, key, log);
+            PredictionStatistics stats = cached == null || cached.length != data.numInstances() ?
+                    null : PredictionStatistics.fromMatrix(cached);
+            if(stats != null) {
+                if(log != null) {
+                    log.statusMessage("Loaded cached predictions");
+                }
+                return stats;
+            }
+        }
+        Random rand = new Random(seed);
+        final PredictionStatistics stats = new PredictionStatistics(data.numInstances());
+        FoldHandler handler = new FoldHandler() {
+            @Override
+            public void handle(Classifier clf, Instance instance, int index) throws Exception {
+                stats.add(index, clf.classifyInstance(instance), instance.classValue());
+            }
+        };
+        CVFolds folds = CVFolds.sequential(data.numInstances(), numFolds);
+        for(int iteration = 0; iteration < iterations; iteration++) {
+            folds.shuffle(rand);
+            runFolds(data, folds, classifier, executor, handler, log,
+                    String.format(", iteration %d of %d", iteration + 1, iterations));
+        }
+        if(cache != null) {
+            try {
+                cache.store(key, stats.toMatrix());
+            } catch (IOException e) {
+                if(log != null) {
+                    log.logMessage("Could not cache predictions: " + e.getMessage());
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Runs a classifier using a single pass of cross validation over numFolds
+     * folds and returns the class probability distribution it predicted for each
+     * instance. Instances are assigned to folds using a Random seeded with seed.
+     * Compared to counting the classes predicted over many iterations this
+     * only builds numFolds classifiers and gives a finer grained measure of how
+     * confident the classifier was for each Instance. If cache is non-null it is
+     * checked before building any classifiers and new distributions are stored
+     * in it.
+     *
+     * @param data that data to train and test the classifier with, must have a
+     *             nominal class
+     * @param classifier the classifier to use
+     * @param numFolds the number of folds to use
+     * @param seed seed to use when assigning Instances to folds
+     * @param executor ExecutorService to run the folds on, or null to
+     *                 run them serially
+     * @param cache PredictionCache to load and store the distributions with, or null
+     * @param log if non null will send status updates to log per fold
+     *
+     * @return ClassDistributions where get(i, j) is the probability the
+     * classifier gave to class j for data.instance(i)
+     * @throws Exception if the classifier could not be built
+     */
+    public static ClassDistributions runClassifierDistributions(Instances data,
+            Classifier classifier, int numFolds, long seed, ExecutorService executor,
+            PredictionCache cache, Logger log) throws Exception {
+        if(!data.classAttribute().isNominal()) {
+            throw new IllegalArgumentException("Class distributions require a nominal class");
+        }
+        int numClasses = data.classAttribute().numValues();
+        String key = null;
+        if(cache != null) {
+            key = PredictionCache.key(data, classifier, "distributions", numFolds, 1, seed);
+            ClassDistributions cached = loadCachedDistributions(cache, key, log);
+            if(cached != null && cached.numInstances() == data.numInstances() &&
+                    cached.numClasses() == numClasses) {
+                if(log != null) {
+                    log.statusMessage("Loaded cached predictions");
+                }
+                return cached;
+            }
+        }
+        final ClassDistributions distributions =
+                new ClassDistributions(data.numInstances(), numClasses);
+        runFolds(data, CVFolds.randomized(data.numInstances(), numFolds, new Random(seed)),
+                classifier, executor, new FoldHandler() {
+            @Override
+            public void handle(Classifier clf, Instance instance, int index) throws Exception {
+                distributions.set(index, clf.distributionForInstance(instance));
+            }
+        }, log, "");
+        if(cache != null) {
+            try {
+                cache.store(key, distributions);
+            } catch (IOException e) {
+                if(log != null) {
+                    log.logMessage("Could not cache predictions: " + e.getMessage());
+                }
+            }
+        }
+        return distributions;
+    }
+
     /**
      * Callable implementation of runClassifier(..)
      */
     public static class CallableClassifier implements Callable<double[]> {
         private final Classifier clf;
         private final Instances data;
-        private final int folds;
+        private final CVFolds folds;
+        private final ExecutorService executor;
 
         public CallableClassifier(Instances data, int folds, Classifier clf) {
+            this(data, folds, clf, null);
+        }
+
+        public CallableClassifier(Instances data, int folds, Classifier clf,
+                                  ExecutorService executor) {
+            this(data, CVFolds.sequential(data.numInstances(), folds), clf, executor);
+        }
+
+        public CallableClassifier(Instances data, CVFolds folds, Classifier clf,
+                                  ExecutorService executor) {
             this.data = data;
             this.folds = folds;
             this.clf = clf;
+            this.executor = executor;
         }
 
         @Override
         public double[] call() throws Exception {
-            return runClassifier(data, clf, folds);
+            return runClassifier(data, clf, folds, executor, null);
         }
     }
 
     /**
      * Runnable implementation of runClassifier(...). Stores output or exception
-     * as fields which can be examined later.
+     * as fields which can be examined later. If the folds run on an
+     * ExecutorService, cancelFolds() cancels them from another thread, such
+     * as one that stopped the thread running this because it took too long.
      */
     public static class RunnableClassifier implements Runnable {
-        private final int folds;
+        private final CVFolds folds;
         private final Instances data;
+        private final ExecutorService executor;
+        private final SubmittedFolds submitted = new SubmittedFolds();
         public Classifier clf;
         public double[] output;
         public Exception ex;
 
         public RunnableClassifier(Instances data, int folds, Classifier clf) {
+            this(data, folds, clf, null);
+        }
+
+        public RunnableClassifier(Instances data, int folds, Classifier clf,
+                                  ExecutorService executor) {
+            this(data, CVFolds.sequential(data.numInstances(), folds), clf, executor);
+        }
+
+        public RunnableClassifier(Instances data, CVFolds folds, Classifier clf,
+                                  ExecutorService executor) {
             this.data = data;
             this.folds = folds;
             this.clf = clf;
+            this.executor = executor;
             output = null;
             ex = null;
         }
@@ -173,12 +687,21 @@ public final class RunClassifier {
         @Override
         public void run() {
             try {
-                output = runClassifier(data, clf, folds);
+                output = runClassifier(data, clf, folds, executor, submitted, null);
                 ex = null;
             } catch (Exception e) {
                 output = null;
                 ex = e;
             }
         }
+
+        /**
+         * Cancels the folds submitted to the ExecutorService, including any
+         * submitted after this is called. Queued folds never start and
+         * running folds are interrupted.
+         */
+        public void cancelFolds() {
+            submitted.cancel();
+        }
     }
 }
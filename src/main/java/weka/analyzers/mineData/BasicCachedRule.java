@@ -3,8 +3,6 @@ package weka.analyzers.mineData;
 import weka.core.Attribute;
 import weka.core.Instances;
 
-import java.util.BitSet;
-
 /**
  * CachedRule that applies to a single column.
  */
@@ -17,8 +15,8 @@ public class BasicCachedRule implements CachedRule {
      * @return The empty Rule
      */
     public static BasicCachedRule emptyRule(int size) {
-        BitSet all = new BitSet(size);
-        all.flip(0, size);
+        BitVector all = new BitVector(size);
+        all.set(0, size);
         return new BasicCachedRule(all, "true");
     }
 
@@ -33,7 +31,7 @@ public class BasicCachedRule implements CachedRule {
      */
     public static BasicCachedRule EqualsRule(Instances data, Attribute att,
                                              double val) {
-        BitSet covered = new BitSet(data.numInstances());
+        BitVector covered = new BitVector(data.numInstances());
         for(int i = 0; i < data.numInstances(); i++) {
             if(data.instance(i).value(att) == val) {
                 covered.set(i);
@@ -53,7 +51,7 @@ public class BasicCachedRule implements CachedRule {
      */
     public static BasicCachedRule NotEqualsRule(Instances data, Attribute att,
                                                 double val) {
-        BitSet covered = new BitSet(data.numInstances());
+        BitVector covered = new BitVector(data.numInstances());
         for(int i = 0; i < data.numInstances(); i++) {
             if(data.instance(i).value(att) != val) {
                 covered.set(i);
@@ -62,6 +60,38 @@ public class BasicCachedRule implements CachedRule {
         return new BasicCachedRule(covered, val, "!=", att);
     }
 
+    /**
+     * Constructs a Rules that covers instances if they have a particular value
+     * in a specific attribute, reading the values from a ColumnarInstances.
+     *
+     * @param data ColumnarInstances the rule will apply to, att must be
+     *             column att.index() of it
+     * @param att Attribute the rule applies to
+     * @param val double to test equality for
+     * @return CachedRule covering instances with val in att
+     */
+    public static BasicCachedRule EqualsRule(ColumnarInstances data, Attribute att,
+                                             double val) {
+        return new BasicCachedRule(data.matching(att.index(), val), val, "==", att);
+    }
+
+    /**
+     * Constructs a rule that covers instances that do not have a given value
+     * for a given attribute, reading the values from a ColumnarInstances. The
+     * coverage is stored as the complement of the matching EqualsRule.
+     *
+     * @param data ColumnarInstances the rule will apply to, att must be
+     *             column att.index() of it
+     * @param att Attribute the rule applies to
+     * @param val double to check attributes values are not equals to
+     * @return CachedRule covering Instances without val in att
+     */
+    public static BasicCachedRule NotEqualsRule(ColumnarInstances data, Attribute att,
+                                                double val) {
+        return new BasicCachedRule(new ComplementCoverage(data.matching(att.index(), val), null),
+                val, "!=", att);
+    }
+
     /**
      * Constructs a CachedRule that covers an instance iff that instance has
      * a values greater then another value in a specific column
@@ -73,7 +103,7 @@ public class BasicCachedRule implements CachedRule {
      */
     public static BasicCachedRule GreaterThanRule(Instances data, Attribute att,
                                                   double val) {
-        BitSet covered = new BitSet(data.numInstances());
+        BitVector covered = new BitVector(data.numInstances());
         for(int i = 0; i < data.numInstances(); i++) {
             if(data.instance(i).value(att) > val) {
                 covered.set(i);
@@ -93,7 +123,7 @@ public class BasicCachedRule implements CachedRule {
      */
     public static BasicCachedRule SmallerThanRule(Instances data, Attribute att,
                                                   double val) {
-        BitSet covered = new BitSet(data.numInstances());
+        BitVector covered = new BitVector(data.numInstances());
         for(int i = 0; i < data.numInstances(); i++) {
             if(data.instance(i).value(att) < val) {
                 covered.set(i);
@@ -113,7 +143,7 @@ public class BasicCachedRule implements CachedRule {
      */
     public static BasicCachedRule SmallerOrEqualRule(Instances data, Attribute att,
                                                      double val) {
-        BitSet covered = new BitSet(data.numInstances());
+        BitVector covered = new BitVector(data.numInstances());
         for(int i = 0; i < data.numInstances(); i++) {
             if(data.instance(i).value(att) <= val) {
                 covered.set(i);
@@ -132,7 +162,7 @@ public class BasicCachedRule implements CachedRule {
      * @return CachedRule covering Instances with larger or equal values
      */
     public static BasicCachedRule GreaterOrEqualRule(Instances data, Attribute att, double val) {
-        BitSet covered = new BitSet(data.numInstances());
+        BitVector covered = new BitVector(data.numInstances());
         for(int i = 0; i < data.numInstances(); i++) {
             if(data.instance(i).value(att) >= val) {
                 covered.set(i);
@@ -142,41 +172,75 @@ public class BasicCachedRule implements CachedRule {
     }
 
     /** Instances this Rule Covers */
-    private BitSet covered;
+    private Coverage covered;
 
     /** A String representation of this */
     private String description;
 
+    /** Test this applies to each Instance, null if it is not known */
+    private RulePredicate predicate;
+
     /**
      * Builds a BasicCachedRule from the String representation
      * and the instances it covers.
      *
-     * @param covered BitSet with a bit set iff this covers that Instance from
-     *                the same index in the dataset this rule was built for
+     * @param covered Coverage containing an index iff this covers that Instance
+     *                from the dataset this rule was built for
+     * @param description String representation
+     */
+    public BasicCachedRule(Coverage covered, String description) {
+        this(covered, description, null);
+    }
+
+    /**
+     * Builds a BasicCachedRule from the String representation, the
+     * instances it covers and the test it applies.
+     *
+     * @param covered Coverage containing an index iff this covers that Instance
+     *                from the dataset this rule was built for
      * @param description String representation
+     * @param predicate RulePredicate that holds for exactly the covered
+     *                  Instances, or null if it is not known
      */
-    public BasicCachedRule(BitSet covered, String description) {
+    public BasicCachedRule(Coverage covered, String description, RulePredicate predicate) {
         this.covered = covered;
         this.description = description;
+        this.predicate = predicate;
     }
 
     /**
      * Builds a BasicCachedRule from the instances it covers, the value and
      * attribute used, and a modifier String.
      *
-     * @param covered BitSet with a bit set iff this covers that Instance from
-     *                the same index in the dataset this rule was built for
+     * @param covered Coverage containing an index iff this covers that Instance
+     *                from the dataset this rule was built for
      * @param val value used for comparison when determining what instances were
      *            covered
      * @param att Attribute used to build this rule
      * @param modifier String representation of how an instance's value relates
      *                 to the given value
      */
-    public BasicCachedRule(BitSet covered, double val, String modifier, Attribute att) {
+    public BasicCachedRule(Coverage covered, double val, String modifier, Attribute att) {
         this(covered, (att.isNominal() || att.isString() ?
                 String.format("(%s %s %s)", att.name(), modifier, att.value((int) val)) :
                 String.format("(%s %s %.3f)", att.name(), modifier, val)
-        ));
+        ), new RulePredicate(att.index(), modifier, val));
+    }
+
+    /**
+     * Returns a rule with the same description as this one whose coverage
+     * is stored as a CompressedCoverage, if that takes less memory.
+     *
+     * @return the compacted rule, or this if it can not be made smaller
+     */
+    public BasicCachedRule compact() {
+        if(covered instanceof BitVector) {
+            Coverage compacted = CompressedCoverage.compact((BitVector) covered);
+            if(compacted != covered) {
+                return new BasicCachedRule(compacted, description, predicate);
+            }
+        }
+        return this;
     }
 
     @Override
@@ -184,8 +248,15 @@ public class BasicCachedRule implements CachedRule {
         return description;
     }
 
+    /**
+     * @return the test this applies to each Instance, or null if it is not known
+     */
+    public RulePredicate predicate() {
+        return predicate;
+    }
+
     @Override
-    public BitSet covered() {
+    public Coverage covered() {
         return covered;
     }
 }
\ No newline at end of file
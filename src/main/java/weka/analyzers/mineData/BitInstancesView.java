@@ -1,19 +1,30 @@
 package weka.analyzers.mineData;
 
-import java.util.BitSet;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 
 /**
  * Represents a subset of some indexed dataset and what Instances of that subset
  * are considered to be targets. Efficiently supports a number of calculations
- * and filtering operations given BitSet representations of additional subsets.
+ * and filtering operations given the Coverage of additional subsets.
+ * Once filtering leaves only a small fraction of the dataset the subset is
+ * stored as sorted arrays of the indices of its targets and other Instances,
+ * so operations on it take time proportional to the size of the subset
+ * rather than the dataset.
  */
 public class BitInstancesView {
 
+    /**
+     * Switch to storing indices once fewer than one in this many Instances
+     * of the dataset are included
+     */
+    private static final int ROW_MODE_DENSITY = 64;
+
     /**
      * Class containing the results of evaluating a rule on a
      * BitInstancesView. Immutable.
      */
-    public class RuleEvaluation {
+    public static class RuleEvaluation {
 
         /** Number of instances the rule covered */
         public final int covered;
@@ -36,29 +47,42 @@ public class BitInstancesView {
     }
 
     /**
-     * BitSet where a bit is set iff the corresponding Instance is a target.
+     * BitVector where a bit is set iff the corresponding Instance is a target.
      * Targets will not be modified and so this can be a reference.
      */
-    protected final BitSet targets;
+    protected final BitVector targets;
+
+    /**
+     * BitVector where a bit is set iff the Instance at the
+     * same index is considered to be in this BitInstancesView,
+     * null if this stores indices instead.
+     */
+    protected BitVector covered;
+
+    /**
+     * Indices of the targets in this in ascending order, null if this
+     * stores a BitVector. Never modified so can be shared between copies.
+     */
+    protected int[] targetRows;
 
     /**
-     * BitsSet where a bit is set iff the Instance at the
-     * same index is considered to be in this BitInstancesView.
+     * Indices of the non targets in this in ascending order, null if this
+     * stores a BitVector. Never modified so can be shared between copies.
      */
-    protected final BitSet covered;
+    protected int[] otherRows;
 
     /**
      * Construct a new BitInstancesView that covers all instances
      * from start to stop.
      *
-     * @param targets BitSet Marking the targets in the data, will
+     * @param targets BitVector Marking the targets in the data, will
      *                not be modified
      * @param start the starting index of this data included in this
      * @param stop the ending index of this data included in this
      */
-    public BitInstancesView(BitSet targets, int start, int stop) {
+    public BitInstancesView(BitVector targets, int start, int stop) {
         this.targets = targets;
-        covered = new BitSet(targets.size());
+        covered = new BitVector(targets.size());
         covered.set(start, stop);
     }
 
@@ -66,11 +90,11 @@ public class BitInstancesView {
      * Construct a new BitInstancesView that covers all instances
      * from the first instance to stop.
      *
-     * @param targets BitSet Marking the targets in the data, will
+     * @param targets BitVector Marking the targets in the data, will
      *                not be modified
      * @param stop the ending index of this data included in this
      */
-    public BitInstancesView(BitSet targets, int stop) {
+    public BitInstancesView(BitVector targets, int stop) {
         this(targets, 0, stop);
     }
 
@@ -78,23 +102,66 @@ public class BitInstancesView {
      * Construct a new BitInstancesView that covers all instances
      * covered by a BitSet.
      *
-     * @param targets BitSet Marking the targets in the data, will
+     * @param targets BitVector Marking the targets in the data, will
      *                not be modified
      * @param covered the Instances from the indexed dataset this covers
      */
 
-    public BitInstancesView(BitSet targets, BitSet covered) {
+    public BitInstancesView(BitVector targets, BitVector covered) {
         this.covered = covered;
         this.targets = targets;
     }
 
+    /**
+     * Construct a new BitInstancesView that stores indices.
+     *
+     * @param targets BitVector Marking the targets in the data
+     * @param targetRows sorted indices of the targets this covers
+     * @param otherRows sorted indices of the non targets this covers
+     */
+    private BitInstancesView(BitVector targets, int[] targetRows, int[] otherRows) {
+        this.targets = targets;
+        this.targetRows = targetRows;
+        this.otherRows = otherRows;
+    }
+
+    /**
+     * @return whether this stores indices rather than a BitVector
+     */
+    public boolean isRowMode() {
+        return covered == null;
+    }
+
     /**
      * Remove all instances from this that are not covered by a Rule.
+     * Switches to storing indices if few enough Instances remain.
      *
      * @param rule Rule to filter this by
      */
     public void filterByRule(CachedRule rule) {
-        covered.and(rule.covered());
+        Coverage ruleCoverage = rule.covered();
+        if(covered == null) {
+            targetRows = filterRows(targetRows, ruleCoverage, true);
+            otherRows = filterRows(otherRows, ruleCoverage, true);
+            return;
+        }
+        ruleCoverage.andInto(covered);
+        int remaining = covered.cardinality();
+        if(remaining < covered.size() / ROW_MODE_DENSITY) {
+            int numTargets = BitVector.andCardinality(covered, targets);
+            targetRows = new int[numTargets];
+            otherRows = new int[remaining - numTargets];
+            int t = 0;
+            int o = 0;
+            for(int i = covered.nextSetBit(0); i >= 0; i = covered.nextSetBit(i + 1)) {
+                if(targets.get(i)) {
+                    targetRows[t++] = i;
+                } else {
+                    otherRows[o++] = i;
+                }
+            }
+            covered = null;
+        }
     }
 
     /**
@@ -104,9 +171,52 @@ public class BitInstancesView {
      * @param rule Rule to filter by
      */
     public void removeCoveredTargets(CachedRule rule) {
-        BitSet coveredTargets = (BitSet) targets.clone();
-        coveredTargets.and(rule.covered());
-        covered.andNot(coveredTargets);
+        if(covered == null) {
+            targetRows = filterRows(targetRows, rule.covered(), false);
+            return;
+        }
+        rule.covered().andNotAndInto(covered, targets);
+    }
+
+    /**
+     * Finds the targets in this that a rule covers, which are the Instances
+     * removeCoveredTargets(rule) would remove.
+     *
+     * @param rule CachedRule to check
+     * @return indices of the targets in ascending order
+     */
+    public int[] coveredTargetRows(CachedRule rule) {
+        if(covered == null) {
+            return filterRows(targetRows, rule.covered(), true);
+        }
+        BitVector bits = targets.copy();
+        bits.and(covered);
+        rule.covered().andInto(bits);
+        int[] rows = new int[bits.cardinality()];
+        int count = 0;
+        for(int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            rows[count++] = i;
+        }
+        return rows;
+    }
+
+    /**
+     * Selects the indices a Coverage does or does not cover.
+     *
+     * @param rows sorted indices
+     * @param coverage Coverage to filter by
+     * @param keepCovered whether to keep the covered or the uncovered indices
+     * @return new array of the selected indices
+     */
+    private static int[] filterRows(int[] rows, Coverage coverage, boolean keepCovered) {
+        int[] result = new int[rows.length];
+        int count = 0;
+        for(int row : rows) {
+            if(coverage.get(row) == keepCovered) {
+                result[count++] = row;
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(result, count);
     }
 
     /**
@@ -118,11 +228,57 @@ public class BitInstancesView {
      * targets covered
      */
     public RuleEvaluation evaluateRule(CachedRule rule) {
-        BitSet coveredCopy = (BitSet) covered.clone();
-        coveredCopy.and(rule.covered());
-        int totalCovered = coveredCopy.cardinality();
-        coveredCopy.and(targets);
-        int targetsCovered = coveredCopy.cardinality();
+        return evaluateCoverage(rule.covered());
+    }
+
+    /**
+     * Returns the of Instances covered and number of targets covered
+     * by the intersection of the instances covered by this and a Coverage.
+     *
+     * @param ruleCoverage Coverage to evaluate
+     * @return RuleEvaluation containing the number of instances covered and number of
+     * targets covered
+     */
+    public RuleEvaluation evaluateCoverage(Coverage ruleCoverage) {
+        if(covered == null) {
+            int targetsCovered = ruleCoverage.intersectionCardinality(targetRows);
+            return new RuleEvaluation(targetsCovered + ruleCoverage.intersectionCardinality(otherRows),
+                    targetsCovered);
+        }
+        if(ruleCoverage.size() != covered.size()) {
+            throw new IllegalArgumentException("Rule was built for a different number of instances");
+        }
+        if(ruleCoverage instanceof CompressedCoverage) {
+            // Its kernels only visit the chunks it covers anything in
+            return new RuleEvaluation(ruleCoverage.intersectionCardinality(covered),
+                    ruleCoverage.intersectionCardinality(covered, targets));
+        }
+        // Both counts are taken in a single pass over the words
+        long[] coveredWords = covered.words();
+        long[] targetWords = targets.words();
+        int totalCovered = 0;
+        int targetsCovered = 0;
+        if(ruleCoverage instanceof BitVector) {
+            long[] ruleWords = ((BitVector) ruleCoverage).words();
+            for(int i = 0; i < coveredWords.length; i++) {
+                long word = coveredWords[i] & ruleWords[i];
+                totalCovered += Long.bitCount(word);
+                targetsCovered += Long.bitCount(word & targetWords[i]);
+            }
+        } else if(ruleCoverage instanceof MappedCoverage) {
+            LongBuffer ruleWords = ((MappedCoverage) ruleCoverage).words();
+            for(int i = 0; i < coveredWords.length; i++) {
+                long word = coveredWords[i] & ruleWords.get(i);
+                totalCovered += Long.bitCount(word);
+                targetsCovered += Long.bitCount(word & targetWords[i]);
+            }
+        } else {
+            for(int i = 0; i < coveredWords.length; i++) {
+                long word = coveredWords[i] & ruleCoverage.word(i);
+                totalCovered += Long.bitCount(word);
+                targetsCovered += Long.bitCount(word & targetWords[i]);
+            }
+        }
         return new RuleEvaluation(totalCovered, targetsCovered);
     }
 
@@ -130,22 +286,75 @@ public class BitInstancesView {
      * @return number of targets this includes
      */
     public int targets() {
-        BitSet targetsCopy = (BitSet) targets.clone();
-        targetsCopy.and(covered);
-        return targetsCopy.cardinality();
+        if(covered == null) {
+            return targetRows.length;
+        }
+        return BitVector.andCardinality(targets, covered);
     }
 
     /**
      * @return number of instances this includes
      */
     public int size() {
+        if(covered == null) {
+            return targetRows.length + otherRows.length;
+        }
         return covered.cardinality();
     }
 
+    /**
+     * @return number of instances in the dataset this is a subset of
+     */
+    public int numInstances() {
+        return targets.size();
+    }
+
+    /**
+     * @param index index of an Instance in the dataset
+     * @return whether the Instance is a target
+     */
+    public boolean isTarget(int index) {
+        return targets.get(index);
+    }
+
+    /**
+     * Finds the first Instance this includes at or after an index.
+     *
+     * @param fromIndex index to start searching from
+     * @return index of the Instance, or -1 if there is none
+     */
+    public int nextInstance(int fromIndex) {
+        if(covered != null) {
+            return covered.nextSetBit(fromIndex);
+        }
+        int target = firstAtOrAfter(targetRows, fromIndex);
+        int other = firstAtOrAfter(otherRows, fromIndex);
+        if(target < 0 || other < 0) {
+            return Math.max(target, other);
+        }
+        return Math.min(target, other);
+    }
+
+    /**
+     * @param rows indices in ascending order
+     * @param fromIndex index to search from
+     * @return first element of rows at or after fromIndex, or -1 if there is none
+     */
+    private static int firstAtOrAfter(int[] rows, int fromIndex) {
+        int pos = Arrays.binarySearch(rows, fromIndex);
+        if(pos < 0) {
+            pos = -pos - 1;
+        }
+        return pos < rows.length ? rows[pos] : -1;
+    }
+
     /**
      * @return Deep copy of the this
      */
     public BitInstancesView copy() {
-        return new BitInstancesView(targets, (BitSet) covered.clone());
+        if(covered == null) {
+            return new BitInstancesView(targets, targetRows, otherRows);
+        }
+        return new BitInstancesView(targets, covered.copy());
     }
 }
\ No newline at end of file
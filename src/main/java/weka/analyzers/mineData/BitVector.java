@@ -0,0 +1,380 @@
+package weka.analyzers.mineData;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size set of bits backed by a long[], one bit per Instance of an
+ * indexed dataset. Unlike BitSet the number of bits is fixed at construction
+ * so BitVectors built for the same dataset always have the same number of
+ * words, which allows the bulk operations and the fused counting kernels to
+ * run as single allocation free passes over the words. Used both as the
+ * mutable working sets when mining and as the dense Coverage of rules.
+ */
+public final class BitVector implements Coverage {
+
+    /** Number of bits per word */
+    private static final int WORD_BITS = 64;
+
+    /** The bits, bit i is bit (i % 64) of words[i / 64] */
+    private final long[] words;
+
+    /** Number of bits this holds, bits past this in the last word are always zero */
+    private final int size;
+
+    /**
+     * Constructs a BitVector with all bits cleared.
+     *
+     * @param size number of bits
+     */
+    public BitVector(int size) {
+        this(new long[(size + WORD_BITS - 1) / WORD_BITS], size);
+    }
+
+    /**
+     * Constructs a BitVector around existing words.
+     *
+     * @param words the words, not copied
+     * @param size number of bits
+     */
+    private BitVector(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the words backing this, bits past size() are always zero
+     */
+    long[] words() {
+        return words;
+    }
+
+    @Override
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    public long word(int wordIndex) {
+        return words[wordIndex];
+    }
+
+    /**
+     * Sets a bit.
+     *
+     * @param index index of the bit
+     */
+    public void set(int index) {
+        if(index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " bits");
+        }
+        words[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Clears a bit.
+     *
+     * @param index index of the bit
+     */
+    public void clear(int index) {
+        words[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * Sets the bits from fromIndex (inclusive) to toIndex (exclusive).
+     *
+     * @param fromIndex index of the first bit to set
+     * @param toIndex index after the last bit to set
+     */
+    public void set(int fromIndex, int toIndex) {
+        if(toIndex > size) {
+            throw new IndexOutOfBoundsException("Index " + toIndex + " out of bounds for " + size + " bits");
+        }
+        if(fromIndex >= toIndex) {
+            return;
+        }
+        int startWord = fromIndex >>> 6;
+        int endWord = (toIndex - 1) >>> 6;
+        long firstMask = -1L << fromIndex;
+        long lastMask = -1L >>> -toIndex;
+        if(startWord == endWord) {
+            words[startWord] |= firstMask & lastMask;
+        } else {
+            words[startWord] |= firstMask;
+            for(int i = startWord + 1; i < endWord; i++) {
+                words[i] = -1L;
+            }
+            words[endWord] |= lastMask;
+        }
+    }
+
+    /**
+     * Clears every bit.
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    @Override
+    public int cardinality() {
+        int count = 0;
+        for(long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex >= size) {
+            return -1;
+        }
+        int u = fromIndex >>> 6;
+        long word = words[u] & (-1L << fromIndex);
+        while(true) {
+            if(word != 0) {
+                return u * WORD_BITS + Long.numberOfTrailingZeros(word);
+            }
+            if(++u == words.length) {
+                return -1;
+            }
+            word = words[u];
+        }
+    }
+
+    /**
+     * Sets this to this AND other.
+     *
+     * @param other BitVector of the same size
+     */
+    public void and(BitVector other) {
+        checkSize(other);
+        long[] otherWords = other.words;
+        for(int i = 0; i < words.length; i++) {
+            words[i] &= otherWords[i];
+        }
+    }
+
+    /**
+     * Sets this to this OR other.
+     *
+     * @param other BitVector of the same size
+     */
+    public void or(BitVector other) {
+        checkSize(other);
+        long[] otherWords = other.words;
+        for(int i = 0; i < words.length; i++) {
+            words[i] |= otherWords[i];
+        }
+    }
+
+    /**
+     * Sets this to this AND NOT other.
+     *
+     * @param other BitVector of the same size
+     */
+    public void andNot(BitVector other) {
+        checkSize(other);
+        long[] otherWords = other.words;
+        for(int i = 0; i < words.length; i++) {
+            words[i] &= ~otherWords[i];
+        }
+    }
+
+    /**
+     * Sets this to this AND NOT (a AND b) in a single pass.
+     *
+     * @param a BitVector of the same size
+     * @param b BitVector of the same size
+     */
+    public void andNotAnd(BitVector a, BitVector b) {
+        checkSize(a);
+        checkSize(b);
+        long[] aWords = a.words;
+        long[] bWords = b.words;
+        for(int i = 0; i < words.length; i++) {
+            words[i] &= ~(aWords[i] & bWords[i]);
+        }
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector other) {
+        return andCardinality(this, other);
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector a, BitVector b) {
+        return andCardinality(this, a, b);
+    }
+
+    @Override
+    public int intersectionCardinality(int[] rows) {
+        int count = 0;
+        for(int row : rows) {
+            count += (int) (words[row >>> 6] >>> row) & 1;
+        }
+        return count;
+    }
+
+    @Override
+    public void andInto(BitVector target) {
+        target.and(this);
+    }
+
+    @Override
+    public void andNotInto(BitVector target) {
+        target.andNot(this);
+    }
+
+    @Override
+    public void orInto(BitVector target) {
+        target.or(this);
+    }
+
+    @Override
+    public void andNotAndInto(BitVector target, BitVector other) {
+        target.andNotAnd(this, other);
+    }
+
+    /**
+     * @return a copy of this
+     */
+    public BitVector copy() {
+        return new BitVector(words.clone(), size);
+    }
+
+    /**
+     * Returns a BitVector of the bits in a range of this, shifted to start
+     * at zero.
+     *
+     * @param fromIndex first bit of the range
+     * @param toIndex bit after the last bit of the range
+     * @return BitVector of size toIndex - fromIndex
+     */
+    public BitVector get(int fromIndex, int toIndex) {
+        if(fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex +
+                    ") out of bounds for size " + size);
+        }
+        BitVector result = new BitVector(toIndex - fromIndex);
+        long[] resultWords = result.words;
+        int wordOffset = fromIndex >>> 6;
+        int bitOffset = fromIndex & (WORD_BITS - 1);
+        for(int i = 0; i < resultWords.length; i++) {
+            long word = words[wordOffset + i] >>> bitOffset;
+            if(bitOffset != 0 && wordOffset + i + 1 < words.length) {
+                word |= words[wordOffset + i + 1] << (WORD_BITS - bitOffset);
+            }
+            resultWords[i] = word;
+        }
+        int tailBits = result.size & (WORD_BITS - 1);
+        if(tailBits != 0) {
+            resultWords[resultWords.length - 1] &= (1L << tailBits) - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a BitVector of the Instances a Coverage covers in a range,
+     * shifted to start at zero.
+     *
+     * @param coverage the Coverage
+     * @param fromIndex first Instance of the range
+     * @param toIndex Instance after the last Instance of the range
+     * @return BitVector of size toIndex - fromIndex
+     */
+    public static BitVector slice(Coverage coverage, int fromIndex, int toIndex) {
+        if(coverage instanceof BitVector) {
+            return ((BitVector) coverage).get(fromIndex, toIndex);
+        }
+        int size = coverage.size();
+        if(fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex +
+                    ") out of bounds for size " + size);
+        }
+        // Reads the words of the range straight from the Coverage, so only
+        // the range is ever materialized
+        BitVector result = new BitVector(toIndex - fromIndex);
+        long[] resultWords = result.words;
+        int numWords = (size + WORD_BITS - 1) / WORD_BITS;
+        int wordOffset = fromIndex >>> 6;
+        int bitOffset = fromIndex & (WORD_BITS - 1);
+        long word = resultWords.length == 0 ? 0 : coverage.word(wordOffset);
+        for(int i = 0; i < resultWords.length; i++) {
+            long next = wordOffset + i + 1 < numWords ? coverage.word(wordOffset + i + 1) : 0;
+            resultWords[i] = bitOffset == 0 ? word : (word >>> bitOffset) | (next << (WORD_BITS - bitOffset));
+            word = next;
+        }
+        int tailBits = result.size & (WORD_BITS - 1);
+        if(tailBits != 0) {
+            resultWords[resultWords.length - 1] &= (1L << tailBits) - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the bits set in both a and b without building their intersection.
+     *
+     * @param a BitVector to count
+     * @param b BitVector of the same size
+     * @return number of bits set in both
+     */
+    public static int andCardinality(BitVector a, BitVector b) {
+        a.checkSize(b);
+        long[] aWords = a.words;
+        long[] bWords = b.words;
+        int count = 0;
+        for(int i = 0; i < aWords.length; i++) {
+            count += Long.bitCount(aWords[i] & bWords[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the bits set in each of a, b and c without building their
+     * intersection.
+     *
+     * @param a BitVector to count
+     * @param b BitVector of the same size
+     * @param c BitVector of the same size
+     * @return number of bits set in all three
+     */
+    public static int andCardinality(BitVector a, BitVector b, BitVector c) {
+        a.checkSize(b);
+        a.checkSize(c);
+        long[] aWords = a.words;
+        long[] bWords = b.words;
+        long[] cWords = c.words;
+        int count = 0;
+        for(int i = 0; i < aWords.length; i++) {
+            count += Long.bitCount(aWords[i] & bWords[i] & cWords[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Ensures another BitVector is the same size as this one.
+     *
+     * @param other the other BitVector
+     */
+    private void checkSize(BitVector other) {
+        if(other.size != size) {
+            throw new IllegalArgumentException("BitVector sizes differ: " + size + " and " + other.size);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BitVector && ((BitVector) o).size == size &&
+                Arrays.equals(((BitVector) o).words, words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(words);
+    }
+}
@@ -1,8 +1,6 @@
 package weka.analyzers.mineData;
 
 
-import java.util.BitSet;
-
 /**
  * A Conjunction of other CachedRules.
  *
@@ -16,11 +14,11 @@ public class CachedRuleConjunction<T extends CachedRule> extends CachedRuleSet<T
      * @param numInstances
      */
     public CachedRuleConjunction(int numInstances) {
-        super(numInstances, "AND");
+        super(numInstances, "AND", true);
     }
 
     @Override
-    protected void addBitSet(BitSet other) {
-        covered.and(other);
+    protected void combineInto(Coverage other, BitVector target) {
+        other.andInto(target);
     }
 }
@@ -1,7 +1,5 @@
 package weka.analyzers.mineData;
 
-import java.util.BitSet;
-
 /**
  * The Disjunction of other cached rules.
  *
@@ -10,17 +8,17 @@ import java.util.BitSet;
 public class CachedRuleDisjunction<T extends CachedRule> extends CachedRuleSet<T> {
 
     /**
-     * Construct a new empty RuleDisjunction that covers all Instances.
+     * Construct a new empty RuleDisjunction that covers no Instances.
      *
      * @param numInstances number of instances this RuleSet should cover
      */
     public CachedRuleDisjunction(int numInstances) {
-        super(numInstances, "OR");
+        super(numInstances, "OR", false);
     }
 
     @Override
-    protected void addBitSet(BitSet other) {
-        covered.or(other);
+    protected void combineInto(Coverage other, BitVector target) {
+        other.orInto(target);
     }
 
 }
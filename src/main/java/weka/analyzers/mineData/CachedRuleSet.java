@@ -1,13 +1,14 @@
 package weka.analyzers.mineData;
 
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 /**
- * Abstract Class for rules that are composed of other rules.
+ * Abstract Class for rules that are composed of other rules. Can cache the
+ * coverage of every prefix and suffix of its rules so that what it would
+ * cover with any one rule left out takes a single combining pass.
  *
  * @param <T>  The type of Rule this RuleSet is a combination of
  */
@@ -20,20 +21,49 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
     /** List of Rules this RuleSet is composed of */
     protected final List<T> rules;
 
-    /** BitSet where set bits mark covered instances */
-    protected BitSet covered;
+    /** BitVector where set bits mark covered instances */
+    protected final BitVector covered;
+
+    /** Whether this covers every instance when it has no rules */
+    private final boolean emptyCoversAll;
+
+    /**
+     * Coverage of rules 0 to i for each i, null if it has not been computed
+     * since the rules last changed
+     */
+    private BitVector[] prefixCovered;
+
+    /**
+     * Coverage of rules i to size() - 1 for each i, null if it has not been
+     * computed since the rules last changed
+     */
+    private BitVector[] suffixCovered;
 
     /**
-     * Creates a RuleSet with no rules. Covers all instances.
+     * Creates a RuleSet with no rules.
      *
      * @param numInstances number of instances this RuleSet will apply to
      * @param modifier the String to use to deliminate Rules when printing
+     * @param emptyCoversAll whether the RuleSet covers every instance when
+     *                       it has no rules, or none of them
      */
-    public CachedRuleSet(int numInstances, String modifier) {
+    public CachedRuleSet(int numInstances, String modifier, boolean emptyCoversAll) {
         rules = new ArrayList<T>();
         this.modifier = modifier;
-        covered = new BitSet(numInstances);
-        covered.flip(0, numInstances);
+        this.emptyCoversAll = emptyCoversAll;
+        covered = emptyCovered(numInstances);
+    }
+
+    /**
+     * @param numInstances number of instances
+     * @return a new BitVector of what this covers when it has no rules
+     */
+    private BitVector emptyCovered(int numInstances) {
+        BitVector result = new BitVector(numInstances);
+        if(emptyCoversAll) {
+            result.set(0, numInstances);
+        }
+        return result;
     }
 
     /**
@@ -42,8 +72,9 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
      * @param rule rule to add
      */
     public void add(T rule) {
-        addBitSet(rule.covered());
+        combineInto(rule.covered(), covered);
         rules.add(rule);
+        clearCache();
     }
 
     /**
@@ -53,8 +84,9 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
      * @param rule Rule to add
      */
     public void add(int index, T rule) {
-        addBitSet(rule.covered());
+        combineInto(rule.covered(), covered);
         rules.add(index, rule);
+        clearCache();
     }
 
     /**
@@ -62,6 +94,7 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
      */
     public void reverse() {
         Collections.reverse(rules);
+        clearCache();
     }
 
     /**
@@ -84,19 +117,76 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
     }
 
     /**
-     * Get and Remove the Rule stored at a index.
-     * Requires recalculating what instances this rules
-     * covers from scratch.
+     * Get and Remove the Rule stored at a index. Uses the cached prefix and
+     * suffix coverage to update what this covers, computing them if needed.
      *
      * @param index to remove the rule the From
      * @return the Rule removed
      */
     public T remove(int index) {
+        BitVector remaining = coveredWithout(index);
         T r = rules.remove(index);
-        recalculateCovered();
+        covered.clear();
+        covered.or(remaining);
+        clearCache();
         return r;
     }
 
+    /**
+     * Computes what this would cover without one of its rules. The first
+     * call after the rules change caches the coverage of every prefix and
+     * suffix of the rules, which takes a pass per rule, after that each
+     * call takes a single pass.
+     *
+     * @param index index of the rule to leave out
+     * @return new BitVector of the instances the other rules cover
+     */
+    public BitVector coveredWithout(int index) {
+        if(index < 0 || index >= rules.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rules.size());
+        }
+        if(prefixCovered == null) {
+            buildCache();
+        }
+        BitVector result;
+        if(index > 0) {
+            result = prefixCovered[index - 1].copy();
+        } else {
+            result = emptyCovered(covered.size());
+        }
+        if(index < rules.size() - 1) {
+            combineInto(suffixCovered[index + 1], result);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the coverage of every prefix and suffix of the rules.
+     */
+    private void buildCache() {
+        int n = rules.size();
+        prefixCovered = new BitVector[n];
+        suffixCovered = new BitVector[n];
+        BitVector running = emptyCovered(covered.size());
+        for(int i = 0; i < n; i++) {
+            combineInto(rules.get(i).covered(), running);
+            prefixCovered[i] = running.copy();
+        }
+        running = emptyCovered(covered.size());
+        for(int i = n - 1; i >= 0; i--) {
+            combineInto(rules.get(i).covered(), running);
+            suffixCovered[i] = running.copy();
+        }
+    }
+
+    /**
+     * Drops the cached prefix and suffix coverage.
+     */
+    private void clearCache() {
+        prefixCovered = null;
+        suffixCovered = null;
+    }
+
     /**
      * Swaps two rules in the list.
      *
@@ -107,17 +197,7 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
         T tmp = rules.get(index1);
         rules.set(index1, rules.get(index2));
         rules.set(index2, tmp);
-    }
-
-    /**
-     * Recalculate what this rule covers from scratch.
-     */
-    private void recalculateCovered() {
-        covered.clear();
-        covered.flip(0, covered.size());
-        for(CachedRule r : rules) {
-            addBitSet(r.covered());
-        }
+        clearCache();
     }
 
     /**
@@ -130,7 +210,7 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
     }
 
     @Override
-    public BitSet covered() {
+    public BitVector covered() {
         return covered;
     }
 
@@ -155,10 +235,11 @@ public abstract class CachedRuleSet<T extends CachedRule> implements
     }
 
     /**
-     * Modifies covered so that it accounts for the addition of a new rule
-     * assuming cover reflects what all the rules so far cover.
+     * Modifies a BitVector so that it accounts for the addition of a new rule
+     * assuming it reflects what some rules of this RuleSet cover.
      *
-     * @param other BitSet of what the new rule covers
+     * @param other Coverage of what the new rule covers
+     * @param target BitVector to modify
      */
-    protected abstract void addBitSet(BitSet other);
+    protected abstract void combineInto(Coverage other, BitVector target);
 }
@@ -0,0 +1,293 @@
+package weka.analyzers.mineData;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Read only column major snapshot of the values of an Instances. Nominal
+ * columns are stored as byte or short codes (the index of the value), other
+ * columns as doubles, and each column has a BitVector marking its missing
+ * values. Reading a whole column is a pass over one primitive array rather
+ * than a virtual call and a pointer chase per Instance, so analyzers that scan
+ * columns should build one of these once and share it.
+ */
+public class ColumnarInstances {
+
+    /** The dataset the snapshot was taken of */
+    private final Instances header;
+
+    /** Index in header of each column */
+    private final int[] attIndices;
+
+    /** Number of Instances */
+    private final int numInstances;
+
+    /** Values of columns stored as doubles, null for coded columns */
+    private final double[][] doubles;
+
+    /** Codes of nominal columns with at most Byte.MAX_VALUE values, otherwise null */
+    private final byte[][] bytes;
+
+    /** Codes of nominal columns with more values, otherwise null */
+    private final short[][] shorts;
+
+    /** Missing values of each column, null if the column has none */
+    private final BitVector[] missing;
+
+    /**
+     * Takes a snapshot of an Instances.
+     *
+     * @param data Instances to read the values from
+     */
+    public ColumnarInstances(Instances data) {
+        int numAtts = data.numAttributes();
+        header = data;
+        numInstances = data.numInstances();
+        attIndices = new int[numAtts];
+        doubles = new double[numAtts][];
+        bytes = new byte[numAtts][];
+        shorts = new short[numAtts][];
+        missing = new BitVector[numAtts];
+        for(int j = 0; j < numAtts; j++) {
+            attIndices[j] = j;
+            Attribute att = data.attribute(j);
+            if(att.isNominal() && att.numValues() <= Byte.MAX_VALUE) {
+                bytes[j] = new byte[numInstances];
+            } else if(att.isNominal() && att.numValues() <= Short.MAX_VALUE) {
+                shorts[j] = new short[numInstances];
+            } else {
+                doubles[j] = new double[numInstances];
+            }
+        }
+        // Read row by row so each Instance is only visited once
+        for(int i = 0; i < numInstances; i++) {
+            Instance inst = data.instance(i);
+            for(int j = 0; j < numAtts; j++) {
+                double val = inst.value(j);
+                if(Instance.isMissingValue(val)) {
+                    if(missing[j] == null) {
+                        missing[j] = new BitVector(numInstances);
+                    }
+                    missing[j].set(i);
+                }
+                if(doubles[j] != null) {
+                    doubles[j][i] = val;
+                } else if(Instance.isMissingValue(val)) {
+                    continue;
+                } else if(bytes[j] != null) {
+                    bytes[j][i] = (byte) val;
+                } else {
+                    shorts[j][i] = (short) val;
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs a ColumnarInstances sharing the columns of another one.
+     */
+    private ColumnarInstances(Instances header, int[] attIndices, int numInstances,
+                              double[][] doubles, byte[][] bytes, short[][] shorts,
+                              BitVector[] missing) {
+        this.header = header;
+        this.attIndices = attIndices;
+        this.numInstances = numInstances;
+        this.doubles = doubles;
+        this.bytes = bytes;
+        this.shorts = shorts;
+        this.missing = missing;
+    }
+
+    /**
+     * Returns a ColumnarInstances without one of the columns of this one.
+     * The remaining columns are shared, not copied.
+     *
+     * @param column index of the column to leave out
+     * @return the projection
+     */
+    public ColumnarInstances removeColumn(int column) {
+        int numAtts = numAttributes() - 1;
+        int[] newIndices = new int[numAtts];
+        double[][] newDoubles = new double[numAtts][];
+        byte[][] newBytes = new byte[numAtts][];
+        short[][] newShorts = new short[numAtts][];
+        BitVector[] newMissing = new BitVector[numAtts];
+        for(int j = 0, k = 0; j < numAttributes(); j++) {
+            if(j == column) {
+                continue;
+            }
+            newIndices[k] = attIndices[j];
+            newDoubles[k] = doubles[j];
+            newBytes[k] = bytes[j];
+            newShorts[k] = shorts[j];
+            newMissing[k] = missing[j];
+            k++;
+        }
+        return new ColumnarInstances(header, newIndices, numInstances, newDoubles,
+                newBytes, newShorts, newMissing);
+    }
+
+    /**
+     * @return number of Instances
+     */
+    public int numInstances() {
+        return numInstances;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int numAttributes() {
+        return attIndices.length;
+    }
+
+    /**
+     * @param column index of a column
+     * @return the Attribute of the column
+     */
+    public Attribute attribute(int column) {
+        return header.attribute(attIndices[column]);
+    }
+
+    /**
+     * @param instance index of an Instance
+     * @param column index of a column
+     * @return the value, as Instance.value() would return it
+     */
+    public double value(int instance, int column) {
+        if(doubles[column] != null) {
+            return doubles[column][instance];
+        }
+        if(isMissing(instance, column)) {
+            return Instance.missingValue();
+        }
+        return bytes[column] != null ? bytes[column][instance] : shorts[column][instance];
+    }
+
+    /**
+     * @param instance index of an Instance
+     * @param column index of a column
+     * @return whether the value is missing
+     */
+    public boolean isMissing(int instance, int column) {
+        return missing[column] != null && missing[column].get(instance);
+    }
+
+    /**
+     * @param column index of a column
+     * @return BitVector of the Instances missing a value in the column, or null
+     * if there are none. Must not be modified
+     */
+    public BitVector missing(int column) {
+        return missing[column];
+    }
+
+    /**
+     * @param column index of a column
+     * @return number of Instances missing a value in the column
+     */
+    public int missingCount(int column) {
+        return missing[column] == null ? 0 : missing[column].cardinality();
+    }
+
+    /**
+     * Returns the values of a column with missing values as NaN. For columns
+     * stored as doubles this is the backing array, which must not be modified.
+     *
+     * @param column index of a column
+     * @return the values of the column
+     */
+    public double[] column(int column) {
+        if(doubles[column] != null) {
+            return doubles[column];
+        }
+        double[] values = new double[numInstances];
+        if(bytes[column] != null) {
+            byte[] codes = bytes[column];
+            for(int i = 0; i < numInstances; i++) {
+                values[i] = codes[i];
+            }
+        } else {
+            short[] codes = shorts[column];
+            for(int i = 0; i < numInstances; i++) {
+                values[i] = codes[i];
+            }
+        }
+        if(missing[column] != null) {
+            BitVector miss = missing[column];
+            for(int i = miss.nextSetBit(0); i >= 0; i = miss.nextSetBit(i + 1)) {
+                values[i] = Instance.missingValue();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Counts the number of Instances with each value of a nominal column.
+     *
+     * @param column index of a nominal column
+     * @return count of each value index, not including missing values
+     */
+    public int[] valueCounts(int column) {
+        if(doubles[column] != null) {
+            throw new IllegalArgumentException("Column " + column + " is not nominal");
+        }
+        int[] counts = new int[attribute(column).numValues()];
+        if(bytes[column] != null) {
+            for(byte code : bytes[column]) {
+                counts[code]++;
+            }
+        } else {
+            for(short code : shorts[column]) {
+                counts[code]++;
+            }
+        }
+        // Missing values were stored as code 0
+        counts[0] -= missingCount(column);
+        return counts;
+    }
+
+    /**
+     * Finds the Instances whose value in a column equals a given value.
+     *
+     * @param column index of a column
+     * @param val value to look for
+     * @return BitVector of the Instances with that value
+     */
+    public BitVector matching(int column, double val) {
+        BitVector result = new BitVector(numInstances);
+        if(doubles[column] != null) {
+            double[] values = doubles[column];
+            for(int i = 0; i < numInstances; i++) {
+                if(values[i] == val) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+        int code = (int) val;
+        if(code != val || code < 0 || code >= attribute(column).numValues()) {
+            return result;
+        }
+        if(bytes[column] != null) {
+            byte[] codes = bytes[column];
+            for(int i = 0; i < numInstances; i++) {
+                if(codes[i] == code) {
+                    result.set(i);
+                }
+            }
+        } else {
+            short[] codes = shorts[column];
+            for(int i = 0; i < numInstances; i++) {
+                if(codes[i] == code) {
+                    result.set(i);
+                }
+            }
+        }
+        if(code == 0 && missing[column] != null) {
+            result.andNot(missing[column]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package weka.analyzers.mineData;
+
+/**
+ * Coverage of the Instances in a universe that another Coverage does not
+ * cover, computed on demand from the other Coverage instead of being stored.
+ * Used for rules that are the negation of another rule apart from Instances
+ * neither rule covers, such as SmallerThan and GreaterOrEqual rules on a
+ * numeric attribute with missing values. The other Coverage must be a subset
+ * of the universe. Every operation is a single pass over the words of the
+ * complement, each built from a word of the other Coverage and of the
+ * universe, so nothing is allocated.
+ */
+public final class ComplementCoverage implements Coverage {
+
+    /** Coverage this is the complement of */
+    private final Coverage base;
+
+    /** Instances this can cover, null for every Instance */
+    private final BitVector universe;
+
+    /** Number of Instances covered */
+    private final int cardinality;
+
+    /** Words of base if it is a BitVector, so they are read without a call */
+    private final long[] baseWords;
+
+    /** Words of universe, null for every Instance */
+    private final long[] universeWords;
+
+    /** Number of words */
+    private final int numWords;
+
+    /** Bits of the last word that are Instances */
+    private final long lastWordMask;
+
+    /**
+     * Constructs a ComplementCoverage.
+     *
+     * @param base Coverage to take the complement of, must be a subset of
+     *             universe
+     * @param universe BitVector of the Instances the complement is taken in,
+     *                 or null for every Instance. Is not copied and must not
+     *                 be modified afterwards
+     */
+    public ComplementCoverage(Coverage base, BitVector universe) {
+        if(universe != null && universe.size() != base.size()) {
+            throw new IllegalArgumentException("Coverage sizes differ: " + base.size() +
+                    " and " + universe.size());
+        }
+        this.base = base;
+        this.universe = universe;
+        this.cardinality = (universe == null ? base.size() : universe.cardinality()) -
+                base.cardinality();
+        this.baseWords = base instanceof BitVector ? ((BitVector) base).words() : null;
+        this.universeWords = universe == null ? null : universe.words();
+        this.numWords = (base.size() + 63) / 64;
+        this.lastWordMask = -1L >>> -base.size();
+    }
+
+    /**
+     * @return the Coverage this is the complement of
+     */
+    public Coverage base() {
+        return base;
+    }
+
+    /**
+     * @return the Instances the complement is taken in, null for every Instance
+     */
+    public BitVector universe() {
+        return universe;
+    }
+
+    @Override
+    public int size() {
+        return base.size();
+    }
+
+    @Override
+    public boolean get(int index) {
+        return (universe == null || universe.get(index)) && !base.get(index);
+    }
+
+    @Override
+    public long word(int wordIndex) {
+        long inUniverse;
+        if(universeWords != null) {
+            inUniverse = universeWords[wordIndex];
+        } else {
+            inUniverse = wordIndex == numWords - 1 ? lastWordMask : -1L;
+        }
+        return inUniverse & ~(baseWords != null ? baseWords[wordIndex] : base.word(wordIndex));
+    }
+
+    @Override
+    public int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        fromIndex = Math.max(fromIndex, 0);
+        if(fromIndex >= size()) {
+            return -1;
+        }
+        int u = fromIndex >>> 6;
+        long word = word(u) & (-1L << fromIndex);
+        while(true) {
+            if(word != 0) {
+                return u * 64 + Long.numberOfTrailingZeros(word);
+            }
+            if(++u == numWords) {
+                return -1;
+            }
+            word = word(u);
+        }
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector other) {
+        checkSize(other);
+        long[] otherWords = other.words();
+        int count = 0;
+        for(int i = 0; i < numWords; i++) {
+            count += Long.bitCount(word(i) & otherWords[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector a, BitVector b) {
+        checkSize(a);
+        checkSize(b);
+        long[] aWords = a.words();
+        long[] bWords = b.words();
+        int count = 0;
+        for(int i = 0; i < numWords; i++) {
+            count += Long.bitCount(word(i) & aWords[i] & bWords[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(int[] rows) {
+        int inUniverse = universe == null ? rows.length : universe.intersectionCardinality(rows);
+        return inUniverse - base.intersectionCardinality(rows);
+    }
+
+    @Override
+    public void andInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= word(i);
+        }
+    }
+
+    @Override
+    public void andNotInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= ~word(i);
+        }
+    }
+
+    @Override
+    public void orInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] |= word(i);
+        }
+    }
+
+    @Override
+    public void andNotAndInto(BitVector target, BitVector other) {
+        checkSize(target);
+        checkSize(other);
+        long[] targetWords = target.words();
+        long[] otherWords = other.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= ~(word(i) & otherWords[i]);
+        }
+    }
+
+    /**
+     * Ensures a BitVector is the same size as this.
+     *
+     * @param other the BitVector
+     */
+    private void checkSize(BitVector other) {
+        if(other.size() != size()) {
+            throw new IllegalArgumentException("Coverage sizes differ: " + size() + " and " + other.size());
+        }
+    }
+}
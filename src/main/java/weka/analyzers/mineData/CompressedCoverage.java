@@ -0,0 +1,755 @@
+package weka.analyzers.mineData;
+
+import java.util.Arrays;
+
+/**
+ * Compressed, immutable Coverage in the style of a Roaring bitmap. The dataset
+ * is divided into chunks of 65536 Instances and each chunk that covers any
+ * Instances is stored in whichever container is smallest: a sorted array of
+ * the covered offsets, a bitmap, or a list of runs of covered offsets. Sparse
+ * rules and rules made of long runs, such as threshold rules on sorted data,
+ * then take space and time proportional to what they cover rather than to
+ * the size of the dataset.
+ */
+public final class CompressedCoverage implements Coverage {
+
+    /** Number of bits used to address an Instance within a chunk */
+    private static final int CHUNK_BITS = 16;
+
+    /** Number of Instances per chunk */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /** Number of BitVector words per chunk */
+    private static final int CHUNK_WORDS = CHUNK_SIZE / 64;
+
+    /** Rough per container overhead in bytes, used when picking representations */
+    private static final int CONTAINER_OVERHEAD = 16;
+
+    /**
+     * Set of the covered offsets within a single chunk. Methods are passed the
+     * index of the chunk's first Instance, base, and operate on the bits of
+     * full BitVector word arrays in the range [base, base + CHUNK_SIZE).
+     */
+    private abstract static class Container {
+
+        /** @return number of covered offsets */
+        abstract int cardinality();
+
+        /** @return approximate memory used in bytes */
+        abstract int sizeInBytes();
+
+        /**
+         * @param offset offset within the chunk
+         * @return whether offset is covered
+         */
+        abstract boolean contains(int offset);
+
+        /**
+         * @param offset offset within the chunk to start at
+         * @return first covered offset at or after offset, or -1 if there is none
+         */
+        abstract int next(int offset);
+
+        /**
+         * @param offset offset within the chunk, a multiple of 64
+         * @return the 64 bits starting at offset, bit i being offset + i
+         */
+        abstract long word(int offset);
+
+        /** @return number of bits set in a that this covers */
+        abstract int andCardinality(long[] a, int base);
+
+        /** @return number of bits set in both a and b that this covers */
+        abstract int andCardinality(long[] a, long[] b, int base);
+
+        /** Clears the bits in this chunk of target that this does not cover */
+        abstract void andInto(long[] target, int base);
+
+        /** Clears the bits in target that this covers */
+        abstract void andNotInto(long[] target, int base);
+
+        /** Sets the bits in target that this covers */
+        abstract void orInto(long[] target, int base);
+
+        /** Clears the bits in target that this covers and are set in other */
+        abstract void andNotAndInto(long[] target, long[] other, int base);
+    }
+
+    /** Container that stores the covered offsets as a sorted array */
+    private static final class ArrayContainer extends Container {
+
+        /** Sorted covered offsets */
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return CONTAINER_OVERHEAD + 2 * values.length;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            return Arrays.binarySearch(values, (char) offset) >= 0;
+        }
+
+        @Override
+        int next(int offset) {
+            int i = Arrays.binarySearch(values, (char) offset);
+            if(i < 0) {
+                i = -i - 1;
+            }
+            return i < values.length ? values[i] : -1;
+        }
+
+        @Override
+        long word(int offset) {
+            int i = Arrays.binarySearch(values, (char) offset);
+            if(i < 0) {
+                i = -i - 1;
+            }
+            long word = 0;
+            for(; i < values.length && values[i] < offset + 64; i++) {
+                word |= 1L << values[i];
+            }
+            return word;
+        }
+
+        @Override
+        int andCardinality(long[] a, int base) {
+            int count = 0;
+            for(char v : values) {
+                int index = base + v;
+                count += (int) ((a[index >>> 6] >>> index) & 1L);
+            }
+            return count;
+        }
+
+        @Override
+        int andCardinality(long[] a, long[] b, int base) {
+            int count = 0;
+            for(char v : values) {
+                int index = base + v;
+                count += (int) (((a[index >>> 6] & b[index >>> 6]) >>> index) & 1L);
+            }
+            return count;
+        }
+
+        @Override
+        void andInto(long[] target, int base) {
+            int prev = base;
+            for(char v : values) {
+                clearRange(target, prev, base + v);
+                prev = base + v + 1;
+            }
+            clearRange(target, prev, base + CHUNK_SIZE);
+        }
+
+        @Override
+        void andNotInto(long[] target, int base) {
+            for(char v : values) {
+                int index = base + v;
+                target[index >>> 6] &= ~(1L << index);
+            }
+        }
+
+        @Override
+        void orInto(long[] target, int base) {
+            for(char v : values) {
+                int index = base + v;
+                target[index >>> 6] |= 1L << index;
+            }
+        }
+
+        @Override
+        void andNotAndInto(long[] target, long[] other, int base) {
+            for(char v : values) {
+                int index = base + v;
+                target[index >>> 6] &= ~(other[index >>> 6] & (1L << index));
+            }
+        }
+    }
+
+    /** Container that stores the covered offsets as a bitmap */
+    private static final class BitmapContainer extends Container {
+
+        /** Bitmap of the covered offsets */
+        private final long[] words;
+
+        /** Number of covered offsets */
+        private final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return CONTAINER_OVERHEAD + 8 * CHUNK_WORDS;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            return (words[offset >>> 6] & (1L << offset)) != 0;
+        }
+
+        @Override
+        int next(int offset) {
+            int u = offset >>> 6;
+            long word = words[u] & (-1L << offset);
+            while(true) {
+                if(word != 0) {
+                    return u * 64 + Long.numberOfTrailingZeros(word);
+                }
+                if(++u == words.length) {
+                    return -1;
+                }
+                word = words[u];
+            }
+        }
+
+        @Override
+        long word(int offset) {
+            return words[offset >>> 6];
+        }
+
+        @Override
+        int andCardinality(long[] a, int base) {
+            int wordBase = base >>> 6;
+            int end = Math.min(CHUNK_WORDS, a.length - wordBase);
+            int count = 0;
+            for(int i = 0; i < end; i++) {
+                count += Long.bitCount(words[i] & a[wordBase + i]);
+            }
+            return count;
+        }
+
+        @Override
+        int andCardinality(long[] a, long[] b, int base) {
+            int wordBase = base >>> 6;
+            int end = Math.min(CHUNK_WORDS, a.length - wordBase);
+            int count = 0;
+            for(int i = 0; i < end; i++) {
+                count += Long.bitCount(words[i] & a[wordBase + i] & b[wordBase + i]);
+            }
+            return count;
+        }
+
+        @Override
+        void andInto(long[] target, int base) {
+            int wordBase = base >>> 6;
+            int end = Math.min(CHUNK_WORDS, target.length - wordBase);
+            for(int i = 0; i < end; i++) {
+                target[wordBase + i] &= words[i];
+            }
+        }
+
+        @Override
+        void andNotInto(long[] target, int base) {
+            int wordBase = base >>> 6;
+            int end = Math.min(CHUNK_WORDS, target.length - wordBase);
+            for(int i = 0; i < end; i++) {
+                target[wordBase + i] &= ~words[i];
+            }
+        }
+
+        @Override
+        void orInto(long[] target, int base) {
+            int wordBase = base >>> 6;
+            int end = Math.min(CHUNK_WORDS, target.length - wordBase);
+            for(int i = 0; i < end; i++) {
+                target[wordBase + i] |= words[i];
+            }
+        }
+
+        @Override
+        void andNotAndInto(long[] target, long[] other, int base) {
+            int wordBase = base >>> 6;
+            int end = Math.min(CHUNK_WORDS, target.length - wordBase);
+            for(int i = 0; i < end; i++) {
+                target[wordBase + i] &= ~(words[i] & other[wordBase + i]);
+            }
+        }
+    }
+
+    /** Container that stores the covered offsets as runs of consecutive offsets */
+    private static final class RunContainer extends Container {
+
+        /** Offset each run starts at, sorted */
+        private final char[] starts;
+
+        /** Length of each run minus one */
+        private final char[] lengths;
+
+        /** Number of covered offsets */
+        private final int cardinality;
+
+        RunContainer(char[] starts, char[] lengths, int cardinality) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.cardinality = cardinality;
+        }
+
+        /** @return offset after the end of run i */
+        private int end(int i) {
+            return starts[i] + lengths[i] + 1;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return CONTAINER_OVERHEAD + 4 * starts.length;
+        }
+
+        @Override
+        boolean contains(int offset) {
+            int i = Arrays.binarySearch(starts, (char) offset);
+            if(i >= 0) {
+                return true;
+            }
+            i = -i - 2; // Run starting before offset
+            return i >= 0 && offset < end(i);
+        }
+
+        @Override
+        int next(int offset) {
+            int i = Arrays.binarySearch(starts, (char) offset);
+            if(i >= 0) {
+                return offset;
+            }
+            i = -i - 2;
+            if(i >= 0 && offset < end(i)) {
+                return offset;
+            }
+            return i + 1 < starts.length ? starts[i + 1] : -1;
+        }
+
+        @Override
+        long word(int offset) {
+            int i = Arrays.binarySearch(starts, (char) offset);
+            if(i < 0) {
+                // Start from the run starting before offset, it may reach into the word
+                i = Math.max(-i - 2, 0);
+            }
+            long word = 0;
+            for(; i < starts.length && starts[i] < offset + 64; i++) {
+                int from = Math.max(starts[i], offset) - offset;
+                int to = Math.min(end(i), offset + 64) - offset;
+                if(from < to) {
+                    word |= (-1L << from) & (-1L >>> (64 - to));
+                }
+            }
+            return word;
+        }
+
+        @Override
+        int andCardinality(long[] a, int base) {
+            int count = 0;
+            for(int i = 0; i < starts.length; i++) {
+                count += countRange(a, base + starts[i], base + end(i));
+            }
+            return count;
+        }
+
+        @Override
+        int andCardinality(long[] a, long[] b, int base) {
+            int count = 0;
+            for(int i = 0; i < starts.length; i++) {
+                count += countRange(a, b, base + starts[i], base + end(i));
+            }
+            return count;
+        }
+
+        @Override
+        void andInto(long[] target, int base) {
+            int prev = base;
+            for(int i = 0; i < starts.length; i++) {
+                clearRange(target, prev, base + starts[i]);
+                prev = base + end(i);
+            }
+            clearRange(target, prev, base + CHUNK_SIZE);
+        }
+
+        @Override
+        void andNotInto(long[] target, int base) {
+            for(int i = 0; i < starts.length; i++) {
+                clearRange(target, base + starts[i], base + end(i));
+            }
+        }
+
+        @Override
+        void orInto(long[] target, int base) {
+            for(int i = 0; i < starts.length; i++) {
+                setRange(target, base + starts[i], base + end(i));
+            }
+        }
+
+        @Override
+        void andNotAndInto(long[] target, long[] other, int base) {
+            for(int i = 0; i < starts.length; i++) {
+                andNotRange(target, other, base + starts[i], base + end(i));
+            }
+        }
+    }
+
+    /** Number of Instances in the dataset this was built for */
+    private final int size;
+
+    /** Number of covered Instances */
+    private final int cardinality;
+
+    /** Container for each chunk, null if the chunk covers nothing */
+    private final Container[] containers;
+
+    private CompressedCoverage(int size, int cardinality, Container[] containers) {
+        this.size = size;
+        this.cardinality = cardinality;
+        this.containers = containers;
+    }
+
+    /**
+     * Builds a CompressedCoverage covering the bits set in a BitVector.
+     *
+     * @param bits the BitVector to compress, not modified
+     * @return the CompressedCoverage
+     */
+    public static CompressedCoverage of(BitVector bits) {
+        long[] words = bits.words();
+        int numChunks = (words.length + CHUNK_WORDS - 1) / CHUNK_WORDS;
+        Container[] containers = new Container[numChunks];
+        int total = 0;
+        for(int c = 0; c < numChunks; c++) {
+            int wordStart = c * CHUNK_WORDS;
+            int wordEnd = Math.min(wordStart + CHUNK_WORDS, words.length);
+            int card = 0;
+            int runs = 0;
+            long prev = 0;
+            for(int w = wordStart; w < wordEnd; w++) {
+                long word = words[w];
+                card += Long.bitCount(word);
+                // A run starts at every set bit whose predecessor is clear
+                runs += Long.bitCount(word & ~((word << 1) | (prev >>> 63)));
+                prev = word;
+            }
+            total += card;
+            if(card == 0) {
+                continue;
+            }
+            int base = c * CHUNK_SIZE;
+            int arrayBytes = 2 * card;
+            int runBytes = 4 * runs;
+            int bitmapBytes = 8 * CHUNK_WORDS;
+            if(runBytes <= arrayBytes && runBytes <= bitmapBytes) {
+                char[] starts = new char[runs];
+                char[] lengths = new char[runs];
+                int r = 0;
+                int i = bits.nextSetBit(base);
+                while(i >= 0 && i < base + CHUNK_SIZE) {
+                    int end = i + 1;
+                    while(end < base + CHUNK_SIZE && end < bits.size() && bits.get(end)) {
+                        end++;
+                    }
+                    starts[r] = (char) (i - base);
+                    lengths[r] = (char) (end - i - 1);
+                    r++;
+                    i = bits.nextSetBit(end);
+                }
+                containers[c] = new RunContainer(starts, lengths, card);
+            } else if(arrayBytes <= bitmapBytes) {
+                char[] values = new char[card];
+                int v = 0;
+                for(int i = bits.nextSetBit(base); i >= 0 && i < base + CHUNK_SIZE;
+                    i = bits.nextSetBit(i + 1)) {
+                    values[v++] = (char) (i - base);
+                }
+                containers[c] = new ArrayContainer(values);
+            } else {
+                containers[c] = new BitmapContainer(
+                        Arrays.copyOfRange(words, wordStart, wordStart + CHUNK_WORDS), card);
+            }
+        }
+        return new CompressedCoverage(bits.size(), total, containers);
+    }
+
+    /**
+     * Picks the smaller of a BitVector and its compressed form.
+     *
+     * @param bits the BitVector
+     * @return a CompressedCoverage of bits if it uses less memory, otherwise bits
+     */
+    public static Coverage compact(BitVector bits) {
+        CompressedCoverage compressed = of(bits);
+        return compressed.sizeInBytes() < 8L * bits.words().length ? compressed : bits;
+    }
+
+    /**
+     * @return approximate memory used by the containers in bytes
+     */
+    public long sizeInBytes() {
+        long bytes = 8L * containers.length;
+        for(Container container : containers) {
+            if(container != null) {
+                bytes += container.sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Ensures a BitVector is the same size as this.
+     *
+     * @param other the BitVector
+     */
+    private void checkSize(BitVector other) {
+        if(other.size() != size) {
+            throw new IllegalArgumentException("Coverage sizes differ: " + size + " and " + other.size());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean get(int index) {
+        Container container = containers[index >>> CHUNK_BITS];
+        return container != null && container.contains(index & (CHUNK_SIZE - 1));
+    }
+
+    @Override
+    public long word(int wordIndex) {
+        Container container = containers[wordIndex / CHUNK_WORDS];
+        return container == null ? 0 : container.word((wordIndex % CHUNK_WORDS) * 64);
+    }
+
+    @Override
+    public int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex >= size) {
+            return -1;
+        }
+        for(int c = fromIndex >>> CHUNK_BITS; c < containers.length; c++) {
+            if(containers[c] != null) {
+                int start = c == fromIndex >>> CHUNK_BITS ? fromIndex & (CHUNK_SIZE - 1) : 0;
+                int next = containers[c].next(start);
+                if(next >= 0) {
+                    return c * CHUNK_SIZE + next;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector other) {
+        checkSize(other);
+        long[] words = other.words();
+        int count = 0;
+        for(int c = 0; c < containers.length; c++) {
+            if(containers[c] != null) {
+                count += containers[c].andCardinality(words, c * CHUNK_SIZE);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(int[] rows) {
+        int count = 0;
+        int i = 0;
+        while(i < rows.length) {
+            // Rows are sorted so each chunk's rows are contiguous
+            int c = rows[i] >>> CHUNK_BITS;
+            int end = i;
+            while(end < rows.length && rows[end] >>> CHUNK_BITS == c) {
+                end++;
+            }
+            Container container = containers[c];
+            if(container != null) {
+                for(; i < end; i++) {
+                    if(container.contains(rows[i] & (CHUNK_SIZE - 1))) {
+                        count++;
+                    }
+                }
+            }
+            i = end;
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector a, BitVector b) {
+        checkSize(a);
+        checkSize(b);
+        long[] aWords = a.words();
+        long[] bWords = b.words();
+        int count = 0;
+        for(int c = 0; c < containers.length; c++) {
+            if(containers[c] != null) {
+                count += containers[c].andCardinality(aWords, bWords, c * CHUNK_SIZE);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void andInto(BitVector target) {
+        checkSize(target);
+        long[] words = target.words();
+        for(int c = 0; c < containers.length; c++) {
+            if(containers[c] != null) {
+                containers[c].andInto(words, c * CHUNK_SIZE);
+            } else {
+                clearRange(words, c * CHUNK_SIZE, (c + 1) * CHUNK_SIZE);
+            }
+        }
+    }
+
+    @Override
+    public void andNotInto(BitVector target) {
+        checkSize(target);
+        long[] words = target.words();
+        for(int c = 0; c < containers.length; c++) {
+            if(containers[c] != null) {
+                containers[c].andNotInto(words, c * CHUNK_SIZE);
+            }
+        }
+    }
+
+    @Override
+    public void orInto(BitVector target) {
+        checkSize(target);
+        long[] words = target.words();
+        for(int c = 0; c < containers.length; c++) {
+            if(containers[c] != null) {
+                containers[c].orInto(words, c * CHUNK_SIZE);
+            }
+        }
+    }
+
+    @Override
+    public void andNotAndInto(BitVector target, BitVector other) {
+        checkSize(target);
+        checkSize(other);
+        long[] words = target.words();
+        long[] otherWords = other.words();
+        for(int c = 0; c < containers.length; c++) {
+            if(containers[c] != null) {
+                containers[c].andNotAndInto(words, otherWords, c * CHUNK_SIZE);
+            }
+        }
+    }
+
+    /*
+     * Word level operations over ranges of bits [from, to) of word arrays
+     */
+
+    /** @return number of bits set in a in the range */
+    private static int countRange(long[] a, int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if(first == last) {
+            return Long.bitCount(a[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(a[first] & firstMask);
+        for(int i = first + 1; i < last; i++) {
+            count += Long.bitCount(a[i]);
+        }
+        return count + Long.bitCount(a[last] & lastMask);
+    }
+
+    /** @return number of bits set in both a and b in the range */
+    private static int countRange(long[] a, long[] b, int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if(first == last) {
+            return Long.bitCount(a[first] & b[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(a[first] & b[first] & firstMask);
+        for(int i = first + 1; i < last; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count + Long.bitCount(a[last] & b[last] & lastMask);
+    }
+
+    /** Sets the bits of target in the range */
+    private static void setRange(long[] target, int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if(first == last) {
+            target[first] |= firstMask & lastMask;
+            return;
+        }
+        target[first] |= firstMask;
+        for(int i = first + 1; i < last; i++) {
+            target[i] = -1L;
+        }
+        target[last] |= lastMask;
+    }
+
+    /** Clears the bits of target in the range, parts of the range past the end of target are ignored */
+    private static void clearRange(long[] target, int from, int to) {
+        to = (int) Math.min(to, 64L * target.length);
+        if(from >= to) {
+            return;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if(first == last) {
+            target[first] &= ~(firstMask & lastMask);
+            return;
+        }
+        target[first] &= ~firstMask;
+        for(int i = first + 1; i < last; i++) {
+            target[i] = 0L;
+        }
+        target[last] &= ~lastMask;
+    }
+
+    /** Clears the bits of target in the range that are set in other */
+    private static void andNotRange(long[] target, long[] other, int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if(first == last) {
+            target[first] &= ~(other[first] & firstMask & lastMask);
+            return;
+        }
+        target[first] &= ~(other[first] & firstMask);
+        for(int i = first + 1; i < last; i++) {
+            target[i] &= ~other[i];
+        }
+        target[last] &= ~(other[last] & lastMask);
+    }
+}
@@ -0,0 +1,101 @@
+package weka.analyzers.mineData;
+
+/**
+ * Read only set of the Instances of an indexed dataset a CachedRule covers.
+ * Implementations can pick whatever representation suits how many Instances
+ * they cover, operations that combine a Coverage with the BitVectors used as
+ * working sets while mining are done by the Coverage so they can run in
+ * time proportional to the size of its representation.
+ */
+public interface Coverage {
+
+    /**
+     * @return number of Instances in the dataset this was built for
+     */
+    public int size();
+
+    /**
+     * @param index index of an Instance
+     * @return whether the Instance is covered
+     */
+    public boolean get(int index);
+
+    /**
+     * @return number of Instances covered
+     */
+    public int cardinality();
+
+    /**
+     * Returns the coverage of 64 consecutive Instances laid out as in a
+     * BitVector, bit i of word u being Instance 64 * u + i. Lets Coverages
+     * be combined a word at a time without building a BitVector.
+     *
+     * @param wordIndex index of the word
+     * @return the word, bits past size() are zero
+     */
+    public long word(int wordIndex);
+
+    /**
+     * Finds the first covered Instance at or after an index.
+     *
+     * @param fromIndex index to start searching from
+     * @return index of the next covered Instance, or -1 if there is none
+     */
+    public int nextSetBit(int fromIndex);
+
+    /**
+     * Counts the Instances that are both covered and set in a BitVector.
+     *
+     * @param other BitVector of the same size
+     * @return size of the intersection
+     */
+    public int intersectionCardinality(BitVector other);
+
+    /**
+     * Counts the Instances that are covered and set in two BitVectors.
+     *
+     * @param a BitVector of the same size
+     * @param b BitVector of the same size
+     * @return size of the intersection of all three
+     */
+    public int intersectionCardinality(BitVector a, BitVector b);
+
+    /**
+     * Counts the Instances in a sorted array of Instance indices that are
+     * covered, in time proportional to the length of the array.
+     *
+     * @param rows indices of Instances in ascending order
+     * @return number of those Instances that are covered
+     */
+    public int intersectionCardinality(int[] rows);
+
+    /**
+     * Clears the bits of a BitVector for Instances that are not covered.
+     *
+     * @param target BitVector of the same size to modify
+     */
+    public void andInto(BitVector target);
+
+    /**
+     * Clears the bits of a BitVector for Instances that are covered.
+     *
+     * @param target BitVector of the same size to modify
+     */
+    public void andNotInto(BitVector target);
+
+    /**
+     * Sets the bits of a BitVector for Instances that are covered.
+     *
+     * @param target BitVector of the same size to modify
+     */
+    public void orInto(BitVector target);
+
+    /**
+     * Clears the bits of a BitVector for Instances that are both covered
+     * and set in another BitVector, target = target AND NOT (this AND other).
+     *
+     * @param target BitVector of the same size to modify
+     * @param other BitVector of the same size
+     */
+    public void andNotAndInto(BitVector target, BitVector other);
+}
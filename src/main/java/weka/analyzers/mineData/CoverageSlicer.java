@@ -0,0 +1,138 @@
+package weka.analyzers.mineData;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Restricts Coverages and CachedRules to a contiguous range of Instances,
+ * such as the training or validation part of a dataset, with the first
+ * Instance of the range at index 0. Keeps each Coverage in the cheapest form
+ * it has: a part of a SplitCoverage split at the range is returned as is, a
+ * ComplementCoverage stays a complement of the sliced base, and other
+ * Coverages are copied and compressed or stored in a MappedRuleCatalog like
+ * the originals. Slices are remembered by identity, so rules sharing a
+ * Coverage or a universe share their slices too.
+ */
+public class CoverageSlicer {
+
+    /** First Instance of the range */
+    private final int fromIndex;
+
+    /** Instance after the last Instance of the range */
+    private final int toIndex;
+
+    /** Whether to compress copied slices when that takes less memory */
+    private final boolean compress;
+
+    /** Catalog to store dense copied slices in, null to keep them on the heap */
+    private final MappedRuleCatalog catalog;
+
+    /** Slices of the Coverages seen since the last clear */
+    private final Map<Coverage, Coverage> slices = new IdentityHashMap<Coverage, Coverage>();
+
+    /**
+     * Constructs a CoverageSlicer.
+     *
+     * @param fromIndex first Instance of the range
+     * @param toIndex Instance after the last Instance of the range
+     * @param compress whether to store copied slices as CompressedCoverages
+     *                 when that takes less memory
+     * @param catalog MappedRuleCatalog for toIndex - fromIndex Instances to
+     *                store dense copied slices in, or null to keep them on
+     *                the heap
+     */
+    public CoverageSlicer(int fromIndex, int toIndex, boolean compress, MappedRuleCatalog catalog) {
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.compress = compress;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Restricts a rule to the range.
+     *
+     * @param rule the rule
+     * @return rule with the same description and RulePredicate covering the
+     * Instances of the range rule covers
+     * @throws IOException if the catalog could not be written
+     */
+    public CachedRule slice(CachedRule rule) throws IOException {
+        RulePredicate predicate = rule instanceof BasicCachedRule ?
+                ((BasicCachedRule) rule).predicate() : null;
+        return new BasicCachedRule(slice(rule.covered()), rule.toString(), predicate);
+    }
+
+    /**
+     * Restricts a Coverage to the range.
+     *
+     * @param coverage the Coverage
+     * @return Coverage of size toIndex - fromIndex with bit i set iff
+     * coverage has bit fromIndex + i set
+     * @throws IOException if the catalog could not be written
+     */
+    public synchronized Coverage slice(Coverage coverage) throws IOException {
+        Coverage slice = slices.get(coverage);
+        if(slice == null) {
+            slice = computeSlice(coverage);
+            slices.put(coverage, slice);
+        }
+        return slice;
+    }
+
+    /**
+     * Forgets the slices seen so far, so they can be garbage collected once
+     * the caller no longer needs them.
+     */
+    public synchronized void clear() {
+        slices.clear();
+    }
+
+    /**
+     * @param coverage the Coverage
+     * @return coverage restricted to the range
+     * @throws IOException if the catalog could not be written
+     */
+    private Coverage computeSlice(Coverage coverage) throws IOException {
+        if(coverage instanceof SplitCoverage) {
+            SplitCoverage split = (SplitCoverage) coverage;
+            if(fromIndex == 0 && toIndex == split.split()) {
+                return split.head();
+            }
+            if(fromIndex == split.split() && toIndex == split.size()) {
+                return split.tail();
+            }
+        } else if(coverage instanceof ComplementCoverage) {
+            ComplementCoverage complement = (ComplementCoverage) coverage;
+            return new ComplementCoverage(slice(complement.base()), sliceUniverse(complement.universe()));
+        }
+        if(fromIndex == 0 && toIndex == coverage.size() && !(coverage instanceof BitVector)) {
+            // Already compressed or mapped
+            return coverage;
+        }
+        Coverage slice = BitVector.slice(coverage, fromIndex, toIndex);
+        if(compress || coverage instanceof CompressedCoverage) {
+            slice = CompressedCoverage.compact((BitVector) slice);
+        }
+        return catalog == null || !(slice instanceof BitVector) ? slice : catalog.add(slice);
+    }
+
+    /**
+     * Restricts the universe of a ComplementCoverage to the range, which
+     * unlike other slices is always kept as a BitVector on the heap.
+     *
+     * @param universe the universe, or null for every Instance
+     * @return the universe restricted to the range, or null
+     */
+    private BitVector sliceUniverse(BitVector universe) {
+        if(universe == null) {
+            return null;
+        }
+        Coverage slice = slices.get(universe);
+        if(!(slice instanceof BitVector)) {
+            slice = BitVector.slice(universe, fromIndex, toIndex);
+            slices.put(universe, slice);
+        }
+        return (BitVector) slice;
+    }
+}
@@ -0,0 +1,332 @@
+package weka.analyzers.mineData;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of how many Instances and targets conjunctions of rules cover
+ * in a BitInstancesView. Conjunctions are keyed by the ids of their rules in
+ * ascending order, so a conjunction is found whatever order its rules were
+ * added in. Once the estimated memory used by the entries passes a limit the
+ * least recently used entries are evicted. Entries are only valid for the
+ * view they were computed in, so when targets are removed from the view
+ * removeTargets() or clear() must be called. Safe for use by multiple
+ * threads: the entries are split by hash into segments that each have their
+ * own lock, share of the memory limit and least recently used order, so
+ * threads scoring candidates in parallel rarely wait on each other.
+ */
+public class IntersectionCache {
+
+    /** Estimated bytes used by an entry apart from the ids of its key */
+    private static final int ENTRY_OVERHEAD = 112;
+
+    /** Number of segments, a power of two */
+    private static final int SEGMENTS = 16;
+
+    /** The segments, an entry is in the segment picked by its hash */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Constructs an IntersectionCache.
+     *
+     * @param maxBytes most bytes the entries may use
+     */
+    public IntersectionCache(long maxBytes) {
+        for(int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
+    }
+
+    /**
+     * Returns the ids of a conjunction extended with one more rule.
+     *
+     * @param ids ids of the conjunction in ascending order, not modified
+     * @param id id of the rule to add
+     * @return new array of the ids in ascending order
+     */
+    public static int[] extend(int[] ids, int id) {
+        int[] result = new int[ids.length + 1];
+        int pos = 0;
+        while(pos < ids.length && ids[pos] < id) {
+            result[pos] = ids[pos];
+            pos++;
+        }
+        result[pos] = id;
+        System.arraycopy(ids, pos, result, pos + 1, ids.length - pos);
+        return result;
+    }
+
+    /**
+     * @param ids ids of a conjunction in ascending order
+     * @return the cached evaluation of the conjunction, or null if there is none
+     */
+    public BitInstancesView.RuleEvaluation get(int[] ids) {
+        Key key = new Key(ids);
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Caches the evaluation of a conjunction, evicting the least recently
+     * used entries of its segment if the segment is full.
+     *
+     * @param ids ids of the conjunction in ascending order, must not be
+     *            modified afterwards
+     * @param eval evaluation of the conjunction in the current view
+     */
+    public void put(int[] ids, BitInstancesView.RuleEvaluation eval) {
+        Key key = new Key(ids);
+        segmentFor(key).put(key, eval);
+    }
+
+    /**
+     * Returns the evaluation of a conjunction made of a rule added to a
+     * conjunction covering the Instances of a view, from the cache if it is
+     * there and otherwise by evaluating the rule in the view and caching the
+     * result. The evaluation is done without holding a lock.
+     *
+     * @param ids ids of the extended conjunction in ascending order, must
+     *            not be modified afterwards
+     * @param view BitInstancesView of what the conjunction without rule covers
+     * @param rule the rule added
+     * @return the evaluation of the extended conjunction
+     */
+    public BitInstancesView.RuleEvaluation evaluate(int[] ids, BitInstancesView view,
+                                                    CachedRule rule) {
+        Key key = new Key(ids);
+        Segment segment = segmentFor(key);
+        BitInstancesView.RuleEvaluation eval = segment.get(key);
+        if(eval == null) {
+            eval = view.evaluateRule(rule);
+            segment.put(key, eval);
+        }
+        return eval;
+    }
+
+    /**
+     * Updates the entries for targets being removed from the view. Entries
+     * that would take more than maxChecks rule lookups to update are dropped
+     * instead, as evaluating them again is cheaper.
+     *
+     * @param rules the rules, indexed by id
+     * @param removedRows indices of the removed targets
+     * @param maxChecks most rule lookups to spend on updating one entry
+     */
+    public void removeTargets(CachedRule[] rules, int[] removedRows, long maxChecks) {
+        if(removedRows.length == 0) {
+            return;
+        }
+        for(Segment segment : segments) {
+            segment.removeTargets(rules, removedRows, maxChecks);
+        }
+    }
+
+    /**
+     * Removes every entry, keeping the counters.
+     */
+    public void clear() {
+        for(Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return number of lookups that found an entry
+     */
+    public long hits() {
+        long hits = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that did not find an entry
+     */
+    public long misses() {
+        long misses = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * @return number of entries evicted to stay under the memory limit
+     */
+    public long evictions() {
+        long evictions = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        int size = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated bytes used by the entries
+     */
+    public long bytes() {
+        long bytes = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "IntersectionCache: " + size() + " entries, " + bytes() + " bytes, " +
+                hits() + " hits, " + misses() + " misses, " + evictions() + " evictions";
+    }
+
+    /**
+     * @param key a key
+     * @return the segment the key belongs in
+     */
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * @param ids ids of a key
+     * @return estimated bytes used by an entry with that key
+     */
+    private static long entryBytes(int[] ids) {
+        return ENTRY_OVERHEAD + 4L * ids.length;
+    }
+
+    /**
+     * Part of the entries with its own lock and memory limit.
+     */
+    private static final class Segment {
+
+        /** Most bytes the entries may use */
+        private final long maxBytes;
+
+        /** Entries in least recently used first order */
+        final LinkedHashMap<Key, BitInstancesView.RuleEvaluation> entries =
+                new LinkedHashMap<Key, BitInstancesView.RuleEvaluation>(16, 0.75f, true);
+
+        /** Estimated bytes used by the entries */
+        long bytes;
+
+        /** Number of lookups that found an entry */
+        long hits;
+
+        /** Number of lookups that did not find an entry */
+        long misses;
+
+        /** Number of entries evicted to stay under maxBytes */
+        long evictions;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized BitInstancesView.RuleEvaluation get(Key key) {
+            BitInstancesView.RuleEvaluation eval = entries.get(key);
+            if(eval == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return eval;
+        }
+
+        synchronized void put(Key key, BitInstancesView.RuleEvaluation eval) {
+            if(entries.put(key, eval) == null) {
+                bytes += entryBytes(key.ids);
+            }
+            Iterator<Key> keys = entries.keySet().iterator();
+            while(bytes > maxBytes && keys.hasNext()) {
+                bytes -= entryBytes(keys.next().ids);
+                keys.remove();
+                evictions++;
+            }
+        }
+
+        synchronized void removeTargets(CachedRule[] rules, int[] removedRows, long maxChecks) {
+            Iterator<Map.Entry<Key, BitInstancesView.RuleEvaluation>> it = entries.entrySet().iterator();
+            while(it.hasNext()) {
+                Map.Entry<Key, BitInstancesView.RuleEvaluation> entry = it.next();
+                int[] ids = entry.getKey().ids;
+                if((long) ids.length * removedRows.length > maxChecks) {
+                    bytes -= entryBytes(ids);
+                    it.remove();
+                    continue;
+                }
+                int removed = 0;
+                rows:
+                for(int row : removedRows) {
+                    for(int id : ids) {
+                        if(!rules[id].covered().get(row)) {
+                            continue rows;
+                        }
+                    }
+                    removed++;
+                }
+                if(removed != 0) {
+                    BitInstancesView.RuleEvaluation eval = entry.getValue();
+                    entry.setValue(new BitInstancesView.RuleEvaluation(eval.covered - removed,
+                            eval.targetsCovered - removed));
+                }
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Wraps the ids of a conjunction so they can be used as a key.
+     */
+    private static final class Key {
+
+        /** Ids in ascending order */
+        final int[] ids;
+
+        /** Hash of ids */
+        final int hash;
+
+        Key(int[] ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(ids, ((Key) other).ids);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package weka.analyzers.mineData;
+
+import java.nio.LongBuffer;
+
+/**
+ * Dense Coverage whose words live in a LongBuffer, usually a slice of a
+ * memory mapped MappedRuleCatalog, rather than on the heap. The layout is
+ * the same as a BitVector so the operations are the same single passes over
+ * the words, reading them through the buffer. Read only.
+ */
+public final class MappedCoverage implements Coverage {
+
+    /** Number of bits per word */
+    private static final int WORD_BITS = 64;
+
+    /** The bits, bit i is bit (i % 64) of words.get(i / 64) */
+    private final LongBuffer words;
+
+    /** Number of words */
+    private final int numWords;
+
+    /** Number of Instances in the dataset */
+    private final int size;
+
+    /** Number of Instances covered */
+    private final int cardinality;
+
+    /**
+     * Constructs a MappedCoverage.
+     *
+     * @param words buffer holding exactly the words of a BitVector of size
+     *              bits, read by absolute index
+     * @param size number of Instances in the dataset
+     * @param cardinality number of bits set in words
+     */
+    public MappedCoverage(LongBuffer words, int size, int cardinality) {
+        if(words.capacity() != (size + WORD_BITS - 1) / WORD_BITS) {
+            throw new IllegalArgumentException("Buffer of " + words.capacity() +
+                    " words can not hold " + size + " bits");
+        }
+        this.words = words;
+        this.numWords = words.capacity();
+        this.size = size;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @return the buffer holding the words, read by absolute index
+     */
+    LongBuffer words() {
+        return words;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    @Override
+    public long word(int wordIndex) {
+        return words.get(wordIndex);
+    }
+
+    @Override
+    public int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex >= size) {
+            return -1;
+        }
+        int u = fromIndex >>> 6;
+        long word = words.get(u) & (-1L << fromIndex);
+        while(true) {
+            if(word != 0) {
+                return u * WORD_BITS + Long.numberOfTrailingZeros(word);
+            }
+            if(++u == numWords) {
+                return -1;
+            }
+            word = words.get(u);
+        }
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector other) {
+        checkSize(other);
+        long[] otherWords = other.words();
+        int count = 0;
+        for(int i = 0; i < numWords; i++) {
+            count += Long.bitCount(words.get(i) & otherWords[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector a, BitVector b) {
+        checkSize(a);
+        checkSize(b);
+        long[] aWords = a.words();
+        long[] bWords = b.words();
+        int count = 0;
+        for(int i = 0; i < numWords; i++) {
+            count += Long.bitCount(words.get(i) & aWords[i] & bWords[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(int[] rows) {
+        int count = 0;
+        for(int row : rows) {
+            count += (int) (words.get(row >>> 6) >>> row) & 1;
+        }
+        return count;
+    }
+
+    @Override
+    public void andInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= words.get(i);
+        }
+    }
+
+    @Override
+    public void andNotInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= ~words.get(i);
+        }
+    }
+
+    @Override
+    public void orInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] |= words.get(i);
+        }
+    }
+
+    @Override
+    public void andNotAndInto(BitVector target, BitVector other) {
+        checkSize(target);
+        checkSize(other);
+        long[] targetWords = target.words();
+        long[] otherWords = other.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= ~(words.get(i) & otherWords[i]);
+        }
+    }
+
+    /**
+     * Ensures a BitVector is the same size as this.
+     *
+     * @param other the BitVector
+     */
+    private void checkSize(BitVector other) {
+        if(other.size() != size) {
+            throw new IllegalArgumentException("Coverage sizes differ: " + size + " and " + other.size());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package weka.analyzers.mineData;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stores the coverage of CachedRules in a memory mapped temporary file
+ * instead of on the heap, so rule sets larger than the heap can be mined
+ * with the operating system paging coverage in and out as needed. Every
+ * rule takes a fixed stride of words, one bit per Instance, and rules are
+ * laid out in the order they are added. Searches that go through the rules
+ * in that order, as the beam search does, therefore read the file
+ * sequentially. The file is mapped in segments of many rules each.
+ */
+public class MappedRuleCatalog implements Closeable {
+
+    /** Most bytes to map at once */
+    private static final long SEGMENT_BYTES = 1L << 28;
+
+    /** The backing file */
+    private final File file;
+
+    /** Open handle to the file */
+    private final RandomAccessFile raf;
+
+    /** Number of Instances the rules cover */
+    private final int numInstances;
+
+    /** Number of words each rule takes */
+    private final int strideWords;
+
+    /** Number of rules in a segment */
+    private final int segmentRules;
+
+    /** Segment currently being filled, null if there is none */
+    private LongBuffer segment;
+
+    /** Number of rules in the current segment */
+    private int inSegment;
+
+    /** Number of rules added */
+    private int numRules;
+
+    /**
+     * Constructs an empty MappedRuleCatalog backed by a new temporary file.
+     *
+     * @param dir directory to create the file in
+     * @param numInstances number of Instances the rules will cover
+     * @throws IOException if the file could not be created
+     */
+    public MappedRuleCatalog(File dir, int numInstances) throws IOException {
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        this.numInstances = numInstances;
+        this.strideWords = (numInstances + 63) / 64;
+        long strideBytes = 8L * strideWords;
+        this.segmentRules = strideBytes == 0 ? Integer.MAX_VALUE :
+                (int) Math.max(1, SEGMENT_BYTES / strideBytes);
+        file = File.createTempFile("rules", ".bin", dir);
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Copies the coverage of a rule into the catalog. The returned rule has
+     * the same description and RulePredicate and reads its coverage from
+     * the file.
+     *
+     * @param rule rule to copy, covering numInstances Instances
+     * @return the rule backed by the catalog
+     * @throws IOException if the file could not be extended
+     */
+    public CachedRule add(CachedRule rule) throws IOException {
+        RulePredicate predicate = rule instanceof BasicCachedRule ?
+                ((BasicCachedRule) rule).predicate() : null;
+        return new BasicCachedRule(add(rule.covered()), rule.toString(), predicate);
+    }
+
+    /**
+     * Copies a Coverage into the catalog.
+     *
+     * @param coverage Coverage of numInstances Instances to copy
+     * @return Coverage of the same Instances read from the file
+     * @throws IOException if the file could not be extended
+     */
+    public synchronized Coverage add(Coverage coverage) throws IOException {
+        if(coverage.size() != numInstances) {
+            throw new IllegalArgumentException("Coverage covers " + coverage.size() +
+                    " Instances, expected " + numInstances);
+        }
+        if(strideWords == 0) {
+            return coverage;
+        }
+        if(segment == null || inSegment == segmentRules) {
+            long offset = 8L * strideWords * numRules;
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    offset, 8L * strideWords * segmentRules);
+            segment = mapped.order(ByteOrder.nativeOrder()).asLongBuffer();
+            inSegment = 0;
+        }
+        LongBuffer words = segment.duplicate();
+        words.position(inSegment * strideWords);
+        words.limit((inSegment + 1) * strideWords);
+        words = words.slice();
+        if(coverage instanceof BitVector) {
+            words.put(((BitVector) coverage).words());
+        } else {
+            // Copied word by word, so no dense copy is made on the heap
+            for(int i = 0; i < strideWords; i++) {
+                words.put(i, coverage.word(i));
+            }
+        }
+        inSegment++;
+        numRules++;
+        return new MappedCoverage(words, numInstances, coverage.cardinality());
+    }
+
+    /**
+     * @return number of rules added
+     */
+    public synchronized int size() {
+        return numRules;
+    }
+
+    /**
+     * @return bytes of coverage stored in the file
+     */
+    public synchronized long sizeInBytes() {
+        return 8L * strideWords * numRules;
+    }
+
+    /**
+     * Closes and deletes the backing file. Rules already returned stay
+     * readable for as long as they are referenced, as the mapping outlives
+     * the file handle.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        segment = null;
+        raf.close();
+        // Fails on platforms that do not allow deleting mapped files, in
+        // which case deleteOnExit cleans up
+        file.delete();
+    }
+}
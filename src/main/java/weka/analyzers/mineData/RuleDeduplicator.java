@@ -0,0 +1,132 @@
+package weka.analyzers.mineData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes CachedRules that cover exactly the same Instances as an earlier
+ * rule. Each rule's coverage is fingerprinted with a 64 bit hash and rules
+ * whose fingerprints match are compared exactly. The first rule of each group
+ * is kept as its representative and the others are remembered as aliases of
+ * it so they can still be reported. Rules with the same coverage always get
+ * the same score, so an alias is never better than its representative.
+ * Removing the aliases can still change what a bounded search finds: the
+ * beam slots and queue entries aliases used to take are freed for other
+ * conjunctions, which may then be kept and extended instead.
+ */
+public class RuleDeduplicator {
+
+    /** Representatives, keyed by the fingerprint of their coverage */
+    private final Map<Long, List<CachedRule>> representatives =
+            new HashMap<Long, List<CachedRule>>();
+
+    /** Rules that were removed, keyed by their representative */
+    private final Map<CachedRule, List<CachedRule>> aliases =
+            new IdentityHashMap<CachedRule, List<CachedRule>>();
+
+    /**
+     * Removes rules whose coverage equals the coverage of an earlier rule,
+     * either in rules or in a previous call to this method.
+     *
+     * @param rules rules to deduplicate
+     * @return the rules with distinct coverage, in their original order
+     */
+    public List<CachedRule> deduplicate(Collection<CachedRule> rules) {
+        List<CachedRule> distinct = new ArrayList<CachedRule>();
+        for(CachedRule rule : rules) {
+            BitVector bits = toBitVector(rule.covered());
+            Long fingerprint = fingerprint(bits);
+            List<CachedRule> candidates = representatives.get(fingerprint);
+            if(candidates == null) {
+                candidates = new ArrayList<CachedRule>(1);
+                representatives.put(fingerprint, candidates);
+            }
+            CachedRule representative = null;
+            for(CachedRule candidate : candidates) {
+                if(sameCoverage(candidate.covered(), bits)) {
+                    representative = candidate;
+                    break;
+                }
+            }
+            if(representative == null) {
+                candidates.add(rule);
+                distinct.add(rule);
+            } else {
+                List<CachedRule> ruleAliases = aliases.get(representative);
+                if(ruleAliases == null) {
+                    ruleAliases = new ArrayList<CachedRule>();
+                    aliases.put(representative, ruleAliases);
+                }
+                ruleAliases.add(rule);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * @param representative a rule that was kept
+     * @return rules that were removed because they cover the same Instances
+     * as representative, in the order they were seen
+     */
+    public List<CachedRule> aliases(CachedRule representative) {
+        List<CachedRule> ruleAliases = aliases.get(representative);
+        return ruleAliases == null ? Collections.<CachedRule>emptyList() :
+                Collections.unmodifiableList(ruleAliases);
+    }
+
+    /**
+     * @return number of rules that have been removed
+     */
+    public int numRemoved() {
+        int count = 0;
+        for(List<CachedRule> ruleAliases : aliases.values()) {
+            count += ruleAliases.size();
+        }
+        return count;
+    }
+
+    /**
+     * @param coverage a Coverage
+     * @return coverage if it is a BitVector, otherwise a BitVector with the
+     * same bits set
+     */
+    private static BitVector toBitVector(Coverage coverage) {
+        if(coverage instanceof BitVector) {
+            return (BitVector) coverage;
+        }
+        BitVector bits = new BitVector(coverage.size());
+        coverage.orInto(bits);
+        return bits;
+    }
+
+    /**
+     * @param coverage Coverage of a representative
+     * @param bits BitVector to compare it to
+     * @return whether they cover the same Instances
+     */
+    private static boolean sameCoverage(Coverage coverage, BitVector bits) {
+        return coverage.size() == bits.size() &&
+                coverage.cardinality() == bits.cardinality() &&
+                coverage.intersectionCardinality(bits) == bits.cardinality();
+    }
+
+    /**
+     * Hashes the words of a BitVector into 64 bits.
+     *
+     * @param bits the BitVector
+     * @return the fingerprint
+     */
+    private static long fingerprint(BitVector bits) {
+        long h = bits.size();
+        for(long word : bits.words()) {
+            h = (h ^ word) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,119 @@
+package weka.analyzers.mineData;
+
+/**
+ * Test a BasicCachedRule applies to the value of a single attribute, kept so
+ * the rule can be evaluated on Instances other than the ones its Coverage
+ * was built from. Comparisons follow Java's semantics for doubles, so a
+ * missing value (NaN) fails every test except "!=", just as it does when the
+ * rules' Coverage is built.
+ */
+public final class RulePredicate {
+
+    /** Operator codes, in the order of OPERATORS */
+    public static final byte EQUALS = 0;
+    public static final byte NOT_EQUALS = 1;
+    public static final byte SMALLER_THAN = 2;
+    public static final byte SMALLER_OR_EQUAL = 3;
+    public static final byte GREATER_THAN = 4;
+    public static final byte GREATER_OR_EQUAL = 5;
+
+    /** String form of each operator code */
+    private static final String[] OPERATORS = {"==", "!=", "<", "<=", ">", ">="};
+
+    /** Index of the attribute tested */
+    private final int attIndex;
+
+    /** Operator code */
+    private final byte operator;
+
+    /** Value compared against */
+    private final double value;
+
+    /**
+     * Constructs a RulePredicate.
+     *
+     * @param attIndex index of the attribute to test
+     * @param operator String form of the operator, as used in rule descriptions
+     * @param value value to compare against, the index of the value for
+     *              nominal attributes
+     */
+    public RulePredicate(int attIndex, String operator, double value) {
+        this.attIndex = attIndex;
+        this.operator = operatorCode(operator);
+        this.value = value;
+    }
+
+    /**
+     * @param operator String form of an operator
+     * @return the operator's code
+     */
+    public static byte operatorCode(String operator) {
+        for(byte i = 0; i < OPERATORS.length; i++) {
+            if(OPERATORS[i].equals(operator)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operator " + operator);
+    }
+
+    /**
+     * Applies an operator.
+     *
+     * @param operator operator code
+     * @param x value of the attribute
+     * @param value value compared against
+     * @return whether x operator value holds
+     */
+    public static boolean test(byte operator, double x, double value) {
+        switch(operator) {
+            case EQUALS:
+                return x == value;
+            case NOT_EQUALS:
+                return x != value;
+            case SMALLER_THAN:
+                return x < value;
+            case SMALLER_OR_EQUAL:
+                return x <= value;
+            case GREATER_THAN:
+                return x > value;
+            case GREATER_OR_EQUAL:
+                return x >= value;
+            default:
+                throw new IllegalArgumentException("Unknown operator code " + operator);
+        }
+    }
+
+    /**
+     * @param x value of the attribute
+     * @return whether the predicate holds for x
+     */
+    public boolean test(double x) {
+        return test(operator, x, value);
+    }
+
+    /**
+     * @return index of the attribute tested
+     */
+    public int attIndex() {
+        return attIndex;
+    }
+
+    /**
+     * @return operator code
+     */
+    public byte operator() {
+        return operator;
+    }
+
+    /**
+     * @return value compared against
+     */
+    public double value() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "att" + attIndex + " " + OPERATORS[operator] + " " + value;
+    }
+}
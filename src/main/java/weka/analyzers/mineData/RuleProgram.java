@@ -0,0 +1,190 @@
+package weka.analyzers.mineData;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of rule conjunctions compiled into a flat program of attribute
+ * tests, so the rules can be applied to Instances other than the ones they
+ * were mined from without building any Coverage. The tests of conjunction r
+ * are entries ruleStart[r] to ruleStart[r + 1] of the parallel attribute,
+ * operator and value arrays, and a conjunction holds iff all of its tests
+ * do. Attribute indices refer to the data the rules were generated from,
+ * Instances the program is applied to must have the same attributes in the
+ * same order.
+ */
+public class RuleProgram {
+
+    /** Index of the first test of each conjunction, plus the total number of tests */
+    private final int[] ruleStart;
+
+    /** Attribute index of each test */
+    private final int[] attributes;
+
+    /** Operator code of each test */
+    private final byte[] operators;
+
+    /** Value of each test */
+    private final double[] values;
+
+    /**
+     * Compiles rule conjunctions into a RuleProgram. Clauses must be
+     * BasicCachedRules with a RulePredicate or nested conjunctions of them.
+     *
+     * @param rules the conjunctions, such as a mined CachedRuleDisjunction
+     * @throws IllegalArgumentException if a clause has no RulePredicate
+     */
+    public RuleProgram(Iterable<? extends CachedRuleConjunction<? extends CachedRule>> rules) {
+        List<RulePredicate> tests = new ArrayList<RulePredicate>();
+        List<Integer> starts = new ArrayList<Integer>();
+        for(CachedRuleConjunction<? extends CachedRule> rule : rules) {
+            starts.add(tests.size());
+            addTests(rule, tests);
+        }
+        ruleStart = new int[starts.size() + 1];
+        for(int r = 0; r < starts.size(); r++) {
+            ruleStart[r] = starts.get(r);
+        }
+        ruleStart[starts.size()] = tests.size();
+        attributes = new int[tests.size()];
+        operators = new byte[tests.size()];
+        values = new double[tests.size()];
+        for(int p = 0; p < tests.size(); p++) {
+            attributes[p] = tests.get(p).attIndex();
+            operators[p] = tests.get(p).operator();
+            values[p] = tests.get(p).value();
+        }
+    }
+
+    /**
+     * Adds the tests of a clause to a list.
+     *
+     * @param clause the clause
+     * @param tests list to add to
+     */
+    private static void addTests(CachedRule clause, List<RulePredicate> tests) {
+        if(clause instanceof CachedRuleConjunction) {
+            for(CachedRule inner : (CachedRuleConjunction<?>) clause) {
+                addTests(inner, tests);
+            }
+        } else if(clause instanceof BasicCachedRule &&
+                ((BasicCachedRule) clause).predicate() != null) {
+            tests.add(((BasicCachedRule) clause).predicate());
+        } else {
+            throw new IllegalArgumentException("Rule " + clause + " can not be compiled");
+        }
+    }
+
+    /**
+     * @return number of conjunctions
+     */
+    public int numRules() {
+        return ruleStart.length - 1;
+    }
+
+    /**
+     * Tests whether a conjunction holds for a row of attribute values.
+     *
+     * @param rule index of the conjunction
+     * @param row values of the attributes, as returned by Instance.toDoubleArray()
+     * @return whether every test of the conjunction holds
+     */
+    public boolean matches(int rule, double[] row) {
+        for(int p = ruleStart[rule]; p < ruleStart[rule + 1]; p++) {
+            if(!RulePredicate.test(operators[p], row[attributes[p]], values[p])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first conjunction that holds for a row of attribute values.
+     *
+     * @param row values of the attributes
+     * @return index of the conjunction, or -1 if none hold
+     */
+    public int firstMatch(double[] row) {
+        for(int r = 0; r < numRules(); r++) {
+            if(matches(r, row)) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tests whether a conjunction holds for an Instance.
+     *
+     * @param rule index of the conjunction
+     * @param instance the Instance
+     * @return whether every test of the conjunction holds
+     */
+    public boolean matches(int rule, Instance instance) {
+        for(int p = ruleStart[rule]; p < ruleStart[rule + 1]; p++) {
+            if(!RulePredicate.test(operators[p], instance.value(attributes[p]), values[p])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies every conjunction to every Instance of a dataset, one row at
+     * a time. Only the attribute values the tests refer to are read, and
+     * nothing but the results is allocated.
+     *
+     * @param data Instances with the attributes the rules were generated from
+     * @return BitVector of the Instances each conjunction holds for
+     */
+    public BitVector[] evaluate(Instances data) {
+        int n = data.numInstances();
+        BitVector[] result = new BitVector[numRules()];
+        for(int r = 0; r < result.length; r++) {
+            result[r] = new BitVector(n);
+        }
+        for(int i = 0; i < n; i++) {
+            Instance instance = data.instance(i);
+            for(int r = 0; r < result.length; r++) {
+                if(matches(r, instance)) {
+                    result[r].set(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies every conjunction to every Instance of a ColumnarInstances,
+     * one test at a time. Each test only reads the values of the Instances
+     * the earlier tests of its conjunction held for, straight from the
+     * snapshot, so no column is decoded.
+     *
+     * @param data ColumnarInstances with the attributes the rules were
+     *             generated from
+     * @return BitVector of the Instances each conjunction holds for
+     */
+    public BitVector[] evaluate(ColumnarInstances data) {
+        int n = data.numInstances();
+        BitVector[] result = new BitVector[numRules()];
+        for(int r = 0; r < result.length; r++) {
+            BitVector holds = new BitVector(n);
+            holds.set(0, n);
+            for(int p = ruleStart[r]; p < ruleStart[r + 1]; p++) {
+                int attribute = attributes[p];
+                byte operator = operators[p];
+                double value = values[p];
+                for(int i = holds.nextSetBit(0); i >= 0; i = holds.nextSetBit(i + 1)) {
+                    if(!RulePredicate.test(operator, data.value(i, attribute), value)) {
+                        holds.clear(i);
+                    }
+                }
+            }
+            result[r] = holds;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,205 @@
+package weka.analyzers.mineData;
+
+/**
+ * Coverage of a dataset split in two at an index, stored as a Coverage of
+ * the head [0, split) and a Coverage of the tail [split, size) each indexed
+ * from zero. Lets a rule be searched on one part and validated on the other
+ * without keeping a copy of its coverage for the whole dataset: the parts
+ * are used directly and this joins them back when the whole is needed.
+ */
+public final class SplitCoverage implements Coverage {
+
+    /** Instances before the split */
+    private final Coverage head;
+
+    /** Instances from the split on, index 0 being Instance split */
+    private final Coverage tail;
+
+    /** Index of the first Instance of the tail */
+    private final int split;
+
+    /** Number of words of the whole */
+    private final int numWords;
+
+    /** Number of words of the tail */
+    private final int tailWords;
+
+    /**
+     * Constructs a SplitCoverage.
+     *
+     * @param head Coverage of the Instances before the split
+     * @param tail Coverage of the Instances from the split on
+     */
+    public SplitCoverage(Coverage head, Coverage tail) {
+        this.head = head;
+        this.tail = tail;
+        this.split = head.size();
+        this.numWords = (head.size() + tail.size() + 63) / 64;
+        this.tailWords = (tail.size() + 63) / 64;
+    }
+
+    /**
+     * @return Coverage of the Instances before the split
+     */
+    public Coverage head() {
+        return head;
+    }
+
+    /**
+     * @return Coverage of the Instances from the split on
+     */
+    public Coverage tail() {
+        return tail;
+    }
+
+    /**
+     * @return index of the first Instance of the tail
+     */
+    public int split() {
+        return split;
+    }
+
+    @Override
+    public int size() {
+        return split + tail.size();
+    }
+
+    @Override
+    public boolean get(int index) {
+        return index < split ? head.get(index) : tail.get(index - split);
+    }
+
+    @Override
+    public long word(int wordIndex) {
+        int start = wordIndex << 6;
+        if(start + 64 <= split) {
+            return head.word(wordIndex);
+        }
+        if(start >= split) {
+            return tailWord(start - split);
+        }
+        // The word holds the end of the head and the start of the tail
+        int headBits = split - start;
+        return (head.word(wordIndex) & ((1L << headBits) - 1)) | (tailWord(0) << headBits);
+    }
+
+    /**
+     * @param from index in the tail
+     * @return the 64 bits of the tail starting at from, zero past its end
+     */
+    private long tailWord(int from) {
+        int u = from >>> 6;
+        if(u >= tailWords) {
+            return 0;
+        }
+        int shift = from & 63;
+        long word = tail.word(u) >>> shift;
+        if(shift != 0 && u + 1 < tailWords) {
+            word |= tail.word(u + 1) << (64 - shift);
+        }
+        return word;
+    }
+
+    @Override
+    public int cardinality() {
+        return head.cardinality() + tail.cardinality();
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        fromIndex = Math.max(fromIndex, 0);
+        if(fromIndex < split) {
+            int next = head.nextSetBit(fromIndex);
+            if(next >= 0) {
+                return next;
+            }
+            fromIndex = split;
+        }
+        int next = tail.nextSetBit(fromIndex - split);
+        return next < 0 ? -1 : next + split;
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector other) {
+        checkSize(other);
+        long[] otherWords = other.words();
+        int count = 0;
+        for(int i = 0; i < numWords; i++) {
+            count += Long.bitCount(word(i) & otherWords[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(BitVector a, BitVector b) {
+        checkSize(a);
+        checkSize(b);
+        long[] aWords = a.words();
+        long[] bWords = b.words();
+        int count = 0;
+        for(int i = 0; i < numWords; i++) {
+            count += Long.bitCount(word(i) & aWords[i] & bWords[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int intersectionCardinality(int[] rows) {
+        int count = 0;
+        for(int row : rows) {
+            if(get(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void andInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= word(i);
+        }
+    }
+
+    @Override
+    public void andNotInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= ~word(i);
+        }
+    }
+
+    @Override
+    public void orInto(BitVector target) {
+        checkSize(target);
+        long[] targetWords = target.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] |= word(i);
+        }
+    }
+
+    @Override
+    public void andNotAndInto(BitVector target, BitVector other) {
+        checkSize(target);
+        checkSize(other);
+        long[] targetWords = target.words();
+        long[] otherWords = other.words();
+        for(int i = 0; i < numWords; i++) {
+            targetWords[i] &= ~(word(i) & otherWords[i]);
+        }
+    }
+
+    /**
+     * Ensures a BitVector is the same size as this.
+     *
+     * @param other the BitVector
+     */
+    private void checkSize(BitVector other) {
+        if(other.size() != size()) {
+            throw new IllegalArgumentException("Coverage sizes differ: " + size() + " and " + other.size());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package weka.analyzers.mineData;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds GreaterOrEqual and SmallerThan rules for many thresholds of a
+ * numeric attribute. The column is read and sorted once, then the coverage
+ * of the GreaterOrEqual rule of every threshold is built in a single sweep
+ * down the sorted values, each threshold taking a snapshot of the Instances
+ * swept so far. SmallerThan rules are the ComplementCoverage of the matching
+ * GreaterOrEqual rule within the Instances that have a value, so only one
+ * bitmap is stored per threshold.
+ */
+public class ThresholdRuleFactory {
+
+    /** Attribute the rules are built for */
+    private final Attribute att;
+
+    /** Value of att for every Instance */
+    private final double[] values;
+
+    /** Indices of the Instances in ascending order of value, missing values last */
+    private final int[] order;
+
+    /** Instances with a value for att, null if no values are missing */
+    private final BitVector known;
+
+    /** Coverage shared by rules that can not cover anything */
+    private final BitVector empty;
+
+    /** Coverage of the GreaterOrEqual rule of each threshold added */
+    private final Map<Double, Coverage> greaterOrEqual = new HashMap<Double, Coverage>();
+
+    /** Whether build() has been called */
+    private boolean built;
+
+    /**
+     * Constructs a ThresholdRuleFactory, reading and sorting the values of
+     * an attribute.
+     *
+     * @param data Instances the rules will apply to
+     * @param att numeric Attribute to build rules for
+     */
+    public ThresholdRuleFactory(Instances data, Attribute att) {
+        this(data.attributeToDoubleArray(att.index()), att);
+    }
+
+    /**
+     * Constructs a ThresholdRuleFactory from a column of a ColumnarInstances.
+     *
+     * @param data ColumnarInstances the rules will apply to, att must be
+     *             column att.index() of it
+     * @param att numeric Attribute to build rules for
+     */
+    public ThresholdRuleFactory(ColumnarInstances data, Attribute att) {
+        this(data.column(att.index()), att);
+    }
+
+    /**
+     * Constructs a ThresholdRuleFactory from the values of an attribute.
+     *
+     * @param values value of att for every Instance, is not modified
+     * @param att numeric Attribute to build rules for
+     */
+    private ThresholdRuleFactory(double[] values, Attribute att) {
+        this.att = att;
+        this.values = values;
+        order = Utils.sort(values);
+        empty = new BitVector(values.length);
+        BitVector known = new BitVector(values.length);
+        known.set(0, values.length);
+        boolean missing = false;
+        for(int i = 0; i < values.length; i++) {
+            if(Instance.isMissingValue(values[i])) {
+                known.clear(i);
+                missing = true;
+            }
+        }
+        this.known = missing ? known : null;
+    }
+
+    /**
+     * @return number of Instances the rules apply to
+     */
+    public int numInstances() {
+        return values.length;
+    }
+
+    /**
+     * @param rank position in the sorted order
+     * @return index of the Instance at that position
+     */
+    public int sortedIndex(int rank) {
+        return order[rank];
+    }
+
+    /**
+     * @param rank position in the sorted order
+     * @return value of the Instance at that position
+     */
+    public double sortedValue(int rank) {
+        return values[order[rank]];
+    }
+
+    /**
+     * Registers a threshold rules will be requested for. Must be called
+     * before build().
+     *
+     * @param threshold the threshold
+     */
+    public void addThreshold(double threshold) {
+        if(built) {
+            throw new IllegalStateException("Thresholds can not be added after build()");
+        }
+        greaterOrEqual.put(threshold, empty);
+    }
+
+    /**
+     * Builds the coverage of every registered threshold in one sweep from
+     * the largest value to the smallest.
+     *
+     * @param compress whether to store the coverage as a CompressedCoverage
+     *                 when that takes less memory
+     */
+    public void build(boolean compress) {
+        double[] thresholds = new double[greaterOrEqual.size()];
+        int numThresholds = 0;
+        for(double threshold : greaterOrEqual.keySet()) {
+            // Nothing is >= or < NaN, those rules keep the empty coverage
+            if(!Double.isNaN(threshold)) {
+                thresholds[numThresholds++] = threshold;
+            }
+        }
+        Arrays.sort(thresholds, 0, numThresholds);
+        BitVector swept = new BitVector(values.length);
+        int pos = order.length;
+        for(int t = numThresholds - 1; t >= 0; t--) {
+            double threshold = thresholds[t];
+            // Missing values sort last and are skipped without being set
+            while(pos > 0 && !(values[order[pos - 1]] < threshold)) {
+                int index = order[--pos];
+                if(!Instance.isMissingValue(values[index])) {
+                    swept.set(index);
+                }
+            }
+            BitVector snapshot = swept.copy();
+            greaterOrEqual.put(threshold, compress ? CompressedCoverage.compact(snapshot) : snapshot);
+        }
+        built = true;
+    }
+
+    /**
+     * Returns a CachedRule that covers an Instance iff its value is greater
+     * than or equal to a threshold.
+     *
+     * @param threshold a threshold registered before build() was called
+     * @return the rule
+     */
+    public BasicCachedRule greaterOrEqualRule(double threshold) {
+        return new BasicCachedRule(coverage(threshold), threshold, ">=", att);
+    }
+
+    /**
+     * Returns a CachedRule that covers an Instance iff its value is smaller
+     * than a threshold. Shares its coverage with the GreaterOrEqual rule of
+     * the same threshold.
+     *
+     * @param threshold a threshold registered before build() was called
+     * @return the rule
+     */
+    public BasicCachedRule smallerThanRule(double threshold) {
+        Coverage covered = Double.isNaN(threshold) ? empty :
+                new ComplementCoverage(coverage(threshold), known);
+        return new BasicCachedRule(covered, threshold, "<", att);
+    }
+
+    /**
+     * @param threshold a registered threshold
+     * @return coverage of the GreaterOrEqual rule of the threshold
+     */
+    private Coverage coverage(double threshold) {
+        Coverage covered = greaterOrEqual.get(threshold);
+        if(!built || covered == null) {
+            throw new IllegalStateException("Threshold " + threshold + " was not built");
+        }
+        return covered;
+    }
+}
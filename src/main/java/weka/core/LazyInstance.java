@@ -0,0 +1,39 @@
+package weka.core;
+
+/**
+ * Instance that fills in its attribute values on demand. Instances adds and
+ * deletes attributes by calling package private methods of Instance that
+ * work on m_AttValues directly, so they are overridden here, in weka.core,
+ * to have the subclass fill in m_AttValues first.
+ */
+public abstract class LazyInstance extends Instance {
+
+    /** For serialization */
+    private static final long serialVersionUID = 5512896236614183417L;
+
+    /**
+     * Constructs a LazyInstance without attribute values.
+     *
+     * @param weight the weight of the Instance
+     */
+    protected LazyInstance(double weight) {
+        super(weight, null);
+    }
+
+    /**
+     * Fills in m_AttValues if it has not been filled in yet.
+     */
+    protected abstract void materialize();
+
+    @Override
+    void forceDeleteAttributeAt(int position) {
+        materialize();
+        super.forceDeleteAttributeAt(position);
+    }
+
+    @Override
+    void forceInsertAttributeAt(int position) {
+        materialize();
+        super.forceInsertAttributeAt(position);
+    }
+}
@@ -0,0 +1,119 @@
+package weka.analyzers;
+
+import junit.framework.TestCase;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Tests the zero-copy column removal of AnalyzerUtils, including changing the
+ * attributes of the result, which must not touch the source dataset.
+ */
+public class AnalyzerUtilsTest extends TestCase {
+
+    /** Number of Instances in the dataset */
+    private static final int NUM_INSTANCES = 10;
+
+    /** Dataset of an ID column, two values and a class */
+    private Instances data;
+
+    @Override
+    protected void setUp() {
+        FastVector atts = new FastVector();
+        atts.addElement(new Attribute("id"));
+        atts.addElement(new Attribute("a"));
+        atts.addElement(new Attribute("b"));
+        atts.addElement(new Attribute("class"));
+        data = new Instances("test", atts, NUM_INSTANCES);
+        data.setClassIndex(3);
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            data.add(new Instance(1, new double[] {i, 10 + i, 20 + i, i % 2}));
+        }
+    }
+
+    public void testRemoveColumn() {
+        Instances result = AnalyzerUtils.removeColumn(data, 0);
+        assertEquals(3, result.numAttributes());
+        assertEquals(2, result.classIndex());
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            assertRow(result.instance(i), 10 + i, 20 + i, i % 2);
+        }
+    }
+
+    public void testRemoveClassColumnThrows() {
+        try {
+            AnalyzerUtils.removeColumn(data, 3);
+            fail("Removed the class column");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testInsertAttribute() {
+        Instances result = AnalyzerUtils.removeColumn(data, 0);
+        result.insertAttributeAt(new Attribute("new"), 1);
+        assertEquals(4, result.numAttributes());
+        assertEquals(3, result.classIndex());
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            Instance row = result.instance(i);
+            assertEquals(4, row.numAttributes());
+            assertEquals(10 + i, row.value(0), 0);
+            assertTrue(row.isMissing(1));
+            assertEquals(20 + i, row.value(2), 0);
+            assertEquals(i % 2, row.value(3), 0);
+        }
+        assertSourceUnchanged();
+    }
+
+    public void testDeleteAttribute() {
+        Instances result = AnalyzerUtils.removeColumn(data, 0);
+        // Write one row first so both kinds of row are changed
+        result.instance(0).setValue(1, -1);
+        result.deleteAttributeAt(0);
+        assertEquals(2, result.numAttributes());
+        assertEquals(1, result.classIndex());
+        assertRow(result.instance(0), -1, 0);
+        for(int i = 1; i < NUM_INSTANCES; i++) {
+            assertRow(result.instance(i), 20 + i, i % 2);
+        }
+        assertSourceUnchanged();
+    }
+
+    public void testChangeAttributesOfCopy() {
+        Instances copy = new Instances(AnalyzerUtils.removeColumn(data, 0));
+        copy.deleteAttributeAt(1);
+        copy.insertAttributeAt(new Attribute("new"), 0);
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            Instance row = copy.instance(i);
+            assertTrue(row.isMissing(0));
+            assertEquals(10 + i, row.value(1), 0);
+            assertEquals(i % 2, row.value(2), 0);
+        }
+        assertSourceUnchanged();
+    }
+
+    /**
+     * Asserts an Instance has exactly the given values.
+     *
+     * @param row the Instance
+     * @param values the expected values
+     */
+    private static void assertRow(Instance row, double... values) {
+        assertEquals(values.length, row.numAttributes());
+        for(int j = 0; j < values.length; j++) {
+            assertEquals(values[j], row.value(j), 0);
+        }
+    }
+
+    /**
+     * Asserts the source dataset still has its original attributes and values.
+     */
+    private void assertSourceUnchanged() {
+        assertEquals(4, data.numAttributes());
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            assertRow(data.instance(i), i, 10 + i, 20 + i, i % 2);
+        }
+    }
+}
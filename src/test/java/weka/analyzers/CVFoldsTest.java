@@ -0,0 +1,153 @@
+package weka.analyzers;
+
+import junit.framework.TestCase;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+
+/**
+ * Tests CVFolds against Instances.trainCV and Instances.testCV, using a
+ * dataset whose only value is the index of each Instance so the folds can be
+ * compared by index.
+ */
+public class CVFoldsTest extends TestCase {
+
+    /** Dataset sizes to check */
+    private static final int[] SIZES = {2, 3, 10, 11, 57, 100};
+
+    /** Numbers of folds to check */
+    private static final int[] FOLDS = {2, 3, 5, 10};
+
+    public void testSequentialMatchesWeka() {
+        for(int n : SIZES) {
+            Instances data = indexData(n);
+            for(int k : FOLDS) {
+                if(k > n) {
+                    continue;
+                }
+                CVFolds folds = CVFolds.sequential(n, k);
+                assertEquals(k, folds.numFolds());
+                assertEquals(n, folds.numInstances());
+                for(int fold = 0; fold < k; fold++) {
+                    assertFold(data.testCV(k, fold), data.trainCV(k, fold), folds, fold);
+                    assertSame(data.trainCV(k, fold), folds.trainingSet(data, fold));
+                }
+            }
+        }
+    }
+
+    public void testRandomizedMatchesRandomize() {
+        for(int n : SIZES) {
+            for(int k : FOLDS) {
+                if(k > n) {
+                    continue;
+                }
+                Instances data = indexData(n);
+                data.randomize(new Random(n * 31 + k));
+                CVFolds folds = CVFolds.randomized(n, k, new Random(n * 31 + k));
+                for(int fold = 0; fold < k; fold++) {
+                    assertFold(data.testCV(k, fold), data.trainCV(k, fold), folds, fold);
+                }
+            }
+        }
+    }
+
+    public void testEveryInstanceTestedOnce() {
+        int n = 57;
+        CVFolds folds = CVFolds.randomized(n, 10, new Random(1));
+        folds.shuffle(new Random(2));
+        int[] tested = new int[n];
+        for(int fold = 0; fold < folds.numFolds(); fold++) {
+            assertEquals(n, folds.numTest(fold) + folds.numTrain(fold));
+            for(int j = 0; j < folds.numTest(fold); j++) {
+                tested[folds.testIndex(fold, j)]++;
+            }
+        }
+        for(int i = 0; i < n; i++) {
+            assertEquals(1, tested[i]);
+        }
+    }
+
+    public void testInvalidFoldsThrow() {
+        try {
+            CVFolds.sequential(10, 1);
+            fail("Built a single fold");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            CVFolds.sequential(10, 11);
+            fail("Built more folds than instances");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testTrainingSetSizeMismatchThrows() {
+        try {
+            CVFolds.sequential(10, 2).trainingSet(indexData(11), 0);
+            fail("Built a training set for a dataset of a different size");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Asserts a fold visits the same Instances in the same order as Weka's
+     * split.
+     *
+     * @param test Weka's test set of the fold
+     * @param train Weka's training set of the fold
+     * @param folds the CVFolds
+     * @param fold the fold
+     */
+    private static void assertFold(Instances test, Instances train, CVFolds folds, int fold) {
+        assertEquals(test.numInstances(), folds.numTest(fold));
+        for(int j = 0; j < test.numInstances(); j++) {
+            assertEquals(index(test.instance(j)), folds.testIndex(fold, j));
+        }
+        assertEquals(train.numInstances(), folds.numTrain(fold));
+        for(int j = 0; j < train.numInstances(); j++) {
+            assertEquals(index(train.instance(j)), folds.trainIndex(fold, j));
+        }
+    }
+
+    /**
+     * Asserts two datasets hold the same Instances in the same order.
+     *
+     * @param expected the expected dataset
+     * @param actual the actual dataset
+     */
+    private static void assertSame(Instances expected, Instances actual) {
+        assertEquals(expected.numInstances(), actual.numInstances());
+        for(int i = 0; i < expected.numInstances(); i++) {
+            assertEquals(index(expected.instance(i)), index(actual.instance(i)));
+        }
+    }
+
+    /**
+     * @param n number of Instances
+     * @return dataset where Instance i has value i
+     */
+    private static Instances indexData(int n) {
+        FastVector atts = new FastVector();
+        atts.addElement(new Attribute("index"));
+        Instances data = new Instances("index", atts, n);
+        for(int i = 0; i < n; i++) {
+            data.add(new Instance(1, new double[] {i}));
+        }
+        return data;
+    }
+
+    /**
+     * @param instance Instance of a dataset built by indexData
+     * @return index of the Instance in that dataset
+     */
+    private static int index(Instance instance) {
+        return (int) instance.value(0);
+    }
+}
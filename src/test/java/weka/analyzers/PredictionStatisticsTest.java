@@ -0,0 +1,127 @@
+package weka.analyzers;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests PredictionStatistics against computing each statistic directly from
+ * the stored predictions.
+ */
+public class PredictionStatisticsTest extends TestCase {
+
+    /** Tolerance of the running statistics */
+    private static final double DELTA = 1e-9;
+
+    /** Number of Instances tracked */
+    private static final int NUM_INSTANCES = 20;
+
+    /** Predictions per Instance, Instance i gets i of them */
+    private double[][] predictions;
+
+    /** Actual value per Instance */
+    private double[] actual;
+
+    @Override
+    protected void setUp() {
+        Random random = new Random(1);
+        predictions = new double[NUM_INSTANCES][];
+        actual = new double[NUM_INSTANCES];
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            actual[i] = random.nextGaussian() * 10;
+            predictions[i] = new double[i];
+            for(int j = 0; j < i; j++) {
+                predictions[i][j] = actual[i] + random.nextGaussian() * 3 + 1;
+            }
+        }
+    }
+
+    public void testMatchesDirectComputation() {
+        PredictionStatistics stats = new PredictionStatistics(NUM_INSTANCES);
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            for(double prediction : predictions[i]) {
+                stats.add(i, prediction, actual[i]);
+            }
+        }
+        assertStatistics(stats);
+    }
+
+    public void testMergeMatchesAdding() {
+        PredictionStatistics first = new PredictionStatistics(NUM_INSTANCES);
+        PredictionStatistics second = new PredictionStatistics(NUM_INSTANCES);
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            // Uneven split so some Instances only have predictions on one side
+            for(int j = 0; j < predictions[i].length; j++) {
+                (j < i / 3 ? first : second).add(i, predictions[i][j], actual[i]);
+            }
+        }
+        first.merge(second);
+        assertStatistics(first);
+    }
+
+    public void testMatrixRoundTrip() {
+        PredictionStatistics stats = new PredictionStatistics(NUM_INSTANCES);
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            for(double prediction : predictions[i]) {
+                stats.add(i, prediction, actual[i]);
+            }
+        }
+        assertStatistics(PredictionStatistics.fromMatrix(stats.toMatrix()));
+        assertEquals(0, PredictionStatistics.fromMatrix(new double[0][]).numInstances());
+        assertNull(PredictionStatistics.fromMatrix(new double[][] {{1, 2, 3}}));
+    }
+
+    public void testMergeSizeMismatchThrows() {
+        try {
+            new PredictionStatistics(2).merge(new PredictionStatistics(3));
+            fail("Merged statistics of different sizes");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Asserts the statistics match those computed directly from predictions.
+     *
+     * @param stats the statistics
+     */
+    private void assertStatistics(PredictionStatistics stats) {
+        assertEquals(NUM_INSTANCES, stats.numInstances());
+        double sumMeanAbs = 0;
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            double[] values = predictions[i];
+            int n = values.length;
+            assertEquals(n, stats.count(i));
+            if(n == 0) {
+                continue;
+            }
+            double sum = 0;
+            double sumAbs = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for(double value : values) {
+                sum += value;
+                sumAbs += Math.abs(value - actual[i]);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            double mean = sum / n;
+            double squares = 0;
+            for(double value : values) {
+                squares += (value - mean) * (value - mean);
+            }
+            double variance = n < 2 ? 0 : squares / n;
+            assertEquals(mean, stats.mean(i), DELTA);
+            assertEquals(variance, stats.variance(i), DELTA);
+            assertEquals(Math.sqrt(variance), stats.stdDev(i), DELTA);
+            assertEquals(min, stats.min(i), 0);
+            assertEquals(max, stats.max(i), 0);
+            assertEquals(mean - actual[i], stats.meanResidual(i), DELTA);
+            assertEquals(sumAbs / n, stats.meanAbsResidual(i), DELTA);
+            assertEquals(min - actual[i], stats.minResidual(i), DELTA);
+            assertEquals(max - actual[i], stats.maxResidual(i), DELTA);
+            sumMeanAbs += sumAbs / n;
+        }
+        assertEquals(sumMeanAbs / NUM_INSTANCES, stats.meanAbsoluteError(), DELTA);
+    }
+}
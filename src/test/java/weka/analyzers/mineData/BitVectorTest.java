@@ -0,0 +1,159 @@
+package weka.analyzers.mineData;
+
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Tests BitVector against java.util.BitSet.
+ */
+public class BitVectorTest extends TestCase {
+
+    /** Sizes around the word boundaries */
+    private static final int[] SIZES = {0, 1, 63, 64, 65, 127, 128, 129, 1000};
+
+    public void testCoverageMatchesBitSet() {
+        Random random = new Random(1);
+        for(int size : SIZES) {
+            for(double density : new double[] {0.0, 0.1, 0.5, 1.0}) {
+                BitSet bits = CoverageAssert.randomBits(random, size, density);
+                CoverageAssert.assertCoverage(bits, size, CoverageAssert.toBitVector(bits, size), random);
+            }
+        }
+    }
+
+    public void testSetAndClearRanges() {
+        Random random = new Random(2);
+        for(int size : SIZES) {
+            for(int trial = 0; trial < 50; trial++) {
+                BitSet expected = CoverageAssert.randomBits(random, size, 0.3);
+                BitVector actual = CoverageAssert.toBitVector(expected, size);
+                int from = random.nextInt(size + 1);
+                int to = from + random.nextInt(size - from + 1);
+                expected.set(from, to);
+                actual.set(from, to);
+                if(size > 0) {
+                    int index = random.nextInt(size);
+                    expected.clear(index);
+                    actual.clear(index);
+                }
+                CoverageAssert.assertBits("set range", expected, size, actual);
+            }
+            BitVector vector = new BitVector(size);
+            vector.set(0, size);
+            vector.clear();
+            assertEquals(0, vector.cardinality());
+        }
+    }
+
+    public void testSetPastSizeThrows() {
+        BitVector vector = new BitVector(10);
+        try {
+            vector.set(10);
+            fail("Set a bit past the size");
+        } catch(IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            vector.set(0, 11);
+            fail("Set a range past the size");
+        } catch(IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testBulkOperations() {
+        Random random = new Random(3);
+        for(int size : SIZES) {
+            BitSet a = CoverageAssert.randomBits(random, size, 0.5);
+            BitSet b = CoverageAssert.randomBits(random, size, 0.5);
+            BitSet c = CoverageAssert.randomBits(random, size, 0.5);
+            BitVector aVector = CoverageAssert.toBitVector(a, size);
+            BitVector bVector = CoverageAssert.toBitVector(b, size);
+            BitVector cVector = CoverageAssert.toBitVector(c, size);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            BitVector vector = aVector.copy();
+            vector.and(bVector);
+            CoverageAssert.assertBits("and", and, size, vector);
+            assertEquals(and.cardinality(), BitVector.andCardinality(aVector, bVector));
+            BitSet andAnd = (BitSet) and.clone();
+            andAnd.and(c);
+            assertEquals(andAnd.cardinality(), BitVector.andCardinality(aVector, bVector, cVector));
+
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            vector = aVector.copy();
+            vector.or(bVector);
+            CoverageAssert.assertBits("or", or, size, vector);
+
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            vector = aVector.copy();
+            vector.andNot(bVector);
+            CoverageAssert.assertBits("andNot", andNot, size, vector);
+
+            BitSet bAndC = (BitSet) b.clone();
+            bAndC.and(c);
+            BitSet andNotAnd = (BitSet) a.clone();
+            andNotAnd.andNot(bAndC);
+            vector = aVector.copy();
+            vector.andNotAnd(bVector, cVector);
+            CoverageAssert.assertBits("andNotAnd", andNotAnd, size, vector);
+
+            // The operands are left alone
+            CoverageAssert.assertBits("operand", a, size, aVector);
+            CoverageAssert.assertBits("operand", b, size, bVector);
+        }
+    }
+
+    public void testSizeMismatchThrows() {
+        try {
+            new BitVector(64).and(new BitVector(65));
+            fail("Combined BitVectors of different sizes");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testGetRange() {
+        Random random = new Random(4);
+        for(int size : SIZES) {
+            BitSet bits = CoverageAssert.randomBits(random, size, 0.5);
+            BitVector vector = CoverageAssert.toBitVector(bits, size);
+            for(int trial = 0; trial < 50; trial++) {
+                int from = random.nextInt(size + 1);
+                int to = from + random.nextInt(size - from + 1);
+                CoverageAssert.assertBits("get(" + from + ", " + to + ")", bits.get(from, to),
+                        to - from, vector.get(from, to));
+            }
+        }
+    }
+
+    public void testSliceOfOtherCoverage() {
+        Random random = new Random(5);
+        for(int size : SIZES) {
+            BitSet bits = CoverageAssert.randomRuns(random, size, 100);
+            BitVector vector = CoverageAssert.toBitVector(bits, size);
+            Coverage compressed = CompressedCoverage.of(vector);
+            for(int trial = 0; trial < 50; trial++) {
+                int from = random.nextInt(size + 1);
+                int to = from + random.nextInt(size - from + 1);
+                assertEquals(vector.get(from, to), BitVector.slice(compressed, from, to));
+            }
+        }
+    }
+
+    public void testCopyIsIndependent() {
+        BitVector vector = new BitVector(100);
+        vector.set(7);
+        BitVector copy = vector.copy();
+        assertEquals(vector, copy);
+        assertEquals(vector.hashCode(), copy.hashCode());
+        copy.set(8);
+        assertFalse(vector.get(8));
+        assertFalse(vector.equals(copy));
+    }
+}
@@ -0,0 +1,68 @@
+package weka.analyzers.mineData;
+
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Tests ComplementCoverage against java.util.BitSet. The base of a
+ * ComplementCoverage must be a subset of its universe, so every base used
+ * here is drawn from within the universe.
+ */
+public class ComplementCoverageTest extends TestCase {
+
+    /** Sizes around the word boundaries */
+    private static final int[] SIZES = {0, 1, 63, 64, 65, 129, 1000};
+
+    public void testComplementWithinUniverse() {
+        Random random = new Random(1);
+        for(int size : SIZES) {
+            BitSet universe = CoverageAssert.randomBits(random, size, 0.8);
+            BitSet base = CoverageAssert.randomBits(random, size, 0.4);
+            base.and(universe);
+            BitSet expected = (BitSet) universe.clone();
+            expected.andNot(base);
+            BitVector baseVector = CoverageAssert.toBitVector(base, size);
+            BitVector universeVector = CoverageAssert.toBitVector(universe, size);
+            CoverageAssert.assertCoverage(expected, size,
+                    new ComplementCoverage(baseVector, universeVector), random);
+            CoverageAssert.assertCoverage(expected, size,
+                    new ComplementCoverage(CompressedCoverage.of(baseVector), universeVector), random);
+        }
+    }
+
+    public void testComplementOfEveryInstance() {
+        Random random = new Random(2);
+        for(int size : SIZES) {
+            BitSet base = CoverageAssert.randomBits(random, size, 0.3);
+            BitSet expected = new BitSet(size);
+            expected.set(0, size);
+            expected.andNot(base);
+            BitVector baseVector = CoverageAssert.toBitVector(base, size);
+            CoverageAssert.assertCoverage(expected, size, new ComplementCoverage(baseVector, null), random);
+            CoverageAssert.assertCoverage(expected, size,
+                    new ComplementCoverage(CompressedCoverage.of(baseVector), null), random);
+        }
+    }
+
+    public void testAccessors() {
+        BitVector base = new BitVector(10);
+        base.set(2);
+        BitVector universe = new BitVector(10);
+        universe.set(0, 5);
+        ComplementCoverage complement = new ComplementCoverage(base, universe);
+        assertSame(base, complement.base());
+        assertSame(universe, complement.universe());
+        assertEquals(4, complement.cardinality());
+    }
+
+    public void testUniverseSizeMismatchThrows() {
+        try {
+            new ComplementCoverage(new BitVector(64), new BitVector(65));
+            fail("Built a complement in a universe of a different size");
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
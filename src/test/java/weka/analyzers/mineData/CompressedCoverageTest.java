@@ -0,0 +1,88 @@
+package weka.analyzers.mineData;
+
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Tests CompressedCoverage against java.util.BitSet, with the bits laid out
+ * so every kind of container gets used.
+ */
+public class CompressedCoverageTest extends TestCase {
+
+    /** Instances per chunk of a CompressedCoverage */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    public void testSparseCoverage() {
+        Random random = new Random(1);
+        for(int size : new int[] {0, 1, 100, CHUNK_SIZE, 2 * CHUNK_SIZE + 77}) {
+            BitSet bits = CoverageAssert.randomBits(random, size, 0.01);
+            check(bits, size, random);
+        }
+    }
+
+    public void testDenseCoverage() {
+        Random random = new Random(2);
+        for(int size : new int[] {65, 1000, CHUNK_SIZE + 1}) {
+            BitSet bits = CoverageAssert.randomBits(random, size, 0.5);
+            check(bits, size, random);
+        }
+    }
+
+    public void testRunCoverage() {
+        Random random = new Random(3);
+        for(int size : new int[] {64, 1000, 2 * CHUNK_SIZE + 5}) {
+            for(int maxRun : new int[] {3, 100, 5000}) {
+                BitSet bits = CoverageAssert.randomRuns(random, size, maxRun);
+                check(bits, size, random);
+            }
+        }
+    }
+
+    public void testMixedChunks() {
+        Random random = new Random(4);
+        int size = 4 * CHUNK_SIZE - 3;
+        BitSet bits = new BitSet(size);
+        // One chunk each of nothing, a few bits, runs and noise
+        for(int i = CHUNK_SIZE; i < 2 * CHUNK_SIZE; i += 997) {
+            bits.set(i);
+        }
+        bits.set(2 * CHUNK_SIZE + 10, 3 * CHUNK_SIZE - 10);
+        bits.or(shift(CoverageAssert.randomBits(random, CHUNK_SIZE - 3, 0.5), 3 * CHUNK_SIZE));
+        check(bits, size, random);
+    }
+
+    public void testCompactPicksSmaller() {
+        Random random = new Random(5);
+        BitVector sparse = CoverageAssert.toBitVector(CoverageAssert.randomBits(random, 10000, 0.001), 10000);
+        assertTrue(CompressedCoverage.compact(sparse) instanceof CompressedCoverage);
+        BitVector noise = CoverageAssert.toBitVector(CoverageAssert.randomBits(random, 10000, 0.5), 10000);
+        assertSame(noise, CompressedCoverage.compact(noise));
+    }
+
+    /**
+     * Compresses bits and checks the result against them.
+     *
+     * @param bits the bits
+     * @param size number of bits
+     * @param random Random to draw the other operands with
+     */
+    private static void check(BitSet bits, int size, Random random) {
+        CompressedCoverage compressed = CompressedCoverage.of(CoverageAssert.toBitVector(bits, size));
+        CoverageAssert.assertCoverage(bits, size, compressed, random);
+    }
+
+    /**
+     * @param bits the bits
+     * @param offset number of places to shift them up by
+     * @return the bits shifted up by offset
+     */
+    private static BitSet shift(BitSet bits, int offset) {
+        BitSet shifted = new BitSet();
+        for(int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            shifted.set(i + offset);
+        }
+        return shifted;
+    }
+}
@@ -0,0 +1,160 @@
+package weka.analyzers.mineData;
+
+import junit.framework.Assert;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Checks every operation of a Coverage against a java.util.BitSet holding
+ * the bits it should have, so each Coverage implementation can be tested
+ * the same way.
+ */
+final class CoverageAssert {
+
+    private CoverageAssert() {
+    }
+
+    /**
+     * Builds a random BitSet.
+     *
+     * @param random Random to draw the bits with
+     * @param size number of bits
+     * @param density chance of each bit being set
+     * @return the BitSet
+     */
+    static BitSet randomBits(Random random, int size, double density) {
+        BitSet bits = new BitSet(size);
+        for(int i = 0; i < size; i++) {
+            if(random.nextDouble() < density) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Builds a random BitSet made of runs of set and cleared bits.
+     *
+     * @param random Random to draw the runs with
+     * @param size number of bits
+     * @param maxRun longest run
+     * @return the BitSet
+     */
+    static BitSet randomRuns(Random random, int size, int maxRun) {
+        BitSet bits = new BitSet(size);
+        boolean set = random.nextBoolean();
+        for(int i = 0; i < size; ) {
+            int end = Math.min(size, i + 1 + random.nextInt(maxRun));
+            if(set) {
+                bits.set(i, end);
+            }
+            set = !set;
+            i = end;
+        }
+        return bits;
+    }
+
+    /**
+     * @param bits the bits
+     * @param size number of bits
+     * @return BitVector with the same bits set
+     */
+    static BitVector toBitVector(BitSet bits, int size) {
+        BitVector vector = new BitVector(size);
+        for(int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            vector.set(i);
+        }
+        return vector;
+    }
+
+    /**
+     * Asserts a BitVector has exactly the expected bits set.
+     *
+     * @param message message to fail with
+     * @param expected the expected bits
+     * @param size expected number of bits
+     * @param actual the BitVector
+     */
+    static void assertBits(String message, BitSet expected, int size, BitVector actual) {
+        Assert.assertEquals(message + ": size", size, actual.size());
+        for(int i = 0; i < size; i++) {
+            Assert.assertEquals(message + ": bit " + i, expected.get(i), actual.get(i));
+        }
+        Assert.assertEquals(message + ": cardinality", expected.cardinality(), actual.cardinality());
+    }
+
+    /**
+     * Asserts every operation of a Coverage agrees with the expected bits,
+     * combining it with random BitVectors where an operation needs them.
+     *
+     * @param expected bits the Coverage should have set
+     * @param size number of Instances the Coverage should have
+     * @param actual the Coverage
+     * @param random Random to draw the other operands with
+     */
+    static void assertCoverage(BitSet expected, int size, Coverage actual, Random random) {
+        Assert.assertEquals("size", size, actual.size());
+        Assert.assertEquals("cardinality", expected.cardinality(), actual.cardinality());
+        for(int i = 0; i < size; i++) {
+            Assert.assertEquals("get " + i, expected.get(i), actual.get(i));
+        }
+        for(int i = 0; i <= size; i++) {
+            int next = expected.nextSetBit(i);
+            Assert.assertEquals("nextSetBit " + i, next >= size ? -1 : next, actual.nextSetBit(i));
+        }
+        for(int u = 0; u < (size + 63) / 64; u++) {
+            long word = 0;
+            for(int b = 0; b < 64 && u * 64 + b < size; b++) {
+                if(expected.get(u * 64 + b)) {
+                    word |= 1L << b;
+                }
+            }
+            Assert.assertEquals("word " + u, word, actual.word(u));
+        }
+
+        BitSet a = randomBits(random, size, 0.5);
+        BitSet b = randomBits(random, size, 0.5);
+        BitVector aVector = toBitVector(a, size);
+        BitVector bVector = toBitVector(b, size);
+
+        BitSet and = (BitSet) expected.clone();
+        and.and(a);
+        Assert.assertEquals("intersectionCardinality", and.cardinality(),
+                actual.intersectionCardinality(aVector));
+        BitSet andAnd = (BitSet) and.clone();
+        andAnd.and(b);
+        Assert.assertEquals("intersectionCardinality of two", andAnd.cardinality(),
+                actual.intersectionCardinality(aVector, bVector));
+        int[] rows = new int[a.cardinality()];
+        for(int i = a.nextSetBit(0), r = 0; i >= 0; i = a.nextSetBit(i + 1)) {
+            rows[r++] = i;
+        }
+        Assert.assertEquals("intersectionCardinality of rows", and.cardinality(),
+                actual.intersectionCardinality(rows));
+
+        BitVector target = toBitVector(a, size);
+        actual.andInto(target);
+        assertBits("andInto", and, size, target);
+
+        BitSet andNot = (BitSet) a.clone();
+        andNot.andNot(expected);
+        target = toBitVector(a, size);
+        actual.andNotInto(target);
+        assertBits("andNotInto", andNot, size, target);
+
+        BitSet or = (BitSet) a.clone();
+        or.or(expected);
+        target = toBitVector(a, size);
+        actual.orInto(target);
+        assertBits("orInto", or, size, target);
+
+        BitSet andNotAnd = (BitSet) a.clone();
+        BitSet covered = (BitSet) expected.clone();
+        covered.and(b);
+        andNotAnd.andNot(covered);
+        target = toBitVector(a, size);
+        actual.andNotAndInto(target, bVector);
+        assertBits("andNotAndInto", andNotAnd, size, target);
+    }
+}
@@ -0,0 +1,188 @@
+package weka.analyzers.mineData;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests IntersectionCache, including that updating entries when targets are
+ * removed leaves them equal to evaluating the conjunctions again.
+ */
+public class IntersectionCacheTest extends TestCase {
+
+    /** Number of Instances in the dataset */
+    private static final int NUM_INSTANCES = 2000;
+
+    /** Number of rules */
+    private static final int NUM_RULES = 12;
+
+    /** Rules indexed by id */
+    private CachedRule[] rules;
+
+    /** View of the whole dataset */
+    private BitInstancesView view;
+
+    @Override
+    protected void setUp() {
+        Random random = new Random(1);
+        rules = new CachedRule[NUM_RULES];
+        for(int i = 0; i < NUM_RULES; i++) {
+            BitVector covered = CoverageAssert.toBitVector(
+                    CoverageAssert.randomBits(random, NUM_INSTANCES, 0.7), NUM_INSTANCES);
+            rules[i] = new BasicCachedRule(covered, "rule" + i);
+        }
+        BitVector targets = CoverageAssert.toBitVector(
+                CoverageAssert.randomBits(random, NUM_INSTANCES, 0.3), NUM_INSTANCES);
+        view = new BitInstancesView(targets, NUM_INSTANCES);
+    }
+
+    public void testExtend() {
+        int[] ids = {1, 4, 9};
+        assertTrue(Arrays.equals(new int[] {0, 1, 4, 9}, IntersectionCache.extend(ids, 0)));
+        assertTrue(Arrays.equals(new int[] {1, 4, 5, 9}, IntersectionCache.extend(ids, 5)));
+        assertTrue(Arrays.equals(new int[] {1, 4, 9, 12}, IntersectionCache.extend(ids, 12)));
+        assertTrue(Arrays.equals(new int[] {3}, IntersectionCache.extend(new int[0], 3)));
+        assertTrue(Arrays.equals(new int[] {1, 4, 9}, ids));
+    }
+
+    public void testEvaluateCountsHitsAndMisses() {
+        IntersectionCache cache = new IntersectionCache(Long.MAX_VALUE);
+        int[] ids = {3};
+        BitInstancesView.RuleEvaluation first = cache.evaluate(ids, view, rules[3]);
+        BitInstancesView.RuleEvaluation second = cache.evaluate(new int[] {3}, view, rules[3]);
+        assertSame(first, second);
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+        assertSame(first, cache.get(ids));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+        assertNull(cache.get(ids));
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    public void testRemoveTargetsMatchesEvaluatingAgain() {
+        IntersectionCache cache = new IntersectionCache(Long.MAX_VALUE);
+        int[][] conjunctions = allConjunctions(3);
+        for(int[] ids : conjunctions) {
+            cache.put(ids, evaluate(ids));
+        }
+        for(int removed = 0; removed < 4; removed++) {
+            CachedRule rule = rules[removed * 3];
+            int[] rows = view.coveredTargetRows(rule);
+            view.removeCoveredTargets(rule);
+            cache.removeTargets(rules, rows, Long.MAX_VALUE);
+            for(int[] ids : conjunctions) {
+                BitInstancesView.RuleEvaluation expected = evaluate(ids);
+                BitInstancesView.RuleEvaluation actual = cache.get(ids);
+                assertEquals(Arrays.toString(ids), expected.covered, actual.covered);
+                assertEquals(Arrays.toString(ids), expected.targetsCovered, actual.targetsCovered);
+            }
+        }
+    }
+
+    public void testRemoveTargetsDropsExpensiveEntries() {
+        IntersectionCache cache = new IntersectionCache(Long.MAX_VALUE);
+        cache.put(new int[] {0}, evaluate(new int[] {0}));
+        cache.put(new int[] {0, 1}, evaluate(new int[] {0, 1}));
+        int[] rows = view.coveredTargetRows(rules[2]);
+        view.removeCoveredTargets(rules[2]);
+        // Enough checks for the single rule entry only
+        cache.removeTargets(rules, rows, rows.length);
+        assertNotNull(cache.get(new int[] {0}));
+        assertNull(cache.get(new int[] {0, 1}));
+        assertEquals(1, cache.size());
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        long maxBytes = 16 * 1000;
+        IntersectionCache cache = new IntersectionCache(maxBytes);
+        BitInstancesView.RuleEvaluation eval = new BitInstancesView.RuleEvaluation(0, 0);
+        int numEntries = 1000;
+        for(int i = 0; i < numEntries; i++) {
+            cache.put(new int[] {i}, eval);
+        }
+        assertTrue(cache.bytes() <= maxBytes);
+        assertTrue(cache.evictions() > 0);
+        assertEquals(numEntries, cache.size() + cache.evictions());
+        // Each segment holds several entries, so the newest are always kept
+        // and the oldest are always gone
+        assertNotNull(cache.get(new int[] {numEntries - 1}));
+        assertNull(cache.get(new int[] {0}));
+    }
+
+    public void testConcurrentEvaluate() throws InterruptedException {
+        final IntersectionCache cache = new IntersectionCache(Long.MAX_VALUE);
+        final int[][] conjunctions = allConjunctions(2);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for(int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for(int[] ids : conjunctions) {
+                        BitInstancesView.RuleEvaluation expected = evaluate(ids);
+                        BitInstancesView filtered = view.copy();
+                        for(int i = 0; i < ids.length - 1; i++) {
+                            filtered.filterByRule(rules[ids[i]]);
+                        }
+                        BitInstancesView.RuleEvaluation actual =
+                                cache.evaluate(ids, filtered, rules[ids[ids.length - 1]]);
+                        if(actual.covered != expected.covered ||
+                                actual.targetsCovered != expected.targetsCovered) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(conjunctions.length, cache.size());
+        assertEquals((long) threads.length * conjunctions.length, cache.hits() + cache.misses());
+    }
+
+    /**
+     * @param ids ids of a conjunction
+     * @return evaluation of the conjunction in the view
+     */
+    private BitInstancesView.RuleEvaluation evaluate(int[] ids) {
+        BitInstancesView filtered = view.copy();
+        for(int i = 0; i < ids.length - 1; i++) {
+            filtered.filterByRule(rules[ids[i]]);
+        }
+        return filtered.evaluateRule(rules[ids[ids.length - 1]]);
+    }
+
+    /**
+     * @param maxLength most rules per conjunction
+     * @return ids of every conjunction of up to maxLength rules
+     */
+    private static int[][] allConjunctions(int maxLength) {
+        List<int[]> conjunctions = new ArrayList<int[]>();
+        List<int[]> previous = new ArrayList<int[]>();
+        previous.add(new int[0]);
+        for(int length = 1; length <= maxLength; length++) {
+            List<int[]> next = new ArrayList<int[]>();
+            for(int[] ids : previous) {
+                int start = ids.length == 0 ? 0 : ids[ids.length - 1] + 1;
+                for(int id = start; id < NUM_RULES; id++) {
+                    next.add(IntersectionCache.extend(ids, id));
+                }
+            }
+            conjunctions.addAll(next);
+            previous = next;
+        }
+        return conjunctions.toArray(new int[conjunctions.size()][]);
+    }
+}
@@ -0,0 +1,135 @@
+package weka.analyzers.mineData;
+
+import junit.framework.TestCase;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Tests the rules built by ThresholdRuleFactory against comparing every
+ * value with the threshold directly.
+ */
+public class ThresholdRuleFactoryTest extends TestCase {
+
+    /** Number of Instances in the dataset */
+    private static final int NUM_INSTANCES = 500;
+
+    /** Attribute of the dataset */
+    private Attribute att;
+
+    /** Values of att, NaN where missing */
+    private double[] values;
+
+    /** Dataset with values as its only attribute */
+    private Instances data;
+
+    @Override
+    protected void setUp() {
+        att = new Attribute("x");
+        FastVector atts = new FastVector();
+        atts.addElement(att);
+        data = new Instances("test", atts, NUM_INSTANCES);
+        Random random = new Random(1);
+        values = new double[NUM_INSTANCES];
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            // Few distinct values so thresholds land on ties
+            values[i] = random.nextInt(10) == 0 ? Instance.missingValue() : random.nextInt(50);
+            data.add(new Instance(1, new double[] {values[i]}));
+        }
+    }
+
+    public void testRulesMatchComparisons() {
+        double[] thresholds = {-1, 0, 0.5, 17, 25.5, 49, 50, 1000, Double.NaN};
+        for(boolean compress : new boolean[] {false, true}) {
+            ThresholdRuleFactory factory = new ThresholdRuleFactory(data, att);
+            for(double threshold : thresholds) {
+                factory.addThreshold(threshold);
+            }
+            factory.build(compress);
+            Random random = new Random(2);
+            for(double threshold : thresholds) {
+                BitSet greaterOrEqual = new BitSet(NUM_INSTANCES);
+                BitSet smaller = new BitSet(NUM_INSTANCES);
+                for(int i = 0; i < NUM_INSTANCES; i++) {
+                    greaterOrEqual.set(i, values[i] >= threshold);
+                    smaller.set(i, values[i] < threshold);
+                }
+                CoverageAssert.assertCoverage(greaterOrEqual, NUM_INSTANCES,
+                        factory.greaterOrEqualRule(threshold).covered(), random);
+                CoverageAssert.assertCoverage(smaller, NUM_INSTANCES,
+                        factory.smallerThanRule(threshold).covered(), random);
+            }
+        }
+    }
+
+    public void testSortedOrder() {
+        ThresholdRuleFactory factory = new ThresholdRuleFactory(data, att);
+        assertEquals(NUM_INSTANCES, factory.numInstances());
+        boolean seenMissing = false;
+        for(int rank = 0; rank < NUM_INSTANCES; rank++) {
+            double value = factory.sortedValue(rank);
+            // Compared as bits, as NaN is never equal to itself
+            assertEquals(Double.doubleToLongBits(values[factory.sortedIndex(rank)]),
+                    Double.doubleToLongBits(value));
+            if(Instance.isMissingValue(value)) {
+                seenMissing = true;
+            } else {
+                assertFalse("Missing value sorted before a value", seenMissing);
+                if(rank > 0) {
+                    assertTrue(factory.sortedValue(rank - 1) <= value);
+                }
+            }
+        }
+        assertTrue(seenMissing);
+    }
+
+    public void testNoMissingValues() {
+        Instances complete = new Instances(data, NUM_INSTANCES);
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            complete.add(new Instance(1, new double[] {i % 7}));
+        }
+        ThresholdRuleFactory factory = new ThresholdRuleFactory(complete, att);
+        factory.addThreshold(3);
+        factory.build(true);
+        Coverage greaterOrEqual = factory.greaterOrEqualRule(3).covered();
+        Coverage smaller = factory.smallerThanRule(3).covered();
+        for(int i = 0; i < NUM_INSTANCES; i++) {
+            assertEquals(i % 7 >= 3, greaterOrEqual.get(i));
+            assertEquals(i % 7 < 3, smaller.get(i));
+        }
+    }
+
+    public void testAddAfterBuildThrows() {
+        ThresholdRuleFactory factory = new ThresholdRuleFactory(data, att);
+        factory.build(false);
+        try {
+            factory.addThreshold(1);
+            fail("Added a threshold after build()");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testUnregisteredThresholdThrows() {
+        ThresholdRuleFactory factory = new ThresholdRuleFactory(data, att);
+        factory.addThreshold(1);
+        try {
+            factory.greaterOrEqualRule(1);
+            fail("Built a rule before build()");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        factory.build(false);
+        try {
+            factory.smallerThanRule(2);
+            fail("Built a rule for a threshold that was not registered");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+}